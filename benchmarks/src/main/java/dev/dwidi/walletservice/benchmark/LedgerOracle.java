@@ -0,0 +1,61 @@
+package dev.dwidi.walletservice.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that every wallet balance equals the sum of its ledger in the same currency: top-ups and
+ * refunds add, bill payments subtract. In append mode the balance is the snapshot on the
+ * {@code wallet_balance} row plus the transactions appended after it; in update mode that tail is
+ * empty. The shards of a sharded wallet are added to its balance row. Ledger rows without a
+ * balance row or shard count as drift too.
+ */
+final class LedgerOracle {
+
+    private static final String FIND_DRIFT = """
+            SELECT COALESCE(u.user_id, l.user_id) AS user_id, COALESCE(u.currency, l.currency) AS currency,
+                   COALESCE(u.balance, 0) AS balance, COALESCE(l.total, 0) AS ledger_total
+            FROM (SELECT k.user_id, k.currency, COALESCE(b.balance, 0) + COALESCE((
+                         SELECT SUM(CASE WHEN t.transaction_category IN ('BILLPAYMENT', 'TRANSFER_OUT') THEN -t.amount ELSE t.amount END)
+                         FROM transaction t
+                         WHERE t.user_id = k.user_id AND t.currency = k.currency
+                           AND t.ledger_sequence > COALESCE(b.snapshot_sequence, 0)), 0) + COALESCE((
+                         SELECT SUM(s.balance)
+                         FROM wallet_balance_shard s
+                         WHERE s.user_id = k.user_id AND s.currency = k.currency), 0) AS balance
+                  FROM (SELECT user_id, currency FROM wallet_balance
+                        UNION SELECT user_id, currency FROM wallet_balance_shard) k
+                  LEFT JOIN wallet_balance b ON b.user_id = k.user_id AND b.currency = k.currency) u
+            FULL JOIN (SELECT user_id, currency,
+                              SUM(CASE WHEN transaction_category IN ('BILLPAYMENT', 'TRANSFER_OUT') THEN -amount ELSE amount END) AS total
+                       FROM transaction
+                       GROUP BY user_id, currency) l ON l.user_id = u.user_id AND l.currency = u.currency
+            WHERE COALESCE(u.balance, 0) <> COALESCE(l.total, 0)
+            ORDER BY 1, 2
+            """;
+
+    private LedgerOracle() {
+    }
+
+    /**
+     * Returns one line per wallet and currency whose balance does not match its ledger.
+     */
+    static List<String> findDrift(String jdbcUrl, String username, String password) throws SQLException {
+        List<String> drift = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(FIND_DRIFT)) {
+            while (rs.next()) {
+                drift.add("user " + rs.getLong("user_id") + " " + rs.getString("currency")
+                        + ": balance " + rs.getBigDecimal("balance")
+                        + ", ledger " + rs.getBigDecimal("ledger_total"));
+            }
+        }
+        return drift;
+    }
+}
@@ -0,0 +1,345 @@
+package dev.dwidi.walletservice.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End-to-end load test over HTTP. Creates a set of wallets, or uses the existing ones listed in
+ * {@code load.user-ids}, drives the transaction and user endpoints from {@code load.concurrency}
+ * virtual threads for {@code load.duration}, prints latency percentiles per operation and finally
+ * checks every wallet against its ledger, failing on drift.
+ * <p>
+ * Without {@code load.base-url} the application is started in-process on an embedded PostgreSQL.
+ * With {@code load.rate} set, requests follow a fixed schedule and latency is measured from the
+ * planned start, so a slow server is not hidden by fewer requests being sent (coordinated omission).
+ * All settings are system properties, see the defaults below.
+ */
+public final class LoadTest {
+
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final BigDecimal SEED_BALANCE = new BigDecimal("1000000");
+    private static final int BATCH_SIZE = 10;
+
+    enum Operation { TOPUP, REFUND, BILL, TRANSFER, BATCH, GET_USER, HISTORY }
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final String baseUrl;
+    private final long[] existingUserIds = parseIds(System.getProperty("load.user-ids", ""));
+    private final int wallets = existingUserIds.length > 0 ? existingUserIds.length : Integer.getInteger("load.wallets", 1000);
+    private final int concurrency = Integer.getInteger("load.concurrency", 64);
+    private final Duration warmup = Duration.ofSeconds(Long.getLong("load.warmup", 10));
+    private final Duration duration = Duration.ofSeconds(Long.getLong("load.duration", 60));
+    private final double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+    private final double duplicateRate = Double.parseDouble(System.getProperty("load.duplicate-rate", "0.05"));
+    private final ZipfSampler sampler = new ZipfSampler(wallets, Double.parseDouble(System.getProperty("load.skew", "1.0")));
+    private final Operation[] mix = parseMix(System.getProperty("load.mix", "topup:30,refund:10,bill:25,transfer:5,batch:5,get:20,history:5"));
+
+    private long[] userIds;
+
+    private LoadTest(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = System.getProperty("load.base-url");
+        String jdbcUrl = System.getProperty("load.jdbc-url", "jdbc:postgresql://localhost:5432/wallet_service");
+        String username = System.getProperty("load.username", "postgres");
+        String password = System.getProperty("load.password", "postgres");
+
+        ConfigurableApplicationContext application = null;
+        if (baseUrl == null) {
+            application = WalletServiceFixture.startWeb();
+            baseUrl = "http://localhost:" + WalletServiceFixture.port(application);
+            jdbcUrl = WalletServiceFixture.jdbcUrl();
+            username = WalletServiceFixture.username();
+            password = WalletServiceFixture.password();
+        }
+
+        try {
+            new LoadTest(baseUrl).run();
+
+            List<String> drift = LedgerOracle.findDrift(jdbcUrl, username, password);
+            if (!drift.isEmpty()) {
+                drift.stream().limit(20).forEach(line -> System.out.println("DRIFT " + line));
+                throw new IllegalStateException("Balance does not match the ledger for " + drift.size() + " wallet(s)");
+            }
+            System.out.println("Ledger check passed: every wallet balance equals the sum of its transactions");
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        if (existingUserIds.length > 0) {
+            System.out.printf("Topping up %d existing wallets on %s%n", wallets, baseUrl);
+            for (long id : existingUserIds) {
+                post("/api/v1/transaction/topup/" + id, transaction("TOPUP", SEED_BALANCE), null);
+            }
+            userIds = existingUserIds;
+        } else {
+            System.out.printf("Creating %d wallets on %s%n", wallets, baseUrl);
+            userIds = createWallets();
+        }
+
+        System.out.printf("Running %d callers for %ds after %ds warmup%s%n", concurrency, duration.toSeconds(), warmup.toSeconds(),
+                rate > 0 ? " at " + rate + " requests/s" : "");
+        long start = System.nanoTime();
+        long recordFrom = start + warmup.toNanos();
+        long end = recordFrom + duration.toNanos();
+        long interval = rate > 0 ? (long) (concurrency * 1e9 / rate) : 0;
+
+        List<Future<Worker>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                // Spread the schedules of the callers over one interval
+                long firstRequest = start + (interval * i) / concurrency;
+                futures.add(executor.submit(() -> new Worker().run(firstRequest, interval, recordFrom, end)));
+            }
+        }
+
+        Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        for (Future<Worker> future : futures) {
+            Worker worker = future.get();
+            worker.latencies.forEach((operation, histogram) ->
+                    latencies.computeIfAbsent(operation, o -> newHistogram()).add(histogram));
+            worker.errors.forEach((operation, count) -> errors.merge(operation, count, Long::sum));
+        }
+        report(latencies, errors);
+    }
+
+    private long[] createWallets() throws Exception {
+        String run = UUID.randomUUID().toString().substring(0, 8);
+        long phonePrefix = Math.abs(run.hashCode() % 100_000);
+        long[] ids = new long[wallets];
+        List<Future<?>> futures = new ArrayList<>();
+        // No more requests in flight than during the run, so wallet creation does not flood the accept queue
+        Semaphore inFlight = new Semaphore(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < wallets; i++) {
+                int index = i;
+                inFlight.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        ids[index] = createWallet(run, phonePrefix, index);
+                        return null;
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return ids;
+    }
+
+    private long createWallet(String run, long phonePrefix, int index) throws Exception {
+        String user = "{\"fullName\":\"Load " + index + "\",\"email\":\"load-" + run + "-" + index
+                + "@example.com\",\"phoneNumber\":\"+" + phonePrefix + String.format("%07d", index) + "\"}";
+        HttpResponse<String> created = post("/api/v1/user/create", user, null);
+        Matcher matcher = ID.matcher(created.body());
+        if (created.statusCode() != 200 || !matcher.find()) {
+            throw new IllegalStateException("Could not create wallet: " + created.body());
+        }
+        long id = Long.parseLong(matcher.group(1));
+        post("/api/v1/transaction/topup/" + id, transaction("TOPUP", SEED_BALANCE), null);
+        return id;
+    }
+
+    private static void report(Map<Operation, Histogram> latencies, Map<Operation, Long> errors) {
+        System.out.printf("%n%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        long total = 0;
+        double seconds = 0;
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            if (histogram == null) {
+                continue;
+            }
+            seconds = (histogram.getEndTimeStamp() - histogram.getStartTimeStamp()) / 1000.0;
+            total += histogram.getTotalCount();
+            System.out.printf("%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", operation, histogram.getTotalCount(),
+                    errors.getOrDefault(operation, 0L), histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+        }
+        System.out.printf("%-10s %10d %8d %10.1f%n%n", "total", total, errors.values().stream().mapToLong(Long::longValue).sum(),
+                seconds > 0 ? total / seconds : 0);
+    }
+
+    private final class Worker {
+        private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+
+        private Worker run(long firstRequest, long interval, long recordFrom, long end) throws InterruptedException {
+            long planned = firstRequest;
+            while (true) {
+                long now = System.nanoTime();
+                if (interval > 0 && planned > now) {
+                    TimeUnit.NANOSECONDS.sleep(planned - now);
+                }
+                long requestStart = interval > 0 ? planned : System.nanoTime();
+                if (requestStart >= end) {
+                    return this;
+                }
+
+                Operation operation = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+                boolean ok;
+                try {
+                    ok = execute(operation);
+                } catch (Exception e) {
+                    ok = false;
+                }
+                long finished = System.nanoTime();
+
+                if (requestStart >= recordFrom) {
+                    Histogram histogram = latencies.computeIfAbsent(operation, o -> newHistogram());
+                    histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(finished - requestStart), HIGHEST_TRACKABLE_MICROS));
+                    histogram.setStartTimeStamp(Math.min(histogram.getStartTimeStamp(), TimeUnit.NANOSECONDS.toMillis(requestStart)));
+                    histogram.setEndTimeStamp(Math.max(histogram.getEndTimeStamp(), TimeUnit.NANOSECONDS.toMillis(finished)));
+                    if (!ok) {
+                        errors.merge(operation, 1L, Long::sum);
+                    }
+                }
+                planned += interval;
+            }
+        }
+
+        private boolean execute(Operation operation) throws Exception {
+            long userId = userIds[sampler.next()];
+            return switch (operation) {
+                case TOPUP -> mutate("/api/v1/transaction/topup/" + userId, transaction("TOPUP", amount(100)));
+                case REFUND -> mutate("/api/v1/transaction/refund/" + userId, transaction("REFUND", amount(100)));
+                case BILL -> mutate("/api/v1/transaction/bill/" + userId, transaction("BILLPAYMENT", amount(50)));
+                case TRANSFER -> {
+                    // Both ends are Zipf-distributed, so transfers keep crossing between the hot wallets
+                    int to = sampler.next();
+                    long toUserId = userIds[to] == userId ? userIds[(to + 1) % userIds.length] : userIds[to];
+                    yield mutate("/api/v1/transaction/transfer/" + userId,
+                            "{\"toUserId\":" + toUserId + ",\"amount\":" + amount(50) + "}");
+                }
+                case BATCH -> {
+                    StringBuilder items = new StringBuilder();
+                    for (int i = 0; i < BATCH_SIZE; i++) {
+                        boolean credit = ThreadLocalRandom.current().nextBoolean();
+                        items.append(i == 0 ? "" : ",")
+                                .append("{\"userId\":").append(userIds[sampler.next()])
+                                .append(",\"transactionCategory\":\"").append(credit ? "TOPUP" : "BILLPAYMENT")
+                                .append("\",\"amount\":").append(amount(credit ? 100 : 50))
+                                .append(",\"idempotencyKey\":\"").append(UUID.randomUUID()).append("\"}");
+                    }
+                    HttpResponse<String> response = post("/api/v1/transaction/batch", "{\"transactions\":[" + items + "]}", null);
+                    yield response.statusCode() == 200 && response.body().contains("\"failed\":0");
+                }
+                case GET_USER -> succeeded(get("/api/v1/user/" + userId));
+                case HISTORY -> succeeded(get("/api/v1/transaction/" + userId + "/history?size=20"));
+            };
+        }
+
+        // Sends the mutation with an Idempotency-Key and sometimes retries it, which must not apply it twice
+        private boolean mutate(String path, String body) throws Exception {
+            String idempotencyKey = UUID.randomUUID().toString();
+            boolean ok = succeeded(post(path, body, idempotencyKey));
+            if (ThreadLocalRandom.current().nextDouble() < duplicateRate) {
+                ok &= succeeded(post(path, body, idempotencyKey));
+            }
+            return ok;
+        }
+    }
+
+    private HttpResponse<String> post(String path, String body, String idempotencyKey) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (idempotencyKey != null) {
+            request.header("Idempotency-Key", idempotencyKey);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).GET().build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static boolean succeeded(HttpResponse<String> response) {
+        return response.statusCode() == 200 && response.body().contains("\"statusCode\":200");
+    }
+
+    private static String transaction(String category, BigDecimal amount) {
+        return "{\"transactionCategory\":\"" + category + "\",\"amount\":" + amount + "}";
+    }
+
+    private static BigDecimal amount(int max) {
+        return BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(100, max * 100 + 1)).movePointLeft(2)
+                .setScale(2, RoundingMode.UNNECESSARY);
+    }
+
+    private static Histogram newHistogram() {
+        Histogram histogram = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+        histogram.setStartTimeStamp(Long.MAX_VALUE);
+        histogram.setEndTimeStamp(0);
+        return histogram;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static long[] parseIds(String ids) {
+        return ids.isBlank() ? new long[0] : Arrays.stream(ids.split(",")).mapToLong(id -> Long.parseLong(id.trim())).toArray();
+    }
+
+    private static Operation[] parseMix(String mix) {
+        List<Operation> operations = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            Operation operation = switch (parts[0]) {
+                case "topup" -> Operation.TOPUP;
+                case "refund" -> Operation.REFUND;
+                case "bill" -> Operation.BILL;
+                case "transfer" -> Operation.TRANSFER;
+                case "batch" -> Operation.BATCH;
+                case "get" -> Operation.GET_USER;
+                case "history" -> Operation.HISTORY;
+                default -> throw new IllegalArgumentException("Unknown operation in load.mix: " + parts[0]);
+            };
+            for (int i = 0; i < Integer.parseInt(parts[1]); i++) {
+                operations.add(operation);
+            }
+        }
+        return operations.toArray(Operation[]::new);
+    }
+}
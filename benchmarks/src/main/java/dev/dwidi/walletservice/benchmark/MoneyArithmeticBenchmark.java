@@ -0,0 +1,74 @@
+package dev.dwidi.walletservice.benchmark;
+
+import dev.dwidi.walletservice.entity.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The balance arithmetic of a batch: each mutation is checked against and applied to the running
+ * balance of its wallet, and the balance after it is kept for its ledger row, once with
+ * {@link BigDecimal} and once with {@link Money}. Run with {@code -prof gc} to compare the bytes
+ * allocated per batch ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoneyArithmeticBenchmark {
+
+    @Param({"64"})
+    public int mutations;
+
+    private BigDecimal[] decimalDeltas;
+    private Money[] moneyDeltas;
+    private BigDecimal decimalBalance;
+    private Money moneyBalance;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        decimalDeltas = new BigDecimal[mutations];
+        moneyDeltas = new Money[mutations];
+        for (int i = 0; i < mutations; i++) {
+            // Mostly credits so the balance stays positive; amounts like 123.45
+            BigDecimal amount = BigDecimal.valueOf(random.nextLong(1, 1_000_000), 2);
+            decimalDeltas[i] = i % 4 == 3 ? amount.negate() : amount;
+            moneyDeltas[i] = Money.of(decimalDeltas[i]);
+        }
+        decimalBalance = new BigDecimal("987654.32");
+        moneyBalance = Money.of(decimalBalance);
+    }
+
+    @Benchmark
+    public BigDecimal[] bigDecimal() {
+        BigDecimal[] lastBalances = new BigDecimal[mutations];
+        BigDecimal balance = decimalBalance;
+        for (int i = 0; i < mutations; i++) {
+            BigDecimal newBalance = balance.add(decimalDeltas[i]);
+            if (newBalance.signum() >= 0) {
+                balance = newBalance;
+            }
+            lastBalances[i] = balance;
+        }
+        return lastBalances;
+    }
+
+    @Benchmark
+    public Money[] money() {
+        Money[] lastBalances = new Money[mutations];
+        Money balance = moneyBalance;
+        for (int i = 0; i < mutations; i++) {
+            Money newBalance = balance.plus(moneyDeltas[i]);
+            if (newBalance.signum() >= 0) {
+                balance = newBalance;
+            }
+            lastBalances[i] = balance;
+        }
+        return lastBalances;
+    }
+}
@@ -0,0 +1,58 @@
+package dev.dwidi.walletservice.benchmark;
+
+import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserResponseDTO;
+import dev.dwidi.walletservice.service.user.UserCache;
+import dev.dwidi.walletservice.service.user.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserService#getUserById} served from the user cache ({@code cached}) and from
+ * PostgreSQL ({@code uncached}, the entry is evicted before every read).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserReadBenchmark {
+
+    private static final int WALLETS = 1024;
+
+    @Param({"cached", "uncached"})
+    public String cache;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private UserCache userCache;
+    private long[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = WalletServiceFixture.start();
+        userService = context.getBean(UserService.class);
+        userCache = context.getBean(UserCache.class);
+        userIds = WalletServiceFixture.createWallets(context, WALLETS, BigDecimal.TEN);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BaseResponseDTO<UserResponseDTO> getUserById() {
+        long userId = userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+        if ("uncached".equals(cache)) {
+            userCache.evict(userId);
+        }
+        return userService.getUserById(userId);
+    }
+}
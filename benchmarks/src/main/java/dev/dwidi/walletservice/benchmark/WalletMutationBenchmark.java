@@ -0,0 +1,109 @@
+package dev.dwidi.walletservice.benchmark;
+
+import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.service.transaction.TransactionService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-up and bill payment throughput through {@link TransactionService}, with every caller on
+ * one wallet ({@code same}) or on a random wallet out of 1024 ({@code spread}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalletMutationBenchmark {
+
+    private static final int SPREAD_WALLETS = 1024;
+    private static final TransactionRequestDTO ONE = new TransactionRequestDTO(null, BigDecimal.ONE, null, null);
+
+    @Param({"same", "spread"})
+    public String wallets;
+
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private long[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = WalletServiceFixture.start();
+        transactionService = context.getBean(TransactionService.class);
+        userIds = WalletServiceFixture.createWallets(context, "same".equals(wallets) ? 1 : SPREAD_WALLETS,
+                new BigDecimal("1000000000000"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public BaseResponseDTO<TransactionResponseDTO> topUp_1() {
+        return topUp();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public BaseResponseDTO<TransactionResponseDTO> topUp_8() {
+        return topUp();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public BaseResponseDTO<TransactionResponseDTO> topUp_64() {
+        return topUp();
+    }
+
+    @Benchmark
+    @Threads(1024)
+    public BaseResponseDTO<TransactionResponseDTO> topUp_1024() {
+        return topUp();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public BaseResponseDTO<TransactionResponseDTO> billPayment_1() {
+        return billPayment();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public BaseResponseDTO<TransactionResponseDTO> billPayment_8() {
+        return billPayment();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public BaseResponseDTO<TransactionResponseDTO> billPayment_64() {
+        return billPayment();
+    }
+
+    @Benchmark
+    @Threads(1024)
+    public BaseResponseDTO<TransactionResponseDTO> billPayment_1024() {
+        return billPayment();
+    }
+
+    private BaseResponseDTO<TransactionResponseDTO> topUp() {
+        return transactionService.topUpBalance(nextWallet(), ONE);
+    }
+
+    private BaseResponseDTO<TransactionResponseDTO> billPayment() {
+        return transactionService.billPayment(nextWallet(), ONE);
+    }
+
+    private long nextWallet() {
+        return userIds.length == 1 ? userIds[0] : userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+}
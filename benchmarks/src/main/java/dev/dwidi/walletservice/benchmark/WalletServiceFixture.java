@@ -0,0 +1,95 @@
+package dev.dwidi.walletservice.benchmark;
+
+import dev.dwidi.walletservice.WalletServiceApplication;
+import dev.dwidi.walletservice.dto.transaction.TransactionRequestDTO;
+import dev.dwidi.walletservice.dto.user.UserRequestDTO;
+import dev.dwidi.walletservice.service.transaction.TransactionService;
+import dev.dwidi.walletservice.service.user.UserService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Boots the application without its web layer against PostgreSQL. The database is an embedded
+ * PostgreSQL started for the fork, unless {@code -Dbench.jdbc-url} (with {@code bench.username}
+ * and {@code bench.password}) points at an existing one. H2 is not an option: the write path uses
+ * {@code UPDATE ... RETURNING} and {@code unnest}.
+ */
+final class WalletServiceFixture {
+
+    private static EmbeddedPostgres postgres;
+
+    private WalletServiceFixture() {
+    }
+
+    static ConfigurableApplicationContext start() throws IOException {
+        return start(WebApplicationType.NONE);
+    }
+
+    /**
+     * Starts the application with its web layer on a random port, see {@link #port}.
+     */
+    static ConfigurableApplicationContext startWeb() throws IOException {
+        return start(WebApplicationType.SERVLET);
+    }
+
+    static int port(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    static synchronized String jdbcUrl() throws IOException {
+        String jdbcUrl = System.getProperty("bench.jdbc-url");
+        if (jdbcUrl != null) {
+            return jdbcUrl;
+        }
+        if (postgres == null) {
+            postgres = EmbeddedPostgres.builder()
+                    .setServerConfig("max_connections", "300")
+                    .start();
+        }
+        return postgres.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true";
+    }
+
+    static String username() {
+        return System.getProperty("bench.username", "postgres");
+    }
+
+    static String password() {
+        return System.getProperty("bench.password", "postgres");
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType webApplicationType) throws IOException {
+        return new SpringApplicationBuilder(WalletServiceApplication.class)
+                .web(webApplicationType)
+                .run("--spring.datasource.url=" + jdbcUrl(),
+                        "--spring.datasource.username=" + username(),
+                        "--spring.datasource.password=" + password(),
+                        "--server.port=0",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.dev.dwidi.walletservice=WARN");
+    }
+
+    /**
+     * Creates {@code count} wallets holding {@code balance} each and returns their ids.
+     */
+    static long[] createWallets(ConfigurableApplicationContext context, int count, BigDecimal balance) {
+        UserService userService = context.getBean(UserService.class);
+        TransactionService transactionService = context.getBean(TransactionService.class);
+        String run = UUID.randomUUID().toString().substring(0, 8);
+
+        long[] userIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            UserRequestDTO userRequestDTO = new UserRequestDTO("Benchmark " + i, "bench-" + run + "-" + i + "@example.com",
+                    "+" + run.hashCode() + i);
+            userIds[i] = userService.createUser(userRequestDTO).getData().getId();
+            transactionService.topUpBalance(userIds[i], new TransactionRequestDTO(null, balance, null, null));
+        }
+        return userIds;
+    }
+}
@@ -0,0 +1,70 @@
+package dev.dwidi.walletservice.benchmark;
+
+import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransferRequestDTO;
+import dev.dwidi.walletservice.service.transaction.TransactionService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer throughput through {@link TransactionService} when every caller moves money in a
+ * random direction between the same few hot wallets, so transfers constantly cross each other.
+ * Two wallets is the worst case: every pair of concurrent transfers locks the same two rows.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalletTransferBenchmark {
+
+    @Param({"2", "16"})
+    public int wallets;
+
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private long[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = WalletServiceFixture.start();
+        transactionService = context.getBean(TransactionService.class);
+        userIds = WalletServiceFixture.createWallets(context, wallets, new BigDecimal("1000000000000"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public BaseResponseDTO<TransactionResponseDTO> transfer_1() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public BaseResponseDTO<TransactionResponseDTO> transfer_8() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public BaseResponseDTO<TransactionResponseDTO> transfer_64() {
+        return transfer();
+    }
+
+    private BaseResponseDTO<TransactionResponseDTO> transfer() {
+        int from = ThreadLocalRandom.current().nextInt(userIds.length);
+        int to = (from + 1 + ThreadLocalRandom.current().nextInt(userIds.length - 1)) % userIds.length;
+        return transactionService.transfer(userIds[from], new TransferRequestDTO(userIds[to], BigDecimal.ONE, null, null));
+    }
+}
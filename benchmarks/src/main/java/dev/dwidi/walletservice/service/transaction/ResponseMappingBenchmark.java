@@ -0,0 +1,78 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionHistoryResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO mapping and JSON serialization of the responses, with an ObjectMapper configured
+ * like the one Spring Boot gives the controllers. Lives in the service package to reach
+ * {@link WalletLedgerWriter#toResponse}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseMappingBenchmark {
+
+    private ObjectMapper objectMapper;
+    private Transaction transaction;
+    private BaseResponseDTO<TransactionResponseDTO> transactionResponse;
+    private BaseResponseDTO<TransactionHistoryResponseDTO> historyResponse;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        User user = new User();
+        user.setId(42L);
+        transaction = new Transaction();
+        transaction.setId(1_000_001L);
+        transaction.setUser(user);
+        transaction.setTransactionCategory(TransactionCategory.TOPUP);
+        transaction.setAmount(Money.of(new BigDecimal("125000.00")));
+        transaction.setLastBalance(Money.of(new BigDecimal("987654.32")));
+        transaction.setCreatedAt(LocalDateTime.now());
+        transaction.setUpdatedAt(LocalDateTime.now());
+
+        transactionResponse = new BaseResponseDTO<>(200, "Top up successfully", WalletLedgerWriter.toResponse(transaction));
+
+        List<TransactionResponseDTO> page = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            page.add(WalletLedgerWriter.toResponse(transaction));
+        }
+        historyResponse = new BaseResponseDTO<>(200, "Transaction history successfully retrieved",
+                new TransactionHistoryResponseDTO(page, 20, true, "MjAyNC0wNS0wMVQxMDozMDoxNXwxMDAwMDAx"));
+    }
+
+    @Benchmark
+    public TransactionResponseDTO mapTransaction() {
+        return WalletLedgerWriter.toResponse(transaction);
+    }
+
+    @Benchmark
+    public byte[] serializeTransactionResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(transactionResponse);
+    }
+
+    @Benchmark
+    public byte[] serializeHistoryPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(historyResponse);
+    }
+}
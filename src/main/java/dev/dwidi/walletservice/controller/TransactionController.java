@@ -1,13 +1,29 @@
 package dev.dwidi.walletservice.controller;
 
 import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.LedgerExportRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionHistoryRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionHistoryResponseDTO;
 import dev.dwidi.walletservice.dto.transaction.TransactionRequestDTO;
 import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransferRequestDTO;
+import dev.dwidi.walletservice.enums.ExportFormat;
+import dev.dwidi.walletservice.service.transaction.LedgerExportService;
 import dev.dwidi.walletservice.service.transaction.TransactionService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/v1/transaction")
@@ -15,23 +31,92 @@ import org.springframework.web.bind.annotation.*;
 @Slf4j
 public class TransactionController {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final TransactionService transactionService;
+    private final LedgerExportService ledgerExportService;
 
     @PostMapping("/topup/{userId}")
-    public BaseResponseDTO<TransactionResponseDTO> topUp(@PathVariable Long userId, @Valid @RequestBody TransactionRequestDTO transactionRequestDTO) {
+    public BaseResponseDTO<TransactionResponseDTO> topUp(@PathVariable Long userId,
+                                                         @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false)
+                                                         @Size(max = 255, message = "Idempotency key must be at most 255 characters") String idempotencyKey,
+                                                         @Valid @RequestBody TransactionRequestDTO transactionRequestDTO) {
         log.info("Handling request to top up balance for user with ID: {}", userId);
+        applyIdempotencyKey(transactionRequestDTO, idempotencyKey);
         return transactionService.topUpBalance(userId, transactionRequestDTO);
     }
 
     @PostMapping("/refund/{userId}")
-    public BaseResponseDTO<TransactionResponseDTO> refund(@PathVariable Long userId, @Valid @RequestBody TransactionRequestDTO transactionRequestDTO) {
+    public BaseResponseDTO<TransactionResponseDTO> refund(@PathVariable Long userId,
+                                                          @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false)
+                                                          @Size(max = 255, message = "Idempotency key must be at most 255 characters") String idempotencyKey,
+                                                          @Valid @RequestBody TransactionRequestDTO transactionRequestDTO) {
         log.info("Handling request to refund balance for user with ID: {}", userId);
+        applyIdempotencyKey(transactionRequestDTO, idempotencyKey);
         return transactionService.refundBalance(userId, transactionRequestDTO);
     }
 
     @PostMapping("/bill/{userId}")
-    public BaseResponseDTO<TransactionResponseDTO> billPayment(@PathVariable Long userId, @Valid @RequestBody TransactionRequestDTO transactionRequestDTO) {
+    public BaseResponseDTO<TransactionResponseDTO> billPayment(@PathVariable Long userId,
+                                                               @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false)
+                                                               @Size(max = 255, message = "Idempotency key must be at most 255 characters") String idempotencyKey,
+                                                               @Valid @RequestBody TransactionRequestDTO transactionRequestDTO) {
         log.info("Handling request to make bill payment from user with ID: {}", userId);
+        applyIdempotencyKey(transactionRequestDTO, idempotencyKey);
         return transactionService.billPayment(userId, transactionRequestDTO);
     }
+
+    @PostMapping("/transfer/{userId}")
+    public BaseResponseDTO<TransactionResponseDTO> transfer(@PathVariable Long userId,
+                                                            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false)
+                                                            @Size(max = 255, message = "Idempotency key must be at most 255 characters") String idempotencyKey,
+                                                            @Valid @RequestBody TransferRequestDTO transferRequestDTO) {
+        log.info("Handling request to transfer from user with ID: {} to user with ID: {}", userId, transferRequestDTO.getToUserId());
+        transferRequestDTO.setIdempotencyKey(idempotencyKey);
+        return transactionService.transfer(userId, transferRequestDTO);
+    }
+
+    @PostMapping("/batch")
+    public BaseResponseDTO<BatchTransactionResponseDTO> batch(@Valid @RequestBody BatchTransactionRequestDTO batchTransactionRequestDTO) {
+        log.info("Handling request to process batch of {} transactions", batchTransactionRequestDTO.getTransactions().size());
+        return transactionService.processBatch(batchTransactionRequestDTO);
+    }
+
+    @GetMapping("/{userId}/history")
+    public BaseResponseDTO<TransactionHistoryResponseDTO> history(@PathVariable Long userId,
+                                                                  @Valid TransactionHistoryRequestDTO transactionHistoryRequestDTO) {
+        log.info("Handling request to get transaction history for user with ID: {}", userId);
+        return transactionService.getTransactionHistory(userId, transactionHistoryRequestDTO);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@Valid LedgerExportRequestDTO ledgerExportRequestDTO,
+                                                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        log.info("Handling request to export ledger for user with ID: {}", ledgerExportRequestDTO.getUserId());
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        String extension = ledgerExportRequestDTO.getFormat() == ExportFormat.CSV ? "csv" : "ndjson";
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(ledgerExportRequestDTO.getFormat() == ExportFormat.CSV
+                        ? new MediaType("text", "csv", StandardCharsets.UTF_8) : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"ledger." + extension + "\"");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        return response.body(out -> {
+            if (gzip) {
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024)) {
+                    ledgerExportService.exportLedger(ledgerExportRequestDTO, gzipOut);
+                }
+            } else {
+                ledgerExportService.exportLedger(ledgerExportRequestDTO, out);
+            }
+        });
+    }
+
+    // The header is the only source of the key, whatever the body contains
+    private void applyIdempotencyKey(TransactionRequestDTO transactionRequestDTO, String idempotencyKey) {
+        transactionRequestDTO.setIdempotencyKey(idempotencyKey);
+    }
 }
@@ -1,8 +1,12 @@
 package dev.dwidi.walletservice.controller;
 
 import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserImportRequestDTO;
+import dev.dwidi.walletservice.dto.user.UserImportResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserPatchRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserResponseDTO;
+import dev.dwidi.walletservice.logging.PiiMasker;
 import dev.dwidi.walletservice.service.user.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -18,11 +22,17 @@ public class UserController {
     private final UserService userService;
 
     @PostMapping("/create")
-    public BaseResponseDTO<UserResponseDTO> createUser(@RequestBody UserRequestDTO userRequestDTO) {
-        log.info("Handling request to create user {}", userRequestDTO);
+    public BaseResponseDTO<UserResponseDTO> createUser(@Valid @RequestBody UserRequestDTO userRequestDTO) {
+        log.info("Handling request to create user with email {}", PiiMasker.maskEmail(userRequestDTO.getEmail()));
         return userService.createUser(userRequestDTO);
     }
 
+    @PostMapping("/import")
+    public BaseResponseDTO<UserImportResponseDTO> importUsers(@Valid @RequestBody UserImportRequestDTO userImportRequestDTO) {
+        log.info("Handling request to import {} users", userImportRequestDTO.getUsers().size());
+        return userService.importUsers(userImportRequestDTO);
+    }
+
     @GetMapping("/{userId}")
     public BaseResponseDTO<UserResponseDTO> getUserById(@PathVariable Long userId) {
         log.info("Handling request to get user by ID {}", userId);
@@ -35,6 +45,12 @@ public class UserController {
         return userService.editUser(userId, userRequestDTO);
     }
 
+    @PatchMapping("/edit/{userId}")
+    public BaseResponseDTO<UserResponseDTO> patchUser(@PathVariable Long userId, @Valid @RequestBody UserPatchRequestDTO userPatchRequestDTO) {
+        log.info("Handling request to patch user {}", userId);
+        return userService.patchUser(userId, userPatchRequestDTO);
+    }
+
     @DeleteMapping("/delete/{userId}")
     public BaseResponseDTO<UserResponseDTO> deleteUser(@PathVariable Long userId) {
         log.info("Handling request to delete user id {}", userId);
@@ -0,0 +1,15 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@NoArgsConstructor
+public class BatchTransactionItemDTO extends TransactionRequestDTO {
+
+    @NotNull(message = "User ID is required")
+    private Long userId;
+}
@@ -0,0 +1,20 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchTransactionRequestDTO {
+
+    @NotEmpty(message = "Transactions are required")
+    @Size(max = 1000, message = "A batch can contain at most 1000 transactions")
+    private List<@Valid BatchTransactionItemDTO> transactions;
+}
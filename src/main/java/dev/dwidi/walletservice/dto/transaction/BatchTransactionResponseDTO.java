@@ -0,0 +1,18 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BatchTransactionResponseDTO {
+    private Integer succeeded;
+    private Integer failed;
+    private List<BatchTransactionResultDTO> results;
+}
@@ -0,0 +1,18 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BatchTransactionResultDTO {
+    private Integer index;
+    private Long userId;
+    private Integer statusCode;
+    private String message;
+    private TransactionResponseDTO transaction;
+}
@@ -0,0 +1,25 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import jakarta.validation.Constraint;
+import jakarta.validation.Payload;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * An ISO 4217 currency code known to {@link java.util.Currency} whose minor unit is a hundredth,
+ * like every balance. Null is valid, the request then uses the default currency.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+@Constraint(validatedBy = CurrencyCodeValidator.class)
+public @interface CurrencyCode {
+
+    String message() default "Currency must be a 3-letter ISO 4217 code of a currency with 2 decimal places";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+}
@@ -0,0 +1,32 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import dev.dwidi.walletservice.entity.Money;
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+
+import java.util.Currency;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Checks {@link CurrencyCode}. A code that merely looks like one, such as {@code XYZ}, would
+ * otherwise become a permanent balance row on its first credit. Balances are kept with
+ * {@link Money#SCALE} decimals, so currencies with another number of minor units, such as JPY
+ * or KWD, are refused rather than stored with the wrong precision.
+ */
+public class CurrencyCodeValidator implements ConstraintValidator<CurrencyCode, String> {
+
+    private static final Set<String> CODES = Currency.getAvailableCurrencies().stream()
+            .filter(currency -> currency.getDefaultFractionDigits() == Money.SCALE)
+            .map(Currency::getCurrencyCode)
+            .collect(Collectors.toUnmodifiableSet());
+
+    public static boolean isSupported(String currency) {
+        return CODES.contains(currency);
+    }
+
+    @Override
+    public boolean isValid(String value, ConstraintValidatorContext context) {
+        return value == null || isSupported(value);
+    }
+}
@@ -0,0 +1,28 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import dev.dwidi.walletservice.enums.ExportFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LedgerExportRequestDTO {
+
+    // Leave empty to export the ledger of every user
+    private Long userId;
+
+    // Inclusive lower bound on the transaction time
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+
+    // Exclusive upper bound on the transaction time
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+
+    private ExportFormat format = ExportFormat.CSV;
+}
@@ -0,0 +1,34 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionHistoryRequestDTO {
+
+    private TransactionCategory category;
+
+    // Inclusive lower bound on the transaction time
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+
+    // Exclusive upper bound on the transaction time
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+
+    // Opaque position returned as nextCursor by the previous page
+    private String cursor;
+
+    @Min(value = 1, message = "Size must be at least 1")
+    @Max(value = 100, message = "Size must be at most 100")
+    private int size = 20;
+}
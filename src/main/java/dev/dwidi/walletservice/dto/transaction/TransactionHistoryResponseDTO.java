@@ -0,0 +1,19 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TransactionHistoryResponseDTO {
+    private List<TransactionResponseDTO> transactions;
+    private Integer size;
+    private Boolean hasNext;
+    private String nextCursor;
+}
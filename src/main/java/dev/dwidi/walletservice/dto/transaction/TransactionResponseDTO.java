@@ -16,8 +16,10 @@ import java.time.LocalDateTime;
 public class TransactionResponseDTO {
     private Long id;
     private TransactionCategory transactionCategory;
+    private String currency;
     private BigDecimal amount;
     private BigDecimal lastBalance;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    private Long counterpartyUserId;
 }
@@ -0,0 +1,34 @@
+package dev.dwidi.walletservice.dto.transaction;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import dev.dwidi.walletservice.entity.Money;
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransferRequestDTO {
+
+    @NotNull(message = "Receiving user is required")
+    private Long toUserId;
+
+    @NotNull(message = "Amount is required")
+    @Positive(message = "Amount must be greater than 0")
+    @Digits(integer = 16, fraction = Money.SCALE, message = "Amount must have at most 16 digits before and 2 after the decimal point")
+    private BigDecimal amount;
+
+    // Set from the Idempotency-Key header only, a key in the body is ignored
+    @JsonIgnore
+    private String idempotencyKey;
+
+    // ISO 4217 code, the configured default currency when absent
+    @CurrencyCode
+    private String currency;
+}
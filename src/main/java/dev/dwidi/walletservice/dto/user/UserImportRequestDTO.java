@@ -0,0 +1,20 @@
+package dev.dwidi.walletservice.dto.user;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserImportRequestDTO {
+
+    @NotEmpty(message = "Users are required")
+    @Size(max = 10000, message = "An import can contain at most 10000 users")
+    private List<@Valid UserRequestDTO> users;
+}
@@ -0,0 +1,18 @@
+package dev.dwidi.walletservice.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UserImportResponseDTO {
+    private Integer created;
+    private Integer failed;
+    private List<UserImportResultDTO> results;
+}
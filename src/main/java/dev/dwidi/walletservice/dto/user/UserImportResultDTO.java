@@ -0,0 +1,17 @@
+package dev.dwidi.walletservice.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UserImportResultDTO {
+    private Integer index;
+    private Integer statusCode;
+    private String message;
+    private UserResponseDTO user;
+}
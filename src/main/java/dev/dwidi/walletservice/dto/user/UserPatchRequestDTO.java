@@ -0,0 +1,48 @@
+package dev.dwidi.walletservice.dto.user;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import dev.dwidi.walletservice.logging.PiiMasker;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Partial profile update: fields left out (or null) keep their current value.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserPatchRequestDTO {
+
+    @Pattern(regexp = ".*\\S.*", message = "Full name must not be blank")
+    private String fullName;
+
+    @Email(message = "Email must format on name@example.com")
+    @Pattern(regexp = ".*\\S.*", message = "Email must not be blank")
+    @ToString.Exclude
+    private String email;
+
+    @Pattern(regexp = ".*\\S.*", message = "Phone number must not be blank")
+    @ToString.Exclude
+    private String phoneNumber;
+
+    @JsonIgnore
+    @AssertTrue(message = "At least one field is required")
+    public boolean isAnyFieldSet() {
+        return fullName != null || email != null || phoneNumber != null;
+    }
+
+    @ToString.Include(name = "email")
+    private String maskedEmail() {
+        return PiiMasker.maskEmail(email);
+    }
+
+    @ToString.Include(name = "phoneNumber")
+    private String maskedPhoneNumber() {
+        return PiiMasker.maskPhoneNumber(phoneNumber);
+    }
+}
@@ -1,9 +1,12 @@
 package dev.dwidi.walletservice.dto.user;
 
+import dev.dwidi.walletservice.logging.PiiMasker;
+import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data
 @AllArgsConstructor
@@ -14,8 +17,21 @@ public class UserRequestDTO {
     private String fullName;
 
     @NotBlank(message = "Email is required")
+    @Email(message = "Email must format on name@example.com")
+    @ToString.Exclude
     private String email;
 
     @NotBlank(message = "Phone number is required")
+    @ToString.Exclude
     private String phoneNumber;
+
+    @ToString.Include(name = "email")
+    private String maskedEmail() {
+        return PiiMasker.maskEmail(email);
+    }
+
+    @ToString.Include(name = "phoneNumber")
+    private String maskedPhoneNumber() {
+        return PiiMasker.maskPhoneNumber(phoneNumber);
+    }
 }
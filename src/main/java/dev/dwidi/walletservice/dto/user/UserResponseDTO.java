@@ -1,11 +1,14 @@
 package dev.dwidi.walletservice.dto.user;
 
+import dev.dwidi.walletservice.logging.PiiMasker;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Data
 @AllArgsConstructor
@@ -13,9 +16,22 @@ import java.time.LocalDateTime;
 public class UserResponseDTO {
     private Long id;
     private String fullName;
+    @ToString.Exclude
     private String email;
+    @ToString.Exclude
     private String phoneNumber;
-    private BigDecimal lastBalance;
+    // Balance by ISO 4217 currency code, only currencies the wallet has held
+    private Map<String, BigDecimal> balances;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+
+    @ToString.Include(name = "email")
+    private String maskedEmail() {
+        return PiiMasker.maskEmail(email);
+    }
+
+    @ToString.Include(name = "phoneNumber")
+    private String maskedPhoneNumber() {
+        return PiiMasker.maskPhoneNumber(phoneNumber);
+    }
 }
@@ -0,0 +1,19 @@
+package dev.dwidi.walletservice.entity;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * One balance of a wallet: the wallet's user id and an ISO 4217 currency code. Keys are ordered
+ * by user id, then currency, which is the order in which every writer locks balances.
+ */
+public record BalanceKey(Long userId, String currency) implements Comparable<BalanceKey>, Serializable {
+
+    private static final Comparator<BalanceKey> ORDER =
+            Comparator.comparing(BalanceKey::userId).thenComparing(BalanceKey::currency);
+
+    @Override
+    public int compareTo(BalanceKey other) {
+        return ORDER.compare(this, other);
+    }
+}
@@ -0,0 +1,9 @@
+package dev.dwidi.walletservice.entity;
+
+import java.io.Serializable;
+
+/**
+ * One shard of a wallet's balance in a currency (see {@link WalletBalanceShard}).
+ */
+public record BalanceShardKey(Long userId, String currency, Integer shard) implements Serializable {
+}
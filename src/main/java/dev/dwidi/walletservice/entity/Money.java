@@ -0,0 +1,56 @@
+package dev.dwidi.walletservice.entity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money as a whole number of minor units (cents), so wallet arithmetic is plain
+ * {@code long} arithmetic instead of a {@link BigDecimal} allocation per step. The currency
+ * scale is {@link #SCALE} digits after the decimal point; amounts are stored as
+ * {@code NUMERIC(PRECISION, SCALE)}. Arithmetic that would overflow throws
+ * {@link ArithmeticException} rather than wrapping around.
+ */
+public record Money(long minorUnits) implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+    public static final int PRECISION = 19;
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * Converts an exact decimal amount. Throws {@link ArithmeticException} when the amount has
+     * more than {@link #SCALE} significant fraction digits or does not fit in a {@code long}.
+     */
+    public static Money of(BigDecimal amount) {
+        return new Money(amount.setScale(SCALE, RoundingMode.UNNECESSARY).scaleByPowerOfTen(SCALE).longValueExact());
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return new Money(Math.negateExact(minorUnits));
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -5,24 +5,57 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+/**
+ * A ledger row. The table is range-partitioned by month on {@code created_at} (see the
+ * migrations and {@link dev.dwidi.walletservice.service.transaction.LedgerPartitionManager}),
+ * so its primary key is (id, created_at) and idempotency keys are kept unique in
+ * {@link TransactionIdempotencyKey}.
+ */
 @Entity
 @Getter
 @Setter
-@Table(name = "transaction")
+@Table(name = "transaction", indexes = {
+        @Index(name = "idx_transaction_user_created_id", columnList = "user_id, created_at, id"),
+        @Index(name = "idx_transaction_created_id", columnList = "created_at, id"),
+        @Index(name = "idx_transaction_user_currency_ledger_sequence", columnList = "user_id, currency, ledger_sequence")
+})
 public class Transaction {
 
+    // Ids are handed out in blocks (pooled-lo), so inserts do not need a round trip each and can be batched
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_seq")
+    @SequenceGenerator(name = "transaction_seq", sequenceName = "transaction_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Enumerated(EnumType.STRING)
     private TransactionCategory transactionCategory;
 
-    private BigDecimal amount;
+    // ISO 4217 code of the balance this transaction belongs to
+    @Column(length = 3)
+    private String currency;
+
+    @Column(precision = Money.PRECISION, scale = Money.SCALE)
+    private Money amount;
+
+    // Balance in this currency right after this transaction was applied
+    @Column(precision = Money.PRECISION, scale = Money.SCALE)
+    private Money lastBalance;
+
+    private String idempotencyKey;
+
+    // Position of this transaction in the ledger of its wallet's balance in this currency, 1, 2, 3, ...
+    // Only set in append mode
+    private Long ledgerSequence;
 
+    // The other wallet of a transfer, so its two rows can be matched; null for other categories
+    private Long counterpartyUserId;
+
+    // Partition key, set before insert
+    @Column(nullable = false)
     private LocalDateTime createdAt;
 
     private LocalDateTime updatedAt;
@@ -35,26 +68,10 @@ public class Transaction {
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
-        validateBalance();
     }
 
     @PreUpdate
     protected void onUpdate() {
         this.updatedAt = LocalDateTime.now();
-        validateBalance();
-    }
-
-    private void validateBalance() {
-        if (this.user != null && this.amount != null) {
-            BigDecimal currentBalance = this.user.getLastBalance();
-
-            if (transactionCategory == TransactionCategory.BILLPAYMENT) {
-                BigDecimal endBalance = currentBalance.subtract(this.amount);
-
-                if (endBalance.compareTo(BigDecimal.ZERO) < 0) {
-                    throw new IllegalStateException("Insufficient balance");
-                }
-            }
-        }
     }
 }
@@ -0,0 +1,41 @@
+package dev.dwidi.walletservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * The ledger row recorded for an idempotency key of a wallet. The ledger is partitioned by month
+ * and a unique constraint of a partitioned table can only hold within a month, so the keys are
+ * kept unique here and inserted in the same transaction as their {@link Transaction}.
+ */
+@Entity
+@Getter
+@Setter
+@IdClass(UserIdempotencyKey.class)
+@Table(name = "transaction_idempotency_key", indexes = {
+        @Index(name = "idx_transaction_idempotency_key_created_at", columnList = "created_at")
+})
+public class TransactionIdempotencyKey {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    private String idempotencyKey;
+
+    // Only mapped for the foreign key, keys are inserted through TransactionJdbcRepository
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", insertable = false, updatable = false)
+    private User user;
+
+    @Column(nullable = false)
+    private Long transactionId;
+
+    // Partition key of the transaction, so looking it up only reads its month
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -5,10 +5,7 @@ import jakarta.validation.constraints.Email;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 
 @Entity
 @Getter
@@ -16,8 +13,11 @@ import java.util.List;
 @Table(name = "user_wallet")
 public class User {
 
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_wallet_seq")
+    @SequenceGenerator(name = "user_wallet_seq", sequenceName = "user_wallet_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     private String fullName;
@@ -29,15 +29,15 @@ public class User {
     @Column(unique = true, nullable = false)
     private String phoneNumber;
 
-    private BigDecimal lastBalance;
+    // Guards the fields written through the entity, a stale save fails instead of overwriting a concurrent edit
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
 
     private LocalDateTime createdAt;
 
     private LocalDateTime updatedAt;
 
-    @OneToMany(mappedBy = "user", orphanRemoval = true, cascade = CascadeType.ALL)
-    private List<Transaction> transactions = new ArrayList<>();
-
     @PrePersist
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
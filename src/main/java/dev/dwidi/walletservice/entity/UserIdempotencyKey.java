@@ -0,0 +1,9 @@
+package dev.dwidi.walletservice.entity;
+
+import java.io.Serializable;
+
+/**
+ * An idempotency key of a wallet (see {@link TransactionIdempotencyKey}).
+ */
+public record UserIdempotencyKey(Long userId, String idempotencyKey) implements Serializable {
+}
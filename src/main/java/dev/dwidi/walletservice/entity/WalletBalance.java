@@ -0,0 +1,45 @@
+package dev.dwidi.walletservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * The balance of a wallet in one currency. A wallet has one row per currency it has ever held,
+ * created by its first credit in that currency, so writers of different currencies of the same
+ * wallet never wait for each other's row lock.
+ */
+@Entity
+@Getter
+@Setter
+@IdClass(BalanceKey.class)
+@Table(name = "wallet_balance")
+public class WalletBalance {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(length = 3)
+    private String currency;
+
+    // Only mapped for the foreign key, the balance statements address the row by its key
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", insertable = false, updatable = false)
+    private User user;
+
+    // Only changed by the balance statements of the repositories.
+    // In append mode this is a snapshot: the balance after the transaction numbered snapshotSequence
+    @Column(nullable = false, precision = Money.PRECISION, scale = Money.SCALE)
+    private Money balance;
+
+    @Column(nullable = false)
+    private Long snapshotSequence = 0L;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,42 @@
+package dev.dwidi.walletservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Part of the balance of a sharded wallet in one currency. Credits to a sharded wallet land on
+ * one of its shards instead of the {@link WalletBalance} row, so concurrent credits lock
+ * different rows; the wallet's balance is its balance row plus all of its shards. Debits and
+ * multi-wallet writes sweep the shards back into the balance row first.
+ */
+@Entity
+@Getter
+@Setter
+@IdClass(BalanceShardKey.class)
+@Table(name = "wallet_balance_shard")
+public class WalletBalanceShard {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(length = 3)
+    private String currency;
+
+    @Id
+    private Integer shard;
+
+    // Only mapped for the foreign key, the balance statements address the row by its key
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", insertable = false, updatable = false)
+    private User user;
+
+    @Column(nullable = false, precision = Money.PRECISION, scale = Money.SCALE)
+    private Money balance;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,25 @@
+package dev.dwidi.walletservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marks a deleted wallet. Its archived ledger months still hold its rows, and readers of the
+ * archive skip the users that have a tombstone.
+ */
+@Entity
+@Getter
+@Setter
+@Table(name = "wallet_tombstone")
+public class WalletTombstone {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false)
+    private LocalDateTime deletedAt;
+}
@@ -0,0 +1,6 @@
+package dev.dwidi.walletservice.enums;
+
+public enum ExportFormat {
+    CSV,
+    NDJSON
+}
@@ -0,0 +1,8 @@
+package dev.dwidi.walletservice.enums;
+
+public enum LedgerMode {
+    // wallet_balance.balance is updated in place by every transaction
+    UPDATE,
+    // Transactions are only appended; wallet_balance holds a periodic snapshot of each balance
+    APPEND
+}
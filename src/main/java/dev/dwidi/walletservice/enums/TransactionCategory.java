@@ -3,5 +3,19 @@ package dev.dwidi.walletservice.enums;
 public enum TransactionCategory {
     TOPUP,
     REFUND,
-    BILLPAYMENT
+    BILLPAYMENT,
+    // The two ledger rows of a wallet-to-wallet transfer, on the sending and the receiving wallet
+    TRANSFER_OUT,
+    TRANSFER_IN;
+
+    /**
+     * Whether this category takes money out of the wallet.
+     */
+    public boolean isDebit() {
+        return this == BILLPAYMENT || this == TRANSFER_OUT;
+    }
+
+    public boolean isTransfer() {
+        return this == TRANSFER_OUT || this == TRANSFER_IN;
+    }
 }
@@ -0,0 +1,11 @@
+package dev.dwidi.walletservice.exception;
+
+/**
+ * A debit the wallet's balance in its currency does not cover.
+ */
+public class InsufficientBalanceException extends RuntimeException {
+
+    public InsufficientBalanceException() {
+        super("Insufficient balance");
+    }
+}
@@ -0,0 +1,11 @@
+package dev.dwidi.walletservice.exception;
+
+/**
+ * The wallet a request names does not exist.
+ */
+public class UserNotFoundException extends RuntimeException {
+
+    public UserNotFoundException() {
+        super("User not found");
+    }
+}
@@ -0,0 +1,30 @@
+package dev.dwidi.walletservice.logging;
+
+/**
+ * Masks personal data before it reaches a log line. Only enough is kept to tell records
+ * apart when reading logs: the first character and domain of an email address and the last
+ * two digits of a phone number.
+ */
+public final class PiiMasker {
+
+    private static final String MASK = "***";
+
+    private PiiMasker() {
+    }
+
+    public static String maskEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        int at = email.indexOf('@');
+        return at <= 0 ? MASK : email.charAt(0) + MASK + email.substring(at);
+    }
+
+    public static String maskPhoneNumber(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        int length = phoneNumber.length();
+        return length <= 2 ? MASK : MASK + phoneNumber.substring(length - 2);
+    }
+}
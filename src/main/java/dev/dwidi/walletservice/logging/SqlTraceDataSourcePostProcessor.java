@@ -0,0 +1,138 @@
+package dev.dwidi.walletservice.logging;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs a sample of the SQL statements sent to the database together with their execution
+ * time. It replaces {@code spring.jpa.show-sql}, which prints every Hibernate statement
+ * synchronously to stdout and misses the statements issued through {@code JdbcTemplate}.
+ * <p>
+ * Off by default. When {@code wallet.sql-trace.sample-rate} is above zero the pooled
+ * {@link DataSource} is wrapped and each statement is traced with that probability; the rest
+ * run on the driver's statement directly. Statements are logged with their placeholders, bound
+ * values never appear in the log.
+ */
+@Component
+@Slf4j
+public class SqlTraceDataSourcePostProcessor implements BeanPostProcessor {
+
+    private final double sampleRate;
+
+    public SqlTraceDataSourcePostProcessor(@Value("${wallet.sql-trace.sample-rate:0}") double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (sampleRate <= 0 || !(bean instanceof DataSource dataSource)) {
+            return bean;
+        }
+        log.info("Tracing a sample of {} of the SQL statements on data source {}", sampleRate, beanName);
+        return new TracingDataSource(dataSource, sampleRate);
+    }
+
+    static final class TracingDataSource extends DelegatingDataSource {
+
+        private final double sampleRate;
+
+        TracingDataSource(DataSource target, double sampleRate) {
+            super(target);
+            this.sampleRate = sampleRate;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return tracing(obtainTargetDataSource().getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return tracing(obtainTargetDataSource().getConnection(username, password));
+        }
+
+        private Connection tracing(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        Object result = invoke(connection, method, args);
+                        if (result instanceof Statement statement && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                            // prepareStatement and prepareCall take the SQL up front, createStatement gets it on execute
+                            String sql = args != null && args[0] instanceof String prepared ? prepared : null;
+                            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{method.getReturnType()},
+                                    new TracingStatement(statement, sql));
+                        }
+                        return result;
+                    });
+        }
+    }
+
+    private static final class TracingStatement implements InvocationHandler {
+
+        private final Statement statement;
+        private final String preparedSql;
+        private int batchSize;
+
+        private TracingStatement(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("addBatch")) {
+                batchSize++;
+            }
+            if (!name.startsWith("execute")) {
+                return SqlTraceDataSourcePostProcessor.invoke(statement, method, args);
+            }
+
+            String sql = args != null && args.length > 0 && args[0] instanceof String executed ? executed : preparedSql;
+            int batch = name.equals("executeBatch") ? batchSize : 0;
+            batchSize = 0;
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = SqlTraceDataSourcePostProcessor.invoke(statement, method, args);
+                failed = false;
+                return result;
+            } finally {
+                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                log.atInfo()
+                        .addKeyValue("sql.statement", sql)
+                        .addKeyValue("sql.duration_us", micros)
+                        .addKeyValue("sql.batch_size", batch)
+                        .addKeyValue("sql.failed", failed)
+                        .log("SQL took {} us: {}", micros, sql);
+            }
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
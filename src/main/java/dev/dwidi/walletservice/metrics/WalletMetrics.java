@@ -0,0 +1,219 @@
+package dev.dwidi.walletservice.metrics;
+
+import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.exception.InsufficientBalanceException;
+import dev.dwidi.walletservice.exception.UserNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Timers and counters for wallet operations.
+ * <p>
+ * {@code wallet.operation} times each service call, tagged with the operation and its outcome:
+ * the type of the exception it threw, or the status code of the response it returned.
+ * {@code wallet.operation.phase} times the steps inside it (waiting for the wallet, lookups,
+ * in-memory balance computation, ledger insert and wallet update), so a slow operation can be
+ * attributed to the application, the connection pool ({@code hikaricp.connections.acquire}) or
+ * the database. {@code wallet.rejections} counts requests and batch items refused because the
+ * wallet does not exist or its balance is insufficient. {@code wallet.conflicts} counts attempts
+ * that lost a race with a concurrent write, tagged with whether they were retried or given up.
+ * {@code wallet.group.commit.size} counts the mutations written by each group commit.
+ * <p>
+ * Meters are registered the first time a combination of tags is recorded and then kept in
+ * arrays indexed by the enum ordinals, so recording on the hot path does not go through the
+ * registry. Registering is idempotent, so two threads racing on the same slot get the same meter.
+ */
+@Component
+public class WalletMetrics {
+
+    public enum Operation {
+        TOPUP, REFUND, BILLPAYMENT, TRANSFER, CREDITS, BATCH, GROUP_COMMIT, HISTORY,
+        USER_CREATE, USER_IMPORT, USER_GET, USER_EDIT, USER_DELETE;
+
+        public static Operation of(TransactionCategory category) {
+            return switch (category) {
+                case TOPUP -> TOPUP;
+                case REFUND -> REFUND;
+                case BILLPAYMENT -> BILLPAYMENT;
+                case TRANSFER_OUT, TRANSFER_IN -> TRANSFER;
+            };
+        }
+    }
+
+    public enum Phase {
+        QUEUE, LOOKUP, BALANCE, LEDGER_INSERT, WALLET_UPDATE
+    }
+
+    public enum Outcome {
+        SUCCESS, NOT_FOUND, INSUFFICIENT_BALANCE, CONFLICT, ERROR
+    }
+
+    private static final int OPERATIONS = Operation.values().length;
+    private static final int PHASES = Phase.values().length;
+    private static final int OUTCOMES = Outcome.values().length;
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicReferenceArray<Timer> operationTimers = new AtomicReferenceArray<>(OPERATIONS * OUTCOMES);
+    private final AtomicReferenceArray<Timer> phaseTimers = new AtomicReferenceArray<>(OPERATIONS * PHASES);
+    private final AtomicReferenceArray<Counter> rejections = new AtomicReferenceArray<>(OPERATIONS * OUTCOMES);
+    private final AtomicReferenceArray<Counter> conflicts = new AtomicReferenceArray<>(OPERATIONS * 2);
+    private volatile DistributionSummary groupCommitSizes;
+
+    public WalletMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs an operation, recording its duration under the outcome derived from the exception it
+     * throws, or from the status code of the response it returns.
+     */
+    public <T> T record(Operation operation, Supplier<T> action) {
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            T result = action.get();
+            outcome = result instanceof BaseResponseDTO<?> response ? outcomeOf(response) : Outcome.SUCCESS;
+            rejected(operation, outcome);
+            return result;
+        } catch (RuntimeException e) {
+            outcome = outcomeOf(e);
+            rejected(operation, outcome);
+            throw e;
+        } finally {
+            operationTimer(operation, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public <T> T recordPhase(Operation operation, Phase phase, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            recordPhase(operation, phase, System.nanoTime() - start);
+        }
+    }
+
+    public void recordPhase(Operation operation, Phase phase, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            recordPhase(operation, phase, System.nanoTime() - start);
+        }
+    }
+
+    public void recordPhase(Operation operation, Phase phase, long nanos) {
+        phaseTimer(operation, phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts a refused request or batch item; other outcomes are ignored.
+     */
+    public void rejected(Operation operation, Outcome reason) {
+        if (reason != Outcome.NOT_FOUND && reason != Outcome.INSUFFICIENT_BALANCE) {
+            return;
+        }
+        int index = operation.ordinal() * OUTCOMES + reason.ordinal();
+        Counter counter = rejections.get(index);
+        if (counter == null) {
+            counter = Counter.builder("wallet.rejections")
+                    .description("Wallet requests refused for a missing wallet or insufficient balance")
+                    .tag("operation", tagValue(operation))
+                    .tag("reason", tagValue(reason))
+                    .register(meterRegistry);
+            rejections.set(index, counter);
+        }
+        counter.increment();
+    }
+
+    /**
+     * Counts an attempt that failed on a concurrent write, {@code retried} when another attempt follows.
+     */
+    public void conflict(Operation operation, boolean retried) {
+        int index = operation.ordinal() * 2 + (retried ? 1 : 0);
+        Counter counter = conflicts.get(index);
+        if (counter == null) {
+            counter = Counter.builder("wallet.conflicts")
+                    .description("Wallet operation attempts that failed on a concurrent write")
+                    .tag("operation", tagValue(operation))
+                    .tag("resolution", retried ? "retried" : "exhausted")
+                    .register(meterRegistry);
+            conflicts.set(index, counter);
+        }
+        counter.increment();
+    }
+
+    public void groupCommitted(int size) {
+        DistributionSummary summary = groupCommitSizes;
+        if (summary == null) {
+            summary = DistributionSummary.builder("wallet.group.commit.size")
+                    .description("Wallet mutations written by one group commit")
+                    .baseUnit("mutations")
+                    .register(meterRegistry);
+            groupCommitSizes = summary;
+        }
+        summary.record(size);
+    }
+
+    private Timer operationTimer(Operation operation, Outcome outcome) {
+        int index = operation.ordinal() * OUTCOMES + outcome.ordinal();
+        Timer timer = operationTimers.get(index);
+        if (timer == null) {
+            timer = Timer.builder("wallet.operation")
+                    .description("Time spent in a wallet operation")
+                    .tag("operation", tagValue(operation))
+                    .tag("outcome", tagValue(outcome))
+                    .register(meterRegistry);
+            operationTimers.set(index, timer);
+        }
+        return timer;
+    }
+
+    private Timer phaseTimer(Operation operation, Phase phase) {
+        int index = operation.ordinal() * PHASES + phase.ordinal();
+        Timer timer = phaseTimers.get(index);
+        if (timer == null) {
+            timer = Timer.builder("wallet.operation.phase")
+                    .description("Time spent in one step of a wallet operation")
+                    .tag("operation", tagValue(operation))
+                    .tag("phase", tagValue(phase))
+                    .register(meterRegistry);
+            phaseTimers.set(index, timer);
+        }
+        return timer;
+    }
+
+    static Outcome outcomeOf(RuntimeException e) {
+        return switch (e) {
+            case UserNotFoundException notFound -> Outcome.NOT_FOUND;
+            case InsufficientBalanceException insufficient -> Outcome.INSUFFICIENT_BALANCE;
+            default -> Outcome.ERROR;
+        };
+    }
+
+    // Some refusals, such as a taken email, are returned as a response rather than thrown
+    static Outcome outcomeOf(BaseResponseDTO<?> response) {
+        if (response.getStatusCode() == null || response.getStatusCode() < HttpStatus.BAD_REQUEST.value()) {
+            return Outcome.SUCCESS;
+        }
+        return switch (HttpStatus.valueOf(response.getStatusCode())) {
+            case NOT_FOUND -> Outcome.NOT_FOUND;
+            case CONFLICT -> Outcome.CONFLICT;
+            default -> Outcome.ERROR;
+        };
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
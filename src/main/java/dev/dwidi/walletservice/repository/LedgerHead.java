@@ -0,0 +1,30 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.entity.Money;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Current end of the append-only ledger of one wallet balance: the balance, the sequence number of
+ * its last transaction and the sequence number up to which it is snapshotted on its balance row.
+ * A snapshot sequence of zero means the balance row does not exist yet.
+ */
+@Getter
+@RequiredArgsConstructor
+public class LedgerHead {
+
+    private final Money balance;
+    private final long sequence;
+    private final long snapshotSequence;
+
+    public LedgerHead append(Money delta) {
+        return new LedgerHead(balance.plus(delta), sequence + 1, snapshotSequence);
+    }
+
+    /**
+     * Number of transactions a balance read has to sum on top of the snapshot.
+     */
+    public long tailLength() {
+        return sequence - snapshotSequence;
+    }
+}
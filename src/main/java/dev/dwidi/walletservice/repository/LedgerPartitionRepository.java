@@ -0,0 +1,143 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.entity.Transaction;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Partition DDL of the ledger. The transaction table is range-partitioned on created_at with one
+ * partition per month, named {@code transaction_yyyy_mm}. Every statement must run inside a
+ * transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerPartitionRepository {
+
+    public static final String ARCHIVE_SCHEMA = "ledger_archive";
+
+    private static final DateTimeFormatter NAME_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final Pattern PARTITION_NAME = Pattern.compile("transaction_(\\d{4})_(\\d{2})");
+
+    private static final String TRY_LOCK = "SELECT pg_try_advisory_xact_lock(hashtextextended('transaction partitions', 0))";
+
+    private static final String FIND_PARTITIONS = """
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'transaction'::regclass
+            """;
+
+    private static final String FIND_ARCHIVED_PARTITIONS = """
+            SELECT c.relname
+            FROM pg_class c
+            JOIN pg_namespace n ON n.oid = c.relnamespace
+            WHERE n.nspname = '%s' AND c.relkind = 'r'
+            """.formatted(ARCHIVE_SCHEMA);
+
+    private static final String SELECT_ARCHIVED_PARTITION = """
+            SELECT t.id, t.user_id, t.transaction_category, t.currency, t.amount, t.last_balance, t.idempotency_key, t.ledger_sequence, t.counterparty_user_id, t.created_at, t.updated_at
+            FROM %s.%s t
+            ORDER BY t.created_at, t.id
+            """;
+
+    private static final String DELETE_IDEMPOTENCY_KEYS_BEFORE = "DELETE FROM transaction_idempotency_key WHERE created_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Takes the lock that keeps instances from changing partitions at the same time, held until
+     * the transaction ends, and makes the DDL that follows give up after {@code lockTimeout}
+     * rather than wait behind long ledger transactions, blocking every writer queued after it.
+     * Returns false when another instance holds the lock.
+     */
+    public boolean tryLock(Duration lockTimeout) {
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(TRY_LOCK, Boolean.class))) {
+            return false;
+        }
+        jdbcTemplate.queryForObject("SELECT set_config('lock_timeout', ?, true)", String.class, lockTimeout.toMillis() + "ms");
+        return true;
+    }
+
+    /**
+     * Returns the months that have a partition attached to the ledger.
+     */
+    public SortedSet<YearMonth> findPartitions() {
+        return months(FIND_PARTITIONS);
+    }
+
+    /**
+     * Returns the months whose partition has been archived into the {@link #ARCHIVE_SCHEMA} schema.
+     */
+    public SortedSet<YearMonth> findArchivedPartitions() {
+        return months(FIND_ARCHIVED_PARTITIONS);
+    }
+
+    public void createPartition(YearMonth month) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF transaction FOR VALUES FROM ('%s') TO ('%s')"
+                .formatted(partitionName(month), month.atDay(1), month.plusMonths(1).atDay(1)));
+    }
+
+    /**
+     * Detaches the month's partition from the ledger and moves it to the {@link #ARCHIVE_SCHEMA}
+     * schema, without the foreign key to its wallets so they can still be deleted. The idempotency
+     * keys of the month and of any month before it are deleted, so a key is only remembered as
+     * long as its transaction is in the ledger. Returns the number of keys deleted.
+     */
+    public int archivePartition(YearMonth month) {
+        String name = partitionName(month);
+        jdbcTemplate.execute("ALTER TABLE transaction DETACH PARTITION " + name);
+        jdbcTemplate.execute("ALTER TABLE " + name + " DROP CONSTRAINT IF EXISTS fk_transaction_user");
+        jdbcTemplate.execute("ALTER TABLE " + name + " SET SCHEMA " + ARCHIVE_SCHEMA);
+        return jdbcTemplate.update(DELETE_IDEMPOTENCY_KEYS_BEFORE, Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay()));
+    }
+
+    public long countArchivedPartition(YearMonth month) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM %s.%s".formatted(ARCHIVE_SCHEMA, partitionName(month)), Long.class);
+    }
+
+    /**
+     * Streams an archived partition in (created_at, id) order through a forward-only cursor, like
+     * {@link TransactionJdbcRepository#streamLedger}.
+     */
+    public void streamArchivedPartition(YearMonth month, int fetchSize, Consumer<Transaction> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(SELECT_ARCHIVED_PARTITION.formatted(ARCHIVE_SCHEMA, partitionName(month)),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(TransactionJdbcRepository.mapTransaction(rs)));
+    }
+
+    public void dropArchivedPartition(YearMonth month) {
+        jdbcTemplate.execute("DROP TABLE " + ARCHIVE_SCHEMA + "." + partitionName(month));
+    }
+
+    private SortedSet<YearMonth> months(String sql) {
+        SortedSet<YearMonth> months = new TreeSet<>();
+        jdbcTemplate.query(sql, rs -> {
+            Matcher matcher = PARTITION_NAME.matcher(rs.getString(1));
+            if (matcher.matches()) {
+                months.add(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+            }
+        });
+        return months;
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "transaction_" + month.format(NAME_SUFFIX);
+    }
+}
@@ -0,0 +1,20 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.User;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * A wallet as returned by a profile patch: the updated row and its current balances by currency,
+ * read by the same statement.
+ */
+@Getter
+@RequiredArgsConstructor
+public class PatchedProfile {
+
+    private final User user;
+    private final Map<String, Money> balances;
+}
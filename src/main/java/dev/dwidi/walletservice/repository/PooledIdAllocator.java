@@ -0,0 +1,57 @@
+package dev.dwidi.walletservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out entity ids for inserts that bypass Hibernate, using the same pooled-lo layout as
+ * the entity sequence generators: every {@code nextval} reserves the block
+ * {@code [value, value + allocationSize)}. Ids allocated here therefore never collide with the
+ * ones Hibernate assigns from the same sequence. Like Hibernate's optimizer, the unused rest of
+ * the last block is kept for the next call, so small inserts do not use up a block each.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PooledIdAllocator {
+
+    private static final String NEXT_BLOCKS = "SELECT nextval(?::regclass) FROM generate_series(1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, long[]> remainders = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public long[] allocate(String sequenceName, int allocationSize, int count) {
+        long[] ids = new long[count];
+        int filled = 0;
+        lock.lock();
+        try {
+            // {next id, end of block (exclusive)}
+            long[] remainder = remainders.remove(sequenceName);
+            while (remainder != null && remainder[0] < remainder[1] && filled < count) {
+                ids[filled++] = remainder[0]++;
+            }
+            if (filled < count) {
+                int blocks = (count - filled + allocationSize - 1) / allocationSize;
+                List<Long> blockStarts = jdbcTemplate.queryForList(NEXT_BLOCKS, Long.class, sequenceName, blocks);
+                for (long blockStart : blockStarts) {
+                    remainder = new long[]{blockStart, blockStart + allocationSize};
+                    while (remainder[0] < remainder[1] && filled < count) {
+                        ids[filled++] = remainder[0]++;
+                    }
+                }
+            }
+            if (remainder != null && remainder[0] < remainder[1]) {
+                remainders.put(sequenceName, remainder);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,16 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface TransactionHistoryRepository {
+    /**
+     * Returns up to {@code limit} transactions of the user, newest first, that come strictly after
+     * the ({@code afterCreatedAt}, {@code afterId}) position. Null filters are left out of the query.
+     */
+    List<TransactionResponseDTO> findHistory(Long userId, TransactionCategory category, LocalDateTime from, LocalDateTime to,
+                                             LocalDateTime afterCreatedAt, Long afterId, int limit);
+}
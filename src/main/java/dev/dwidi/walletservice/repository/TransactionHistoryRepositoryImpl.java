@@ -0,0 +1,76 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Keyset (seek) pagination over the (user_id, created_at, id) index. The query only contains the
+ * predicates that are actually used, so every page is an index range scan that starts where the
+ * previous page ended, however deep into the history it is. The cursor also bounds created_at on
+ * its own, which PostgreSQL can prune the ledger's monthly partitions with, unlike the row
+ * comparison.
+ */
+public class TransactionHistoryRepositoryImpl implements TransactionHistoryRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<TransactionResponseDTO> findHistory(Long userId, TransactionCategory category, LocalDateTime from, LocalDateTime to,
+                                                    LocalDateTime afterCreatedAt, Long afterId, int limit) {
+        StringBuilder jpql = new StringBuilder("""
+                SELECT t.id, t.transactionCategory, t.currency, t.amount, t.lastBalance, t.createdAt, t.updatedAt, t.counterpartyUserId
+                FROM Transaction t
+                WHERE t.user.id = :userId
+                """);
+        if (category != null) {
+            jpql.append(" AND t.transactionCategory = :category");
+        }
+        if (from != null) {
+            jpql.append(" AND t.createdAt >= :from");
+        }
+        if (to != null) {
+            jpql.append(" AND t.createdAt < :to");
+        }
+        if (afterCreatedAt != null) {
+            jpql.append(" AND t.createdAt <= :afterCreatedAt AND (t.createdAt, t.id) < (:afterCreatedAt, :afterId)");
+        }
+        jpql.append(" ORDER BY t.createdAt DESC, t.id DESC");
+
+        TypedQuery<Object[]> query = entityManager.createQuery(jpql.toString(), Object[].class)
+                .setParameter("userId", userId)
+                .setMaxResults(limit);
+        if (category != null) {
+            query.setParameter("category", category);
+        }
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        if (afterCreatedAt != null) {
+            query.setParameter("afterCreatedAt", afterCreatedAt);
+            query.setParameter("afterId", afterId);
+        }
+        return query.getResultList().stream().map(TransactionHistoryRepositoryImpl::toResponse).toList();
+    }
+
+    // Amounts are Money in the entity but stay BigDecimal in the API
+    private static TransactionResponseDTO toResponse(Object[] row) {
+        return new TransactionResponseDTO((Long) row[0], (TransactionCategory) row[1], (String) row[2], toBigDecimal(row[3]),
+                toBigDecimal(row[4]), (LocalDateTime) row[5], (LocalDateTime) row[6], (Long) row[7]);
+    }
+
+    private static BigDecimal toBigDecimal(Object money) {
+        return money == null ? null : ((Money) money).toBigDecimal();
+    }
+}
@@ -0,0 +1,203 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Ledger statements issued through plain JDBC so they can be batched or streamed.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TransactionJdbcRepository {
+
+    private static final String INSERT = """
+            INSERT INTO transaction (id, user_id, transaction_category, currency, amount, last_balance, idempotency_key, ledger_sequence, counterparty_user_id, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    // A data-modifying CTE, so a keyed ledger row and its key take one statement
+    private static final String INSERT_WITH_IDEMPOTENCY_KEY = """
+            WITH idempotency_key AS (
+                INSERT INTO transaction_idempotency_key (user_id, idempotency_key, transaction_id, created_at)
+                VALUES (?, ?, ?, ?)
+            )
+            INSERT INTO transaction (id, user_id, transaction_category, currency, amount, last_balance, idempotency_key, ledger_sequence, counterparty_user_id, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_IDEMPOTENCY_KEY = """
+            INSERT INTO transaction_idempotency_key (user_id, idempotency_key, transaction_id, created_at)
+            VALUES (?, ?, ?, ?)
+            """;
+
+    // The key table's created_at lets each ledger lookup skip every partition but one
+    private static final String FIND_BY_IDEMPOTENCY_KEYS = """
+            SELECT t.id, t.user_id, t.transaction_category, t.currency, t.amount, t.last_balance, t.idempotency_key, t.ledger_sequence, t.counterparty_user_id, t.created_at, t.updated_at
+            FROM unnest(?::bigint[], ?::text[]) AS r(user_id, idempotency_key)
+            JOIN transaction_idempotency_key k ON k.user_id = r.user_id AND k.idempotency_key = r.idempotency_key
+            JOIN transaction t ON t.id = k.transaction_id AND t.created_at = k.created_at
+            """;
+
+    private static final String SELECT_LEDGER = """
+            SELECT t.id, t.user_id, t.transaction_category, t.currency, t.amount, t.last_balance, t.idempotency_key, t.ledger_sequence, t.counterparty_user_id, t.created_at, t.updated_at
+            FROM transaction t
+            WHERE 1 = 1
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PooledIdAllocator pooledIdAllocator;
+
+    /**
+     * Inserts the transactions as one JDBC batch, assigning their ids from the entity sequence,
+     * after their idempotency keys (see {@link #insertIdempotencyKeys}). Every transaction must
+     * already carry its user, timestamps and balance.
+     */
+    public void insertAll(List<Transaction> transactions) {
+        long[] ids = pooledIdAllocator.allocate("transaction_seq", Transaction.ID_ALLOCATION_SIZE, transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            transactions.get(i).setId(ids[i]);
+        }
+        insertIdempotencyKeys(transactions);
+
+        jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                setRow(ps, 1, transactions.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return transactions.size();
+            }
+        });
+    }
+
+    /**
+     * Inserts one transaction that carries an idempotency key, assigning its id from the entity
+     * sequence, and records the key in the same statement. A key the wallet has already used
+     * fails the statement with a {@link org.springframework.dao.DataIntegrityViolationException}.
+     */
+    public void insertWithIdempotencyKey(Transaction transaction) {
+        transaction.setId(pooledIdAllocator.allocate("transaction_seq", Transaction.ID_ALLOCATION_SIZE, 1)[0]);
+        jdbcTemplate.update(INSERT_WITH_IDEMPOTENCY_KEY, ps -> {
+            ps.setLong(1, transaction.getUser().getId());
+            ps.setString(2, transaction.getIdempotencyKey());
+            ps.setLong(3, transaction.getId());
+            ps.setTimestamp(4, Timestamp.valueOf(transaction.getCreatedAt()));
+            setRow(ps, 5, transaction);
+        });
+    }
+
+    /**
+     * Records the idempotency keys of the given saved transactions, as one JDBC batch. A key the
+     * wallet has already used fails the batch with a {@link org.springframework.dao.DataIntegrityViolationException}.
+     */
+    public void insertIdempotencyKeys(List<Transaction> transactions) {
+        List<Transaction> keyed = transactions.stream().filter(transaction -> transaction.getIdempotencyKey() != null).toList();
+        if (keyed.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_IDEMPOTENCY_KEY, keyed, keyed.size(), (ps, transaction) -> {
+            ps.setLong(1, transaction.getUser().getId());
+            ps.setString(2, transaction.getIdempotencyKey());
+            ps.setLong(3, transaction.getId());
+            ps.setTimestamp(4, Timestamp.valueOf(transaction.getCreatedAt()));
+        });
+    }
+
+    /**
+     * Finds the transactions already recorded for the given (user id, idempotency key) pairs.
+     */
+    public List<Transaction> findByIdempotencyKeys(List<Long> userIds, List<String> idempotencyKeys) {
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_BY_IDEMPOTENCY_KEYS);
+            ps.setArray(1, con.createArrayOf("bigint", userIds.toArray()));
+            ps.setArray(2, con.createArrayOf("text", idempotencyKeys.toArray()));
+            return ps;
+        }, (rs, rowNum) -> mapTransaction(rs));
+    }
+
+    /**
+     * Streams the ledger in (created_at, id) order to the consumer, one row at a time, reading it
+     * through a forward-only cursor {@code fetchSize} rows per round trip. Only the monthly
+     * partitions between {@code from} and {@code to} are read. PostgreSQL only keeps the
+     * result on the server while the connection is not in auto-commit, so the caller must run inside
+     * a transaction; otherwise the driver loads the whole result into memory first.
+     */
+    public void streamLedger(Long userId, LocalDateTime from, LocalDateTime to, int fetchSize, Consumer<Transaction> consumer) {
+        StringBuilder sql = new StringBuilder(SELECT_LEDGER);
+        List<Object> args = new ArrayList<>();
+        if (userId != null) {
+            sql.append(" AND t.user_id = ?");
+            args.add(userId);
+        }
+        if (from != null) {
+            sql.append(" AND t.created_at >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND t.created_at < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        sql.append(" ORDER BY t.created_at, t.id");
+
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(mapTransaction(rs)));
+    }
+
+    private static void setRow(PreparedStatement ps, int first, Transaction transaction) throws SQLException {
+        ps.setLong(first, transaction.getId());
+        ps.setLong(first + 1, transaction.getUser().getId());
+        ps.setString(first + 2, transaction.getTransactionCategory().name());
+        ps.setString(first + 3, transaction.getCurrency());
+        ps.setBigDecimal(first + 4, transaction.getAmount().toBigDecimal());
+        ps.setBigDecimal(first + 5, transaction.getLastBalance().toBigDecimal());
+        ps.setString(first + 6, transaction.getIdempotencyKey());
+        ps.setObject(first + 7, transaction.getLedgerSequence(), Types.BIGINT);
+        ps.setObject(first + 8, transaction.getCounterpartyUserId(), Types.BIGINT);
+        ps.setTimestamp(first + 9, Timestamp.valueOf(transaction.getCreatedAt()));
+        ps.setTimestamp(first + 10, Timestamp.valueOf(transaction.getUpdatedAt()));
+    }
+
+    static Transaction mapTransaction(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(rs.getLong("user_id"));
+
+        Transaction transaction = new Transaction();
+        transaction.setId(rs.getLong("id"));
+        transaction.setUser(user);
+        transaction.setTransactionCategory(TransactionCategory.valueOf(rs.getString("transaction_category")));
+        transaction.setCurrency(rs.getString("currency"));
+        transaction.setAmount(Money.of(rs.getBigDecimal("amount")));
+        transaction.setLastBalance(Money.of(rs.getBigDecimal("last_balance")));
+        transaction.setIdempotencyKey(rs.getString("idempotency_key"));
+        transaction.setLedgerSequence(rs.getObject("ledger_sequence", Long.class));
+        transaction.setCounterpartyUserId(rs.getObject("counterparty_user_id", Long.class));
+        transaction.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        transaction.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+        return transaction;
+    }
+}
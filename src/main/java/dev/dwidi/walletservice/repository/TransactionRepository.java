@@ -1,11 +1,28 @@
 package dev.dwidi.walletservice.repository;
 
-
 import dev.dwidi.walletservice.entity.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+public interface TransactionRepository extends JpaRepository<Transaction, Long>, TransactionHistoryRepository {
+    // Through the key table, whose created_at limits the ledger read to one partition
+    @Query("""
+            SELECT t FROM TransactionIdempotencyKey k, Transaction t
+            WHERE k.userId = :userId AND k.idempotencyKey = :idempotencyKey
+              AND t.id = k.transactionId AND t.createdAt = k.createdAt
+            """)
+    Optional<Transaction> findByUserIdAndIdempotencyKey(Long userId, String idempotencyKey);
+
+    @Modifying
+    @Query("DELETE FROM Transaction t WHERE t.user.id = :userId")
+    int deleteByUserId(Long userId);
 
+    @Modifying
+    @Query("DELETE FROM TransactionIdempotencyKey k WHERE k.userId = :userId")
+    int deleteIdempotencyKeysByUserId(Long userId);
 }
@@ -0,0 +1,523 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Set-based wallet statements that Spring Data cannot express.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserJdbcRepository {
+
+    private static final String LOCK_BALANCES = """
+            SELECT b.user_id, b.currency, b.balance
+            FROM wallet_balance b
+            JOIN unnest(?::bigint[], ?::text[]) AS k(user_id, currency) ON b.user_id = k.user_id AND b.currency = k.currency
+            ORDER BY b.user_id, b.currency
+            FOR UPDATE OF b
+            """;
+
+    private static final String INSERT_ZERO_BALANCES = """
+            INSERT INTO wallet_balance (user_id, currency, balance, snapshot_sequence, created_at, updated_at)
+            SELECT w.id, k.currency, 0, 0, ?, ?
+            FROM unnest(?::bigint[], ?::text[]) AS k(user_id, currency)
+            JOIN user_wallet w ON w.id = k.user_id
+            ORDER BY k.user_id, k.currency
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final String FIND_EXISTING_WALLETS = """
+            SELECT id FROM user_wallet WHERE id = ANY (?::bigint[])
+            """;
+
+    private static final String APPLY_BALANCE_DELTAS = """
+            UPDATE wallet_balance AS b
+            SET balance = b.balance + d.delta, updated_at = ?
+            FROM unnest(?::bigint[], ?::text[], ?::numeric[]) AS d(user_id, currency, delta)
+            WHERE b.user_id = d.user_id AND b.currency = d.currency
+            """;
+
+    private static final String LOCK_LEDGERS = """
+            SELECT pg_advisory_xact_lock(hashtextextended(l.currency, l.user_id))
+            FROM (SELECT * FROM unnest(?::bigint[], ?::text[]) AS k(user_id, currency) ORDER BY user_id, currency) AS l
+            """;
+
+    // The tail is the part of a balance's ledger appended after the snapshot stored on its balance row
+    private static final String LEDGER_TAIL = """
+            CROSS JOIN LATERAL (
+                SELECT SUM(CASE WHEN t.transaction_category IN ('BILLPAYMENT', 'TRANSFER_OUT') THEN -t.amount ELSE t.amount END) AS delta,
+                       MAX(t.ledger_sequence) AS last_sequence
+                FROM transaction t
+                WHERE t.user_id = k.user_id AND t.currency = k.currency AND t.ledger_sequence > COALESCE(b.snapshot_sequence, 0)
+            ) AS t
+            """;
+
+    // A balance without a row yet is read as zero; keys of wallets that do not exist drop out of the join
+    private static final String FIND_LEDGER_HEADS = """
+            SELECT k.user_id, k.currency,
+                   COALESCE(b.balance, 0) + COALESCE(t.delta, 0) AS balance,
+                   COALESCE(t.last_sequence, b.snapshot_sequence, 0) AS sequence,
+                   COALESCE(b.snapshot_sequence, 0) AS snapshot_sequence
+            FROM unnest(?::bigint[], ?::text[]) AS k(user_id, currency)
+            JOIN user_wallet w ON w.id = k.user_id
+            LEFT JOIN wallet_balance b ON b.user_id = k.user_id AND b.currency = k.currency
+            """ + LEDGER_TAIL;
+
+    private static final String FIND_WALLET_LEDGER_HEADS = """
+            SELECT k.user_id, k.currency,
+                   b.balance + COALESCE(t.delta, 0) AS balance,
+                   COALESCE(t.last_sequence, b.snapshot_sequence) AS sequence,
+                   b.snapshot_sequence
+            FROM (SELECT user_id, currency FROM wallet_balance WHERE user_id = ?) AS k
+            JOIN wallet_balance b ON b.user_id = k.user_id AND b.currency = k.currency
+            """ + LEDGER_TAIL;
+
+    private static final String SNAPSHOT_BALANCES = """
+            INSERT INTO wallet_balance (user_id, currency, balance, snapshot_sequence, created_at, updated_at)
+            SELECT s.user_id, s.currency, s.balance, s.sequence, ?, ?
+            FROM unnest(?::bigint[], ?::text[], ?::numeric[], ?::bigint[]) AS s(user_id, currency, balance, sequence)
+            ON CONFLICT (user_id, currency) DO UPDATE
+            SET balance = EXCLUDED.balance, snapshot_sequence = EXCLUDED.snapshot_sequence, updated_at = EXCLUDED.updated_at
+            """;
+
+    private static final String FOLD_LEDGER_TAILS = """
+            UPDATE wallet_balance AS b
+            SET (balance, snapshot_sequence) = (
+                SELECT b.balance + SUM(CASE WHEN t.transaction_category IN ('BILLPAYMENT', 'TRANSFER_OUT') THEN -t.amount ELSE t.amount END),
+                       MAX(t.ledger_sequence)
+                FROM transaction t
+                WHERE t.user_id = b.user_id AND t.currency = b.currency AND t.ledger_sequence > b.snapshot_sequence
+            )
+            WHERE EXISTS (
+                SELECT 1 FROM transaction t
+                WHERE t.user_id = b.user_id AND t.currency = b.currency AND t.ledger_sequence > b.snapshot_sequence
+            )
+            """;
+
+    private static final String FIND_TAILS_CREATED_BEFORE = """
+            SELECT DISTINCT t.user_id, t.currency
+            FROM transaction t
+            JOIN wallet_balance b ON b.user_id = t.user_id AND b.currency = t.currency
+            WHERE t.created_at < ? AND t.ledger_sequence > b.snapshot_sequence
+            """;
+
+    // Adds the shards deleted by the preceding "swept" statement to their balance rows
+    private static final String ADD_SWEPT_SHARDS = """
+            INSERT INTO wallet_balance (user_id, currency, balance, snapshot_sequence, created_at, updated_at)
+            SELECT user_id, currency, SUM(balance), 0, ?, ?
+            FROM swept
+            GROUP BY user_id, currency
+            ON CONFLICT (user_id, currency) DO UPDATE
+            SET balance = wallet_balance.balance + EXCLUDED.balance, updated_at = EXCLUDED.updated_at
+            RETURNING user_id, currency, balance
+            """;
+
+    private static final String SWEEP_BALANCE_SHARDS = """
+            WITH swept AS (
+                DELETE FROM wallet_balance_shard AS s
+                USING unnest(?::bigint[], ?::text[]) AS k(user_id, currency)
+                WHERE s.user_id = k.user_id AND s.currency = k.currency
+                RETURNING s.user_id, s.currency, s.balance
+            )
+            """ + ADD_SWEPT_SHARDS;
+
+    private static final String FOLD_BALANCE_SHARDS = """
+            WITH swept AS (
+                DELETE FROM wallet_balance_shard
+                WHERE user_id <> ALL (?::bigint[])
+                RETURNING user_id, currency, balance
+            )
+            """ + ADD_SWEPT_SHARDS;
+
+    private static final String PATCH_PROFILE_RETURNING = """
+            version = version + 1, updated_at = ?
+            WHERE id = ?
+            RETURNING id, full_name, email, phone_number, version, created_at, updated_at
+            """;
+
+    // Each balance is its row plus, in append mode, its ledger tail and, for a sharded wallet, its
+    // shards; the other mode's part is folded at startup, so adding all three is right in either
+    private static final String SELECT_PATCHED_WITH_BALANCES = """
+            )
+            SELECT p.*, w.currencies, w.balances
+            FROM patched p
+            CROSS JOIN LATERAL (
+                SELECT array_agg(parts.currency ORDER BY parts.currency) AS currencies,
+                       array_agg(parts.balance ORDER BY parts.currency) AS balances
+                FROM (
+                    SELECT part.currency, SUM(part.balance) AS balance
+                    FROM (
+                        SELECT b.currency, b.balance + COALESCE(t.delta, 0) AS balance
+                        FROM wallet_balance b
+                        CROSS JOIN LATERAL (VALUES (b.user_id, b.currency)) AS k(user_id, currency)
+            """ + LEDGER_TAIL + """
+                        WHERE b.user_id = p.id
+                        UNION ALL
+                        SELECT s.currency, s.balance
+                        FROM wallet_balance_shard s
+                        WHERE s.user_id = p.id
+                    ) AS part
+                    GROUP BY part.currency
+                ) AS parts
+            ) AS w
+            """;
+
+    // Rows that would violate a unique constraint, including a duplicate earlier in the same statement, are skipped
+    private static final String INSERT_USERS_IGNORING_CONFLICTS = """
+            INSERT INTO user_wallet (id, full_name, email, phone_number, version, created_at, updated_at)
+            SELECT u.id, u.full_name, u.email, u.phone_number, 0, ?, ?
+            FROM unnest(?::bigint[], ?::text[], ?::text[], ?::text[]) AS u(id, full_name, email, phone_number)
+            ON CONFLICT DO NOTHING
+            RETURNING id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PooledIdAllocator pooledIdAllocator;
+
+    /**
+     * Locks the given balances in key order, so concurrent callers cannot deadlock, and returns
+     * them. A balance in {@code creditKeys} of an existing wallet that has no row yet is created
+     * at zero first; any other balance without a row is returned as zero, unlocked and without a
+     * row, so a debit that is turned down leaves no empty balance behind. A returned balance can
+     * be written with {@link #applyBalanceDeltas} if it is in {@code creditKeys} or already had a
+     * row. Keys of wallets that do not exist are absent from the result.
+     */
+    public Map<BalanceKey, Money> lockBalances(Collection<BalanceKey> keys, Collection<BalanceKey> creditKeys, LocalDateTime now) {
+        Map<BalanceKey, Money> balances = lockExistingBalances(keys);
+        if (balances.size() == keys.size()) {
+            return balances;
+        }
+
+        List<BalanceKey> created = keys.stream().filter(key -> !balances.containsKey(key) && creditKeys.contains(key)).toList();
+        if (!created.isEmpty()) {
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(INSERT_ZERO_BALANCES);
+                ps.setTimestamp(1, Timestamp.valueOf(now));
+                ps.setTimestamp(2, Timestamp.valueOf(now));
+                setKeys(con, ps, 3, created);
+                return ps;
+            });
+            balances.putAll(lockExistingBalances(created));
+        }
+
+        List<BalanceKey> unlocked = keys.stream().filter(key -> !balances.containsKey(key)).toList();
+        if (!unlocked.isEmpty()) {
+            Set<Long> walletIds = findExistingWalletIds(unlocked.stream().map(BalanceKey::userId).collect(Collectors.toSet()));
+            unlocked.stream().filter(key -> walletIds.contains(key.userId())).forEach(key -> balances.put(key, Money.ZERO));
+        }
+        return balances;
+    }
+
+    private Set<Long> findExistingWalletIds(Collection<Long> userIds) {
+        Set<Long> walletIds = new HashSet<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_EXISTING_WALLETS);
+            ps.setArray(1, con.createArrayOf("bigint", userIds.toArray()));
+            return ps;
+        }, rs -> {
+            walletIds.add(rs.getLong("id"));
+        });
+        return walletIds;
+    }
+
+    private Map<BalanceKey, Money> lockExistingBalances(Collection<BalanceKey> keys) {
+        Map<BalanceKey, Money> balances = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(LOCK_BALANCES);
+            setKeys(con, ps, 1, keys);
+            return ps;
+        }, rs -> {
+            balances.put(new BalanceKey(rs.getLong("user_id"), rs.getString("currency")), Money.of(rs.getBigDecimal("balance")));
+        });
+        return balances;
+    }
+
+    /**
+     * Takes a transaction-scoped advisory lock on the ledger of each given balance, in key order,
+     * and returns the heads of the ledgers. Appenders of the same balance are serialized on the
+     * lock without updating the balance row. The heads are read by a separate statement so that
+     * they include every append committed before the lock was granted. Keys of wallets that do
+     * not exist are absent from the result.
+     */
+    public Map<BalanceKey, LedgerHead> lockLedgerHeads(Collection<BalanceKey> keys) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(LOCK_LEDGERS);
+            setKeys(con, ps, 1, keys);
+            return ps;
+        }, rs -> {
+        });
+        return findLedgerHeads(keys);
+    }
+
+    /**
+     * Returns the current heads of the given balances' ledgers: the snapshot on the balance row
+     * plus the sum of the transactions appended after it.
+     */
+    public Map<BalanceKey, LedgerHead> findLedgerHeads(Collection<BalanceKey> keys) {
+        Map<BalanceKey, LedgerHead> heads = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_LEDGER_HEADS);
+            setKeys(con, ps, 1, keys);
+            return ps;
+        }, rs -> {
+            heads.put(toKey(rs), toHead(rs));
+        });
+        return heads;
+    }
+
+    /**
+     * Returns the current heads of the ledgers of every balance the wallet holds.
+     */
+    public Map<BalanceKey, LedgerHead> findLedgerHeads(Long userId) {
+        Map<BalanceKey, LedgerHead> heads = new HashMap<>();
+        jdbcTemplate.query(FIND_WALLET_LEDGER_HEADS, rs -> {
+            heads.put(toKey(rs), toHead(rs));
+        }, userId);
+        return heads;
+    }
+
+    /**
+     * Stores each head as its balance snapshot in a single statement, creating the balance rows
+     * that do not exist yet.
+     */
+    public void snapshotBalances(Map<BalanceKey, LedgerHead> heads, LocalDateTime updatedAt) {
+        Long[] userIds = new Long[heads.size()];
+        String[] currencies = new String[heads.size()];
+        BigDecimal[] balances = new BigDecimal[heads.size()];
+        Long[] sequences = new Long[heads.size()];
+        int i = 0;
+        for (Map.Entry<BalanceKey, LedgerHead> head : heads.entrySet()) {
+            userIds[i] = head.getKey().userId();
+            currencies[i] = head.getKey().currency();
+            balances[i] = head.getValue().getBalance().toBigDecimal();
+            sequences[i] = head.getValue().getSequence();
+            i++;
+        }
+
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(SNAPSHOT_BALANCES);
+            ps.setTimestamp(1, Timestamp.valueOf(updatedAt));
+            ps.setTimestamp(2, Timestamp.valueOf(updatedAt));
+            ps.setArray(3, con.createArrayOf("bigint", userIds));
+            ps.setArray(4, con.createArrayOf("text", currencies));
+            ps.setArray(5, con.createArrayOf("numeric", balances));
+            ps.setArray(6, con.createArrayOf("bigint", sequences));
+            return ps;
+        });
+    }
+
+    /**
+     * Returns the balances whose ledger tail still has transactions created before {@code createdBefore}.
+     */
+    public SortedSet<BalanceKey> findTailsCreatedBefore(LocalDateTime createdBefore) {
+        SortedSet<BalanceKey> keys = new TreeSet<>();
+        jdbcTemplate.query(FIND_TAILS_CREATED_BEFORE, rs -> {
+            keys.add(toKey(rs));
+        }, Timestamp.valueOf(createdBefore));
+        return keys;
+    }
+
+    /**
+     * Folds every ledger tail into its balance row, so that the row is current again for
+     * in-place updates. Returns the number of balances that had a tail.
+     */
+    public int foldLedgerTails() {
+        return jdbcTemplate.update(FOLD_LEDGER_TAILS);
+    }
+
+    /**
+     * Moves the shards of the given balances into their balance rows in a single statement and
+     * returns the new balances of those that had shards. Callers lock the balance rows first, so
+     * sweeps of the same balance are serialized, while credits to the shards only wait for the
+     * shard they hit.
+     */
+    public Map<BalanceKey, Money> sweepBalanceShards(Collection<BalanceKey> keys, LocalDateTime now) {
+        Map<BalanceKey, Money> balances = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(SWEEP_BALANCE_SHARDS);
+            setKeys(con, ps, 1, keys);
+            ps.setTimestamp(3, Timestamp.valueOf(now));
+            ps.setTimestamp(4, Timestamp.valueOf(now));
+            return ps;
+        }, rs -> {
+            balances.put(toKey(rs), Money.of(rs.getBigDecimal("balance")));
+        });
+        return balances;
+    }
+
+    /**
+     * Moves the shards of every wallet not in {@code shardedUserIds} into their balance rows.
+     * Returns the number of balances that had shards.
+     */
+    public int foldBalanceShards(Collection<Long> shardedUserIds, LocalDateTime now) {
+        List<BalanceKey> folded = new ArrayList<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FOLD_BALANCE_SHARDS);
+            ps.setArray(1, con.createArrayOf("bigint", shardedUserIds.toArray()));
+            ps.setTimestamp(2, Timestamp.valueOf(now));
+            ps.setTimestamp(3, Timestamp.valueOf(now));
+            return ps;
+        }, rs -> {
+            folded.add(toKey(rs));
+        });
+        return folded.size();
+    }
+
+    /**
+     * Adds each delta to its balance in a single statement. The balances must have been locked
+     * with {@link #lockBalances}, as credits if they had no row.
+     */
+    public void applyBalanceDeltas(Map<BalanceKey, Money> deltas, LocalDateTime updatedAt) {
+        Long[] userIds = new Long[deltas.size()];
+        String[] currencies = new String[deltas.size()];
+        BigDecimal[] amounts = new BigDecimal[deltas.size()];
+        int i = 0;
+        for (Map.Entry<BalanceKey, Money> delta : deltas.entrySet()) {
+            userIds[i] = delta.getKey().userId();
+            currencies[i] = delta.getKey().currency();
+            amounts[i] = delta.getValue().toBigDecimal();
+            i++;
+        }
+
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(APPLY_BALANCE_DELTAS);
+            ps.setTimestamp(1, Timestamp.valueOf(updatedAt));
+            ps.setArray(2, con.createArrayOf("bigint", userIds));
+            ps.setArray(3, con.createArrayOf("text", currencies));
+            ps.setArray(4, con.createArrayOf("numeric", amounts));
+            return ps;
+        });
+    }
+
+    private static void setKeys(Connection con, PreparedStatement ps, int index, Collection<BalanceKey> keys) throws SQLException {
+        ps.setArray(index, con.createArrayOf("bigint", keys.stream().map(BalanceKey::userId).toArray()));
+        ps.setArray(index + 1, con.createArrayOf("text", keys.stream().map(BalanceKey::currency).toArray()));
+    }
+
+    private static BalanceKey toKey(ResultSet rs) throws SQLException {
+        return new BalanceKey(rs.getLong("user_id"), rs.getString("currency"));
+    }
+
+    private static LedgerHead toHead(ResultSet rs) throws SQLException {
+        return new LedgerHead(Money.of(rs.getBigDecimal("balance")), rs.getLong("sequence"), rs.getLong("snapshot_sequence"));
+    }
+
+    /**
+     * Inserts the given wallets, holding no balance yet, in a single statement and assigns their ids.
+     * The unique constraints decide which rows go in: a wallet whose email or phone number is
+     * already taken is skipped instead of failing the statement. Returns the ids of the wallets
+     * that were inserted; a skipped wallet keeps its assigned id, which is then unused.
+     */
+    public Set<Long> insertIgnoringConflicts(List<User> users, LocalDateTime createdAt) {
+        long[] allocatedIds = pooledIdAllocator.allocate("user_wallet_seq", User.ID_ALLOCATION_SIZE, users.size());
+        Long[] ids = new Long[users.size()];
+        String[] fullNames = new String[users.size()];
+        String[] emails = new String[users.size()];
+        String[] phoneNumbers = new String[users.size()];
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            user.setId(allocatedIds[i]);
+            user.setCreatedAt(createdAt);
+            user.setUpdatedAt(createdAt);
+            ids[i] = allocatedIds[i];
+            fullNames[i] = user.getFullName();
+            emails[i] = user.getEmail();
+            phoneNumbers[i] = user.getPhoneNumber();
+        }
+
+        Set<Long> inserted = new HashSet<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(INSERT_USERS_IGNORING_CONFLICTS);
+            ps.setTimestamp(1, Timestamp.valueOf(createdAt));
+            ps.setTimestamp(2, Timestamp.valueOf(createdAt));
+            ps.setArray(3, con.createArrayOf("bigint", ids));
+            ps.setArray(4, con.createArrayOf("text", fullNames));
+            ps.setArray(5, con.createArrayOf("text", emails));
+            ps.setArray(6, con.createArrayOf("text", phoneNumbers));
+            return ps;
+        }, rs -> {
+            inserted.add(rs.getLong("id"));
+        });
+        return inserted;
+    }
+
+    /**
+     * Sets only the given (non-null) profile columns of a wallet in one statement, without
+     * reading the row first, and returns the updated row with the wallet's current balances read
+     * by the same statement. Empty when the wallet does not exist.
+     */
+    public Optional<PatchedProfile> patchProfile(Long userId, String fullName, String email, String phoneNumber,
+                                                 LocalDateTime updatedAt) {
+        StringBuilder sql = new StringBuilder("WITH patched AS (UPDATE user_wallet SET ");
+        List<Object> args = new ArrayList<>();
+        if (fullName != null) {
+            sql.append("full_name = ?, ");
+            args.add(fullName);
+        }
+        if (email != null) {
+            sql.append("email = ?, ");
+            args.add(email);
+        }
+        if (phoneNumber != null) {
+            sql.append("phone_number = ?, ");
+            args.add(phoneNumber);
+        }
+        sql.append(PATCH_PROFILE_RETURNING);
+        sql.append(SELECT_PATCHED_WITH_BALANCES);
+        args.add(Timestamp.valueOf(updatedAt));
+        args.add(userId);
+
+        List<PatchedProfile> updated = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            User user = new User();
+            user.setId(rs.getLong("id"));
+            user.setFullName(rs.getString("full_name"));
+            user.setEmail(rs.getString("email"));
+            user.setPhoneNumber(rs.getString("phone_number"));
+            user.setVersion(rs.getLong("version"));
+            user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+            user.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+            return new PatchedProfile(user, toBalances(rs));
+        }, args.toArray());
+        return updated.stream().findFirst();
+    }
+
+    // A wallet without any balance gets null arrays from the aggregates
+    private static Map<String, Money> toBalances(ResultSet rs) throws SQLException {
+        Map<String, Money> balances = new HashMap<>();
+        Array currencies = rs.getArray("currencies");
+        if (currencies == null) {
+            return balances;
+        }
+        String[] codes = (String[]) currencies.getArray();
+        BigDecimal[] amounts = (BigDecimal[]) rs.getArray("balances").getArray();
+        for (int i = 0; i < codes.length; i++) {
+            balances.put(codes[i], Money.of(amounts[i]));
+        }
+        return balances;
+    }
+}
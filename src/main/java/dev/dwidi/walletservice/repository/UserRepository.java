@@ -1,11 +1,22 @@
 package dev.dwidi.walletservice.repository;
 
 import dev.dwidi.walletservice.entity.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
-    Boolean existsByEmail(String email);
-    Boolean existsByPhoneNumber(String phoneNumber);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u.id FROM User u WHERE u.id = :userId")
+    Optional<Long> lockById(Long userId);
+
+    @Modifying
+    @Query("DELETE FROM User u WHERE u.id = :userId")
+    int deleteWalletById(Long userId);
 }
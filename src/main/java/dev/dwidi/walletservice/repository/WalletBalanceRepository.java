@@ -0,0 +1,55 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.WalletBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface WalletBalanceRepository extends JpaRepository<WalletBalance, BalanceKey> {
+
+    List<WalletBalance> findByUserId(Long userId);
+
+    @Modifying
+    @Query("DELETE FROM WalletBalance b WHERE b.userId = :userId")
+    int deleteByUserId(Long userId);
+
+    /**
+     * Adds a non-negative {@code delta} to the wallet's balance in {@code currency}, creating the
+     * balance on the first credit in that currency, in a single statement. Returns the new
+     * balance, or empty when the wallet does not exist.
+     */
+    @Transactional
+    @Query(value = """
+            INSERT INTO wallet_balance (user_id, currency, balance, snapshot_sequence, created_at, updated_at)
+            SELECT w.id, :currency, :delta, 0, :updatedAt, :updatedAt
+            FROM user_wallet w
+            WHERE w.id = :userId
+            ON CONFLICT (user_id, currency) DO UPDATE
+            SET balance = wallet_balance.balance + EXCLUDED.balance, updated_at = EXCLUDED.updated_at
+            RETURNING balance
+            """, nativeQuery = true)
+    Optional<BigDecimal> credit(Long userId, String currency, BigDecimal delta, LocalDateTime updatedAt);
+
+    /**
+     * Applies a negative {@code delta} to the wallet's balance in {@code currency} in a single
+     * conditional statement. Returns the new balance, or empty when the wallet holds no balance
+     * in that currency or the change would make it negative.
+     */
+    @Transactional
+    @Query(value = """
+            UPDATE wallet_balance
+            SET balance = balance + :delta, updated_at = :updatedAt
+            WHERE user_id = :userId AND currency = :currency AND balance + :delta >= 0
+            RETURNING balance
+            """, nativeQuery = true)
+    Optional<BigDecimal> debit(Long userId, String currency, BigDecimal delta, LocalDateTime updatedAt);
+}
@@ -0,0 +1,47 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.entity.BalanceShardKey;
+import dev.dwidi.walletservice.entity.WalletBalanceShard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface WalletBalanceShardRepository extends JpaRepository<WalletBalanceShard, BalanceShardKey> {
+
+    List<WalletBalanceShard> findByUserId(Long userId);
+
+    @Modifying
+    @Query("DELETE FROM WalletBalanceShard s WHERE s.userId = :userId")
+    int deleteByUserId(Long userId);
+
+    /**
+     * Adds a non-negative {@code delta} to one shard of the wallet's balance in
+     * {@code currency}, creating the shard on its first credit, in a single statement. Only that
+     * shard is locked. Returns the wallet's balance in the currency as seen by the statement,
+     * which does not include credits to other shards that commit while it runs, or empty when
+     * the wallet does not exist.
+     */
+    @Transactional
+    @Query(value = """
+            INSERT INTO wallet_balance_shard (user_id, currency, shard, balance, updated_at)
+            SELECT w.id, :currency, :shard, :delta, :updatedAt
+            FROM user_wallet w
+            WHERE w.id = :userId
+            ON CONFLICT (user_id, currency, shard) DO UPDATE
+            SET balance = wallet_balance_shard.balance + EXCLUDED.balance, updated_at = EXCLUDED.updated_at
+            RETURNING balance
+                + COALESCE((SELECT SUM(o.balance) FROM wallet_balance_shard o
+                            WHERE o.user_id = :userId AND o.currency = :currency AND o.shard <> :shard), 0)
+                + COALESCE((SELECT b.balance FROM wallet_balance b
+                            WHERE b.user_id = :userId AND b.currency = :currency), 0)
+            """, nativeQuery = true)
+    Optional<BigDecimal> credit(Long userId, String currency, int shard, BigDecimal delta, LocalDateTime updatedAt);
+}
@@ -0,0 +1,22 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.entity.WalletTombstone;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+@Repository
+public interface WalletTombstoneRepository extends JpaRepository<WalletTombstone, Long> {
+
+    // A plain insert, save() would select the id first since it is assigned
+    @Modifying
+    @Query(value = "INSERT INTO wallet_tombstone (user_id, deleted_at) VALUES (:userId, :deletedAt)", nativeQuery = true)
+    int insert(Long userId, LocalDateTime deletedAt);
+
+    @Query("SELECT t.userId FROM WalletTombstone t")
+    Set<Long> findAllUserIds();
+}
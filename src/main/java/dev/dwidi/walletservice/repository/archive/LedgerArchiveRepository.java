@@ -0,0 +1,296 @@
+package dev.dwidi.walletservice.repository.archive;
+
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Ledger months archived out of PostgreSQL into segment files on local disk (see
+ * {@link SegmentFormat}), one directory per month under {@code wallet.ledger.archive.directory}.
+ * A month is split into parts of at most about 1 GB so each part can be mapped into memory whole;
+ * parts follow each other in (created_at, id) order.
+ * <p>
+ * A month is written into a staging directory that is renamed into place once every part is on
+ * disk, so reads see either all of a month or none of it. Every instance serving reads needs the
+ * same files, so instances share the directory and one of them runs the archive job. Reads list
+ * the directory first and map months another instance archived since, because the job drops a
+ * month from the database as soon as its files are in place.
+ */
+@Repository
+@Slf4j
+public class LedgerArchiveRepository {
+
+    private static final long MAX_PART_BYTES = 1L << 30;
+    private static final DateTimeFormatter MONTH_DIRECTORY = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final String STAGING_SUFFIX = ".tmp";
+    private static final String PART_SUFFIX = ".seg";
+
+    private final boolean enabled;
+    private final Path directory;
+    private volatile NavigableMap<YearMonth, List<LedgerSegment>> segments = Collections.emptyNavigableMap();
+
+    public LedgerArchiveRepository(@Value("${wallet.ledger.archive.enabled:false}") boolean enabled,
+                                   @Value("${wallet.ledger.archive.directory:ledger-archive}") String directory) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        reload();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Maps the months currently in the directory, picking up months archived by another instance.
+     */
+    public synchronized void reload() {
+        if (!enabled) {
+            return;
+        }
+        NavigableMap<YearMonth, List<LedgerSegment>> loaded = new TreeMap<>();
+        try {
+            for (YearMonth month : listMonths()) {
+                loaded.put(month, openParts(directory.resolve(month.format(MONTH_DIRECTORY))));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments = loaded;
+        log.debug("Mapped {} archived ledger months from {}", loaded.size(), directory);
+    }
+
+    // A directory listing is far cheaper than mapping the months again, so reads check it every time
+    private void reloadIfChanged() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (!listMonths().equals(segments.keySet())) {
+                reload();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Set<YearMonth> listMonths() throws IOException {
+        Set<YearMonth> months = new TreeSet<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> monthDirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+                for (Path monthDirectory : monthDirectories) {
+                    YearMonth month = parseMonth(monthDirectory.getFileName().toString());
+                    if (month != null) {
+                        months.add(month);
+                    }
+                }
+            }
+        }
+        return months;
+    }
+
+    /**
+     * Returns the number of transactions archived for the month, or -1 if it has not been archived.
+     */
+    public long rowCount(YearMonth month) {
+        List<LedgerSegment> parts = segments.get(month);
+        return parts == null ? -1 : parts.stream().mapToLong(LedgerSegment::rowCount).sum();
+    }
+
+    /**
+     * Archives a month, replacing any earlier copy of it. {@code source} must pass every
+     * transaction of the month to the consumer it is given, in (created_at, id) order. Returns the
+     * number of transactions written.
+     */
+    public synchronized long write(YearMonth month, Consumer<Consumer<Transaction>> source) {
+        Path target = directory.resolve(month.format(MONTH_DIRECTORY));
+        Path staging = directory.resolve(month.format(MONTH_DIRECTORY) + STAGING_SUFFIX);
+        try {
+            deleteRecursively(staging);
+            Files.createDirectories(staging);
+            long written;
+            try (PartWriter partWriter = new PartWriter(staging, month)) {
+                source.accept(partWriter);
+                written = partWriter.rowCount();
+            }
+            sync(staging);
+
+            deleteRecursively(target);
+            Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+            sync(directory);
+
+            NavigableMap<YearMonth, List<LedgerSegment>> updated = new TreeMap<>(segments);
+            updated.put(month, openParts(target));
+            segments = updated;
+            return written;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} archived transactions of the user, newest first, that come
+     * strictly after the ({@code afterCreatedAt}, {@code afterId}) position, like
+     * {@link dev.dwidi.walletservice.repository.TransactionHistoryRepository#findHistory}.
+     */
+    public List<Transaction> findHistory(Long userId, TransactionCategory category, LocalDateTime from, LocalDateTime to,
+                                         LocalDateTime afterCreatedAt, Long afterId, int limit) {
+        List<Transaction> transactions = new ArrayList<>();
+        if (limit <= 0) {
+            return transactions;
+        }
+        reloadIfChanged();
+        // The cursor's own microsecond is still in range, its ids are compared row by row
+        LocalDateTime until = to;
+        if (afterCreatedAt != null && (until == null || afterCreatedAt.isBefore(until))) {
+            until = afterCreatedAt.plusNanos(1_000);
+        }
+
+        for (List<LedgerSegment> parts : segments.descendingMap().values()) {
+            for (LedgerSegment segment : parts.reversed()) {
+                boolean more = segment.forEachDescending(userId, from, until, transaction -> {
+                    if ((category == null || category == transaction.getTransactionCategory())
+                            && isAfterCursor(transaction, afterCreatedAt, afterId)) {
+                        transactions.add(transaction);
+                    }
+                    return transactions.size() < limit;
+                });
+                if (!more) {
+                    return transactions;
+                }
+            }
+        }
+        return transactions;
+    }
+
+    /**
+     * Streams the archived transactions created in [{@code from}, {@code to}), of one user or of
+     * everyone when {@code userId} is null, in (created_at, id) order. Null bounds are open.
+     */
+    public void streamLedger(Long userId, LocalDateTime from, LocalDateTime to, Consumer<Transaction> consumer) {
+        reloadIfChanged();
+        for (List<LedgerSegment> parts : segments.values()) {
+            for (LedgerSegment segment : parts) {
+                segment.forEach(userId, from, to, consumer);
+            }
+        }
+    }
+
+    // History is newest first, so the next page holds what sorts before the cursor
+    private static boolean isAfterCursor(Transaction transaction, LocalDateTime afterCreatedAt, Long afterId) {
+        if (afterCreatedAt == null) {
+            return true;
+        }
+        int compared = transaction.getCreatedAt().compareTo(afterCreatedAt);
+        return compared < 0 || (compared == 0 && transaction.getId() < afterId);
+    }
+
+    private static List<LedgerSegment> openParts(Path monthDirectory) throws IOException {
+        List<LedgerSegment> parts = new ArrayList<>();
+        try (Stream<Path> files = Files.list(monthDirectory)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(PART_SUFFIX)).sorted().toList()) {
+                parts.add(LedgerSegment.open(file));
+            }
+        }
+        return parts;
+    }
+
+    private static YearMonth parseMonth(String name) {
+        try {
+            return YearMonth.parse(name, MONTH_DIRECTORY);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // Makes the directory's entries durable, so a renamed month survives a crash
+    private static void sync(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Writes the transactions it is given into consecutive parts, starting a new one when the
+     * current part has reached {@link #MAX_PART_BYTES}.
+     */
+    private static final class PartWriter implements Consumer<Transaction>, Closeable {
+
+        private final Path monthDirectory;
+        private final YearMonth month;
+        private LedgerSegmentWriter writer;
+        private int parts;
+        private long rowCount;
+
+        private PartWriter(Path monthDirectory, YearMonth month) {
+            this.monthDirectory = monthDirectory;
+            this.month = month;
+        }
+
+        @Override
+        public void accept(Transaction transaction) {
+            try {
+                if (writer != null && writer.size() >= MAX_PART_BYTES) {
+                    rowCount += writer.rowCount();
+                    writer.close();
+                    writer = null;
+                }
+                if (writer == null) {
+                    writer = new LedgerSegmentWriter(monthDirectory.resolve("part-%05d%s".formatted(parts++, PART_SUFFIX)), month);
+                }
+                writer.append(transaction);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        long rowCount() {
+            return rowCount + (writer == null ? 0 : writer.rowCount());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                rowCount += writer.rowCount();
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package dev.dwidi.walletservice.repository.archive;
+
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static dev.dwidi.walletservice.repository.archive.SegmentFormat.*;
+
+/**
+ * A segment file (see {@link SegmentFormat}) mapped into memory. Only the dictionaries and the
+ * block index are read up front; the user index is binary searched in place and a block is only
+ * inflated when a read needs its rows. Reads work on their own views of the mapping, so one
+ * segment serves any number of threads.
+ */
+final class LedgerSegment {
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final YearMonth month;
+    private final long rowCount;
+    private final String[] categories;
+    private final String[] currencies;
+    private final int[] blockOffsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final long[] minCreatedAt;
+    private final long[] maxCreatedAt;
+    private final int userIndexOffset;
+    private final int userCount;
+
+    private LedgerSegment(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        int limit = buffer.limit();
+        if (limit < HEADER_BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(limit - 4) != MAGIC) {
+            throw new IOException("Not a ledger segment: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported ledger segment version " + buffer.getInt(4) + ": " + path);
+        }
+        int yearMonth = buffer.getInt(8);
+        this.month = YearMonth.of(yearMonth / 100, yearMonth % 100);
+
+        ByteBuffer trailer = buffer.slice(limit - TRAILER_BYTES, TRAILER_BYTES);
+        int footerOffset = (int) trailer.getLong();
+        this.userIndexOffset = (int) trailer.getLong();
+        this.userCount = trailer.getInt();
+        this.rowCount = trailer.getLong();
+
+        ByteBuffer footer = buffer.slice(footerOffset, userIndexOffset - footerOffset);
+        this.categories = readDictionary(footer);
+        this.currencies = readDictionary(footer);
+        int blockCount = footer.getInt();
+        this.blockOffsets = new int[blockCount];
+        this.compressedLengths = new int[blockCount];
+        this.rawLengths = new int[blockCount];
+        this.minCreatedAt = new long[blockCount];
+        this.maxCreatedAt = new long[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blockOffsets[i] = (int) footer.getLong();
+            compressedLengths[i] = footer.getInt();
+            rawLengths[i] = footer.getInt();
+            footer.getInt();
+            minCreatedAt[i] = footer.getLong();
+            maxCreatedAt[i] = footer.getLong();
+        }
+    }
+
+    static LedgerSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new LedgerSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    YearMonth month() {
+        return month;
+    }
+
+    long rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Passes the transactions created in [{@code from}, {@code to}), of one user or of everyone
+     * when {@code userId} is null, to the consumer in (created_at, id) order. Null bounds are open.
+     */
+    void forEach(Long userId, LocalDateTime from, LocalDateTime to, Consumer<Transaction> consumer) {
+        long fromMicros = from == null ? Long.MIN_VALUE : toMicros(from);
+        long toMicros = to == null ? Long.MAX_VALUE : toMicros(to);
+        int[] userBlocks = userId == null ? null : blocksOf(userId);
+        int count = userBlocks == null ? blockOffsets.length : userBlocks.length;
+        for (int i = 0; i < count; i++) {
+            int block = userBlocks == null ? i : userBlocks[i];
+            if (maxCreatedAt[block] < fromMicros || minCreatedAt[block] >= toMicros) {
+                continue;
+            }
+            Block rows = inflate(block);
+            for (int row = 0; row < rows.size; row++) {
+                if ((userId == null || rows.userIds[row] == userId) && rows.createdAt[row] >= fromMicros && rows.createdAt[row] < toMicros) {
+                    consumer.accept(rows.transaction(row));
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes the user's transactions created in [{@code from}, {@code to}) to the visitor newest
+     * first, until it returns false. Returns false when the visitor stopped the scan.
+     */
+    boolean forEachDescending(long userId, LocalDateTime from, LocalDateTime to, Predicate<Transaction> visitor) {
+        long fromMicros = from == null ? Long.MIN_VALUE : toMicros(from);
+        long toMicros = to == null ? Long.MAX_VALUE : toMicros(to);
+        int[] userBlocks = blocksOf(userId);
+        for (int i = userBlocks.length - 1; i >= 0; i--) {
+            int block = userBlocks[i];
+            if (maxCreatedAt[block] < fromMicros || minCreatedAt[block] >= toMicros) {
+                continue;
+            }
+            Block rows = inflate(block);
+            for (int row = rows.size - 1; row >= 0; row--) {
+                if (rows.userIds[row] == userId && rows.createdAt[row] >= fromMicros && rows.createdAt[row] < toMicros
+                        && !visitor.test(rows.transaction(row))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Binary search over the fixed-size user index entries
+    private int[] blocksOf(long userId) {
+        int low = 0;
+        int high = userCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = userIndexOffset + mid * USER_ENTRY_BYTES;
+            long candidate = buffer.getLong(entry);
+            if (candidate < userId) {
+                low = mid + 1;
+            } else if (candidate > userId) {
+                high = mid - 1;
+            } else {
+                ByteBuffer list = buffer.slice((int) buffer.getLong(entry + 8), userIndexOffset - (int) buffer.getLong(entry + 8));
+                int[] blocks = new int[buffer.getInt(entry + 16)];
+                int previous = 0;
+                for (int i = 0; i < blocks.length; i++) {
+                    previous += (int) readVarLong(list);
+                    blocks[i] = previous;
+                }
+                return blocks;
+            }
+        }
+        return new int[0];
+    }
+
+    private Block inflate(int block) {
+        byte[] raw = new byte[rawLengths[block]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.slice(blockOffsets[block], compressedLengths[block]));
+            int length = 0;
+            while (length < raw.length) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("block " + block + " is truncated");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Corrupt ledger segment " + path + ": " + e.getMessage(), e));
+        } finally {
+            inflater.end();
+        }
+        return new Block(ByteBuffer.wrap(raw));
+    }
+
+    private static String[] readDictionary(ByteBuffer in) {
+        String[] values = new String[in.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readNullableString(in);
+        }
+        return values;
+    }
+
+    private final class Block {
+
+        private final int size;
+        private final long[] ids;
+        private final long[] userIds;
+        private final int[] categoryCodes;
+        private final int[] currencyCodes;
+        private final long[] amounts;
+        private final long[] lastBalances;
+        private final long[] createdAt;
+        private final Long[] updatedAtOffsets;
+        private final Long[] ledgerSequences;
+        private final Long[] counterpartyUserIds;
+        private final String[] idempotencyKeys;
+
+        private Block(ByteBuffer in) {
+            size = (int) readVarLong(in);
+            ids = new long[size];
+            userIds = new long[size];
+            categoryCodes = new int[size];
+            currencyCodes = new int[size];
+            amounts = new long[size];
+            lastBalances = new long[size];
+            createdAt = new long[size];
+            updatedAtOffsets = new Long[size];
+            ledgerSequences = new Long[size];
+            counterpartyUserIds = new Long[size];
+            idempotencyKeys = new String[size];
+
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += readSignedVarLong(in);
+                ids[i] = previous;
+            }
+            for (int i = 0; i < size; i++) {
+                userIds[i] = readVarLong(in);
+            }
+            for (int i = 0; i < size; i++) {
+                categoryCodes[i] = (int) readVarLong(in);
+            }
+            for (int i = 0; i < size; i++) {
+                currencyCodes[i] = (int) readVarLong(in);
+            }
+            for (int i = 0; i < size; i++) {
+                amounts[i] = readSignedVarLong(in);
+            }
+            for (int i = 0; i < size; i++) {
+                lastBalances[i] = readSignedVarLong(in);
+            }
+            previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += readSignedVarLong(in);
+                createdAt[i] = previous;
+            }
+            for (int i = 0; i < size; i++) {
+                updatedAtOffsets[i] = readNullableVarLong(in);
+            }
+            for (int i = 0; i < size; i++) {
+                ledgerSequences[i] = readNullableVarLong(in);
+            }
+            for (int i = 0; i < size; i++) {
+                counterpartyUserIds[i] = readNullableVarLong(in);
+            }
+            for (int i = 0; i < size; i++) {
+                idempotencyKeys[i] = readNullableString(in);
+            }
+        }
+
+        private Transaction transaction(int row) {
+            User user = new User();
+            user.setId(userIds[row]);
+
+            Transaction transaction = new Transaction();
+            transaction.setId(ids[row]);
+            transaction.setUser(user);
+            transaction.setTransactionCategory(categoryCodes[row] == 0 ? null : TransactionCategory.valueOf(categories[categoryCodes[row] - 1]));
+            transaction.setCurrency(currencyCodes[row] == 0 ? null : currencies[currencyCodes[row] - 1]);
+            transaction.setAmount(new Money(amounts[row]));
+            transaction.setLastBalance(new Money(lastBalances[row]));
+            transaction.setIdempotencyKey(idempotencyKeys[row]);
+            transaction.setLedgerSequence(ledgerSequences[row]);
+            transaction.setCounterpartyUserId(counterpartyUserIds[row]);
+            transaction.setCreatedAt(fromMicros(createdAt[row]));
+            transaction.setUpdatedAt(updatedAtOffsets[row] == null ? null : fromMicros(createdAt[row] + updatedAtOffsets[row]));
+            return transaction;
+        }
+    }
+}
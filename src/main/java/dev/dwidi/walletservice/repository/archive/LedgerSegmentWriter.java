@@ -0,0 +1,212 @@
+package dev.dwidi.walletservice.repository.archive;
+
+import dev.dwidi.walletservice.entity.Transaction;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static dev.dwidi.walletservice.repository.archive.SegmentFormat.*;
+
+/**
+ * Writes one segment file (see {@link SegmentFormat}) from transactions of one month handed to it
+ * in (created_at, id) order. The file is complete and synced to disk once {@link #close()} returns.
+ */
+final class LedgerSegmentWriter implements Closeable {
+
+    private record BlockEntry(long offset, int compressedLength, int rawLength, int rows, long minCreatedAt, long maxCreatedAt) {
+    }
+
+    private final Path path;
+    private final YearMonth month;
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater();
+    private final Map<String, Integer> categories = new LinkedHashMap<>();
+    private final Map<String, Integer> currencies = new LinkedHashMap<>();
+    private final List<Transaction> block = new ArrayList<>(BLOCK_ROWS);
+    private final List<BlockEntry> blocks = new ArrayList<>();
+    private final Map<Long, List<Integer>> userBlocks = new HashMap<>();
+    private long rowCount;
+    private long lastCreatedAt = Long.MIN_VALUE;
+    private long lastId = Long.MIN_VALUE;
+
+    LedgerSegmentWriter(Path path, YearMonth month) throws IOException {
+        this.path = path;
+        this.month = month;
+        this.file = new FileOutputStream(path.toFile());
+        this.out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(month.getYear() * 100 + month.getMonthValue());
+    }
+
+    void append(Transaction transaction) throws IOException {
+        long createdAt = toMicros(transaction.getCreatedAt());
+        if (!YearMonth.from(transaction.getCreatedAt()).equals(month)) {
+            throw new RuntimeException("Transaction " + transaction.getId() + " does not belong to the segment of " + month);
+        }
+        if (createdAt < lastCreatedAt || (createdAt == lastCreatedAt && transaction.getId() <= lastId)) {
+            throw new RuntimeException("Transactions must be written in (created_at, id) order, " + path + " got " + transaction.getId() + " out of order");
+        }
+        lastCreatedAt = createdAt;
+        lastId = transaction.getId();
+
+        List<Integer> userBlockList = userBlocks.computeIfAbsent(transaction.getUser().getId(), userId -> new ArrayList<>(1));
+        if (userBlockList.isEmpty() || userBlockList.getLast() != blocks.size()) {
+            userBlockList.add(blocks.size());
+        }
+        block.add(transaction);
+        rowCount++;
+        if (block.size() == BLOCK_ROWS) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Bytes written so far, compressed blocks included; the footer adds a little more on close.
+     */
+    int size() {
+        return out.size();
+    }
+
+    long rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!block.isEmpty()) {
+                flushBlock();
+            }
+            writeFooter();
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            out.close();
+            deflater.end();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(block.size() * 32);
+        writeVarLong(raw, block.size());
+
+        long previous = 0;
+        for (Transaction transaction : block) {
+            writeSignedVarLong(raw, transaction.getId() - previous);
+            previous = transaction.getId();
+        }
+        for (Transaction transaction : block) {
+            writeVarLong(raw, transaction.getUser().getId());
+        }
+        for (Transaction transaction : block) {
+            writeVarLong(raw, code(categories, transaction.getTransactionCategory() == null ? null : transaction.getTransactionCategory().name()));
+        }
+        for (Transaction transaction : block) {
+            writeVarLong(raw, code(currencies, transaction.getCurrency()));
+        }
+        for (Transaction transaction : block) {
+            writeSignedVarLong(raw, transaction.getAmount().minorUnits());
+        }
+        for (Transaction transaction : block) {
+            writeSignedVarLong(raw, transaction.getLastBalance().minorUnits());
+        }
+        previous = 0;
+        for (Transaction transaction : block) {
+            long createdAt = toMicros(transaction.getCreatedAt());
+            writeSignedVarLong(raw, createdAt - previous);
+            previous = createdAt;
+        }
+        for (Transaction transaction : block) {
+            writeNullableVarLong(raw, transaction.getUpdatedAt() == null ? null
+                    : toMicros(transaction.getUpdatedAt()) - toMicros(transaction.getCreatedAt()));
+        }
+        for (Transaction transaction : block) {
+            writeNullableVarLong(raw, transaction.getLedgerSequence());
+        }
+        for (Transaction transaction : block) {
+            writeNullableVarLong(raw, transaction.getCounterpartyUserId());
+        }
+        for (Transaction transaction : block) {
+            writeNullableString(raw, transaction.getIdempotencyKey());
+        }
+
+        byte[] bytes = raw.toByteArray();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        long offset = out.size();
+        byte[] buffer = new byte[8 * 1024];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        blocks.add(new BlockEntry(offset, (int) (out.size() - offset), bytes.length, block.size(),
+                toMicros(block.getFirst().getCreatedAt()), toMicros(block.getLast().getCreatedAt())));
+        block.clear();
+    }
+
+    private void writeFooter() throws IOException {
+        long footerOffset = out.size();
+        writeDictionary(categories);
+        writeDictionary(currencies);
+        out.writeInt(blocks.size());
+        for (BlockEntry entry : blocks) {
+            out.writeLong(entry.offset());
+            out.writeInt(entry.compressedLength());
+            out.writeInt(entry.rawLength());
+            out.writeInt(entry.rows());
+            out.writeLong(entry.minCreatedAt());
+            out.writeLong(entry.maxCreatedAt());
+        }
+
+        // Block numbers of each user, as deltas, then the sorted user index pointing at them
+        List<Long> userIds = userBlocks.keySet().stream().sorted().toList();
+        long[] blockListOffsets = new long[userIds.size()];
+        for (int i = 0; i < userIds.size(); i++) {
+            blockListOffsets[i] = out.size();
+            int previous = 0;
+            for (int blockNumber : userBlocks.get(userIds.get(i))) {
+                writeVarLong(out, blockNumber - previous);
+                previous = blockNumber;
+            }
+        }
+        long userIndexOffset = out.size();
+        for (int i = 0; i < userIds.size(); i++) {
+            out.writeLong(userIds.get(i));
+            out.writeLong(blockListOffsets[i]);
+            out.writeInt(userBlocks.get(userIds.get(i)).size());
+        }
+
+        out.writeLong(footerOffset);
+        out.writeLong(userIndexOffset);
+        out.writeInt(userIds.size());
+        out.writeLong(rowCount);
+        out.writeInt(MAGIC);
+    }
+
+    private void writeDictionary(Map<String, Integer> dictionary) throws IOException {
+        out.writeInt(dictionary.size());
+        for (String value : dictionary.keySet()) {
+            writeNullableString(out, value);
+        }
+    }
+
+    // Zero stands for null, so codes start at one
+    private static int code(Map<String, Integer> dictionary, String value) {
+        return value == null ? 0 : dictionary.computeIfAbsent(value, key -> dictionary.size() + 1);
+    }
+}
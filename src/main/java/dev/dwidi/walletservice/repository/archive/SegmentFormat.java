@@ -0,0 +1,105 @@
+package dev.dwidi.walletservice.repository.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Layout of a ledger segment file:
+ * <pre>
+ * header   magic, version, month (yyyymm)
+ * blocks   up to BLOCK_ROWS transactions each, Deflate-compressed
+ * footer   category and currency dictionaries, block index, per-user block lists
+ * users    one fixed-size entry per user id, sorted, pointing at its block list
+ * trailer  footer offset, user index offset, user count, row count, magic
+ * </pre>
+ * Rows are in (created_at, id) order. Inside a block they are stored column by column, each column
+ * as variable-length integers: ids and created_at as deltas from the previous row, updated_at as
+ * a delta from created_at, amounts in minor units, and category and currency as dictionary codes.
+ */
+final class SegmentFormat {
+
+    static final int MAGIC = 0x574c5347;
+    static final int VERSION = 1;
+    static final int BLOCK_ROWS = 1024;
+    static final int HEADER_BYTES = 12;
+    static final int TRAILER_BYTES = 32;
+    static final int USER_ENTRY_BYTES = 20;
+
+    private SegmentFormat() {
+    }
+
+    // Ledger timestamps are timestamp(6) without a time zone, so microseconds on the UTC line keep them exact
+    static long toMicros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeSignedVarLong(OutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    // Zero stands for null, anything else is the zigzag value plus one
+    static void writeNullableVarLong(OutputStream out, Long value) throws IOException {
+        writeVarLong(out, value == null ? 0 : ((value << 1) ^ (value >> 63)) + 1);
+    }
+
+    static void writeNullableString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static long readSignedVarLong(ByteBuffer in) {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static Long readNullableVarLong(ByteBuffer in) {
+        long value = readVarLong(in);
+        if (value == 0) {
+            return null;
+        }
+        value--;
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static String readNullableString(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
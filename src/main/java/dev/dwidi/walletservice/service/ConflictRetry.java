@@ -0,0 +1,71 @@
+package dev.dwidi.walletservice.service;
+
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Retries a wallet operation that lost a race with a concurrent write: a stale {@code @Version}
+ * on save, a detected deadlock or a lock that could not be acquired. The action must run its
+ * own transaction, so each attempt starts from fresh data.
+ * <p>
+ * At most {@code wallet.retry.max-attempts} attempts are made. Before attempt n the caller
+ * sleeps a random time between zero and {@code initial-backoff * 2^(n-2)}, capped at
+ * {@code max-backoff}, so writers that collided do not collide again in lockstep.
+ */
+@Component
+@Slf4j
+public class ConflictRetry {
+
+    private final WalletMetrics walletMetrics;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    public ConflictRetry(WalletMetrics walletMetrics,
+                         @Value("${wallet.retry.max-attempts:5}") int maxAttempts,
+                         @Value("${wallet.retry.initial-backoff:5ms}") Duration initialBackoff,
+                         @Value("${wallet.retry.max-backoff:200ms}") Duration maxBackoff) {
+        this.walletMetrics = walletMetrics;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+    }
+
+    public <T> T execute(Operation operation, Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (ConcurrencyFailureException e) {
+                boolean retry = attempt < maxAttempts;
+                walletMetrics.conflict(operation, retry);
+                if (!retry) {
+                    log.warn("Giving up {} after {} conflicting attempts", operation, attempt);
+                    throw e;
+                }
+                log.debug("Retrying {} after a conflict on attempt {}", operation, attempt, e);
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void backOff(int attempt) {
+        long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, 30));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceiling + 1)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to retry", e);
+        }
+    }
+}
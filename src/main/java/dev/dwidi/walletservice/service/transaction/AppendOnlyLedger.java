@@ -0,0 +1,123 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.enums.LedgerMode;
+import dev.dwidi.walletservice.exception.UserNotFoundException;
+import dev.dwidi.walletservice.repository.LedgerHead;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * Append mode of the ledger ({@code wallet.ledger.mode=append}).
+ * <p>
+ * Transactions are the source of truth: every mutation appends a row carrying the running
+ * balance and the next number of the ledger sequence of the wallet's balance in its currency,
+ * and never touches the balance row. The current balance is the snapshot stored on the balance
+ * row plus the sum of the transactions appended after it. Once
+ * {@code wallet.ledger.snapshot-every} transactions have piled up on top of a snapshot, the
+ * appender that crossed the threshold stores a new one in the same transaction, so the tail a
+ * balance read has to sum stays bounded. The first append in a currency stores a snapshot too,
+ * which creates the balance row.
+ * <p>
+ * In update mode the balance row holds the whole balance. Tails left behind by an earlier run
+ * in append mode are folded into it at startup.
+ */
+@Component
+@Slf4j
+public class AppendOnlyLedger {
+
+    private final UserJdbcRepository userJdbcRepository;
+    private final LedgerMode mode;
+    private final long snapshotEvery;
+
+    public AppendOnlyLedger(UserJdbcRepository userJdbcRepository,
+                            @Value("${wallet.ledger.mode:update}") LedgerMode mode,
+                            @Value("${wallet.ledger.snapshot-every:100}") long snapshotEvery) {
+        this.userJdbcRepository = userJdbcRepository;
+        this.mode = mode;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    @PostConstruct
+    void foldTailsInUpdateMode() {
+        if (mode == LedgerMode.UPDATE) {
+            int folded = userJdbcRepository.foldLedgerTails();
+            if (folded > 0) {
+                log.info("Folded the append-only ledger tails of {} wallet balances into their rows", folded);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return mode == LedgerMode.APPEND;
+    }
+
+    /**
+     * Locks the ledger of the balance for appending until the current transaction ends.
+     */
+    public LedgerHead lock(BalanceKey key) {
+        LedgerHead head = userJdbcRepository.lockLedgerHeads(List.of(key)).get(key);
+        if (head == null) {
+            throw new UserNotFoundException();
+        }
+        return head;
+    }
+
+    /**
+     * Locks the ledgers of several balances for appending; balances of wallets that do not exist
+     * are absent from the result.
+     */
+    public Map<BalanceKey, LedgerHead> lock(SortedSet<BalanceKey> keys) {
+        return userJdbcRepository.lockLedgerHeads(keys);
+    }
+
+    /**
+     * Current balances of the wallet by currency.
+     */
+    public Map<String, Money> balances(Long userId) {
+        Map<String, Money> balances = new HashMap<>();
+        userJdbcRepository.findLedgerHeads(userId).forEach((key, head) -> balances.put(key.currency(), head.getBalance()));
+        return balances;
+    }
+
+    /**
+     * Stores a snapshot, under the ledger lock, for every balance whose tail still has
+     * transactions created before {@code createdBefore}, so that those transactions can leave the
+     * ledger without changing any balance. Returns the number of snapshots stored.
+     */
+    public int snapshotTailsCreatedBefore(LocalDateTime createdBefore, LocalDateTime now) {
+        SortedSet<BalanceKey> keys = userJdbcRepository.findTailsCreatedBefore(createdBefore);
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        Map<BalanceKey, LedgerHead> heads = lock(keys);
+        userJdbcRepository.snapshotBalances(heads, now);
+        return heads.size();
+    }
+
+    /**
+     * Called with the new heads after appending, while the ledgers are still locked. Stores a
+     * snapshot for every balance whose tail reached the threshold or that has no row yet.
+     */
+    public void appended(Map<BalanceKey, LedgerHead> heads, LocalDateTime now) {
+        Map<BalanceKey, LedgerHead> due = new HashMap<>();
+        heads.forEach((key, head) -> {
+            if (head.getSnapshotSequence() == 0 || head.tailLength() >= snapshotEvery) {
+                due.put(key, head);
+            }
+        });
+        if (!due.isEmpty()) {
+            userJdbcRepository.snapshotBalances(due, now);
+        }
+    }
+}
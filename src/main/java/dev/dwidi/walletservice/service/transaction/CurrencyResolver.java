@@ -0,0 +1,26 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.CurrencyCodeValidator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Picks the currency of a request: the one it names, or {@code wallet.default-currency} when
+ * it names none, so clients written before wallets held several currencies keep working.
+ */
+@Component
+public class CurrencyResolver {
+
+    private final String defaultCurrency;
+
+    public CurrencyResolver(@Value("${wallet.default-currency:IDR}") String defaultCurrency) {
+        if (!CurrencyCodeValidator.isSupported(defaultCurrency)) {
+            throw new RuntimeException("wallet.default-currency must be an ISO 4217 code of a currency with 2 decimal places, got " + defaultCurrency);
+        }
+        this.defaultCurrency = defaultCurrency;
+    }
+
+    public String resolve(String currency) {
+        return currency == null ? defaultCurrency : currency;
+    }
+}
@@ -0,0 +1,36 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Position in a wallet's transaction history: the (createdAt, id) of the last row of a page.
+ * Clients get it as an opaque URL-safe token and send it back to fetch the next page.
+ */
+@Getter
+@RequiredArgsConstructor
+final class HistoryCursor {
+
+    private final LocalDateTime createdAt;
+    private final Long id;
+
+    String encode() {
+        String position = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static HistoryCursor decode(String token) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = position.indexOf('|');
+            return new HistoryCursor(LocalDateTime.parse(position.substring(0, separator)),
+                    Long.parseLong(position.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+}
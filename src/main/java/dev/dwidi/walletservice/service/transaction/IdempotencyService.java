@@ -0,0 +1,13 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+
+import java.util.function.Function;
+
+public interface IdempotencyService {
+    /**
+     * Runs {@code action} for the mutation unless a transaction with the same idempotency key
+     * was already recorded for the wallet, in which case the stored result is returned instead.
+     */
+    TransactionResponseDTO execute(WalletMutation mutation, Function<WalletMutation, TransactionResponseDTO> action);
+}
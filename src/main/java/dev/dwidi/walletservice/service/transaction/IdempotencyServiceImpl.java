@@ -0,0 +1,79 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.repository.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Idempotency keys are unique per wallet through the primary key of
+ * {@code transaction_idempotency_key}, which the partitioned ledger cannot hold itself. A single
+ * mutation writes its key in the same statement as its ledger row, so the first request needs no
+ * extra round trip: a duplicate fails that insert, its transaction rolls back and the original
+ * result is read back. Recent results are kept in a bounded in-memory cache so most retries never
+ * reach the database.
+ */
+@Service
+@Slf4j
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private final TransactionRepository transactionRepository;
+    private final Cache<String, TransactionResponseDTO> recentResults;
+
+    public IdempotencyServiceImpl(TransactionRepository transactionRepository,
+                                  @Value("${wallet.idempotency.cache.maximum-size:100000}") long maximumSize,
+                                  @Value("${wallet.idempotency.cache.expire-after-write:24h}") Duration expireAfterWrite) {
+        this.transactionRepository = transactionRepository;
+        this.recentResults = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+    }
+
+    @Override
+    public TransactionResponseDTO execute(WalletMutation mutation, Function<WalletMutation, TransactionResponseDTO> action) {
+        if (mutation.getIdempotencyKey() == null) {
+            return action.apply(mutation);
+        }
+
+        String cacheKey = mutation.getUserId() + ":" + mutation.getIdempotencyKey();
+        TransactionResponseDTO cached = recentResults.getIfPresent(cacheKey);
+        if (cached != null) {
+            log.info("Returning stored result for duplicate transaction of user with ID: {}", mutation.getUserId());
+            return verifySameRequest(mutation, cached);
+        }
+
+        TransactionResponseDTO result;
+        try {
+            result = action.apply(mutation);
+        } catch (DataIntegrityViolationException e) {
+            result = transactionRepository.findByUserIdAndIdempotencyKey(mutation.getUserId(), mutation.getIdempotencyKey())
+                    .map(WalletLedgerWriter::toResponse)
+                    .orElseThrow(() -> e);
+            log.info("Returning stored result for duplicate transaction of user with ID: {}", mutation.getUserId());
+            verifySameRequest(mutation, result);
+        }
+
+        recentResults.put(cacheKey, result);
+        return result;
+    }
+
+    private TransactionResponseDTO verifySameRequest(WalletMutation mutation, TransactionResponseDTO stored) {
+        if (stored.getTransactionCategory() != mutation.getTransactionCategory()
+                || !Objects.equals(stored.getCurrency(), mutation.getCurrency())
+                || !Money.of(stored.getAmount()).equals(mutation.getAmount())
+                || !Objects.equals(stored.getCounterpartyUserId(), mutation.getCounterpartyUserId())) {
+            throw new RuntimeException("Idempotency key already used for a different transaction");
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,14 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.LedgerExportRequestDTO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface LedgerExportService {
+    /**
+     * Writes the ledger rows matching the request to {@code out} in the requested format, oldest
+     * first. The stream is flushed but not closed.
+     */
+    void exportLedger(LedgerExportRequestDTO ledgerExportRequestDTO, OutputStream out) throws IOException;
+}
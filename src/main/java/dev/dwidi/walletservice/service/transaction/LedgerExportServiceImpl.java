@@ -0,0 +1,146 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.LedgerExportRequestDTO;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.enums.ExportFormat;
+import dev.dwidi.walletservice.repository.TransactionJdbcRepository;
+import dev.dwidi.walletservice.repository.WalletTombstoneRepository;
+import dev.dwidi.walletservice.repository.archive.LedgerArchiveRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Rows go from the JDBC cursor straight to the output stream, so an export holds one fetch of
+ * rows in memory however large the date range is. The read-only transaction keeps the cursor
+ * open on the server for the whole export. Months archived out of the database are older than
+ * every month still in it, so their rows are streamed from the archive first, one block at a time.
+ * The archive still holds the rows of deleted wallets; their tombstones keep them out of exports.
+ */
+@Service
+@Slf4j
+public class LedgerExportServiceImpl implements LedgerExportService {
+
+    private static final String CSV_HEADER = "id,user_id,transaction_category,currency,amount,last_balance,created_at,counterparty_user_id\n";
+
+    private final TransactionJdbcRepository transactionJdbcRepository;
+    private final LedgerArchiveRepository ledgerArchiveRepository;
+    private final WalletTombstoneRepository walletTombstoneRepository;
+    private final int fetchSize;
+
+    public LedgerExportServiceImpl(TransactionJdbcRepository transactionJdbcRepository,
+                                   LedgerArchiveRepository ledgerArchiveRepository,
+                                   WalletTombstoneRepository walletTombstoneRepository,
+                                   @Value("${wallet.export.fetch-size:1000}") int fetchSize) {
+        this.transactionJdbcRepository = transactionJdbcRepository;
+        this.ledgerArchiveRepository = ledgerArchiveRepository;
+        this.walletTombstoneRepository = walletTombstoneRepository;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportLedger(LedgerExportRequestDTO ledgerExportRequestDTO, OutputStream out) throws IOException {
+        log.info("Exporting ledger of user with ID: {} from {} to {}", ledgerExportRequestDTO.getUserId(),
+                ledgerExportRequestDTO.getFrom(), ledgerExportRequestDTO.getTo());
+
+        ExportFormat format = ledgerExportRequestDTO.getFormat();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+        }
+
+        Consumer<Transaction> rowWriter = transaction -> {
+            try {
+                if (format == ExportFormat.CSV) {
+                    writeCsv(writer, transaction);
+                } else {
+                    writeNdjson(writer, transaction);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            streamArchive(ledgerExportRequestDTO, rowWriter);
+            transactionJdbcRepository.streamLedger(ledgerExportRequestDTO.getUserId(), ledgerExportRequestDTO.getFrom(),
+                    ledgerExportRequestDTO.getTo(), fetchSize, rowWriter);
+        } catch (UncheckedIOException e) {
+            // The client went away; stop reading and release the cursor
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private void streamArchive(LedgerExportRequestDTO ledgerExportRequestDTO, Consumer<Transaction> rowWriter) {
+        if (!ledgerArchiveRepository.isEnabled()) {
+            return;
+        }
+        Long userId = ledgerExportRequestDTO.getUserId();
+        if (userId != null) {
+            if (!walletTombstoneRepository.existsById(userId)) {
+                ledgerArchiveRepository.streamLedger(userId, ledgerExportRequestDTO.getFrom(), ledgerExportRequestDTO.getTo(), rowWriter);
+            }
+            return;
+        }
+        Set<Long> deletedUserIds = walletTombstoneRepository.findAllUserIds();
+        ledgerArchiveRepository.streamLedger(null, ledgerExportRequestDTO.getFrom(), ledgerExportRequestDTO.getTo(), transaction -> {
+            if (!deletedUserIds.contains(transaction.getUser().getId())) {
+                rowWriter.accept(transaction);
+            }
+        });
+    }
+
+    // Every field is a number, an enum name, a currency code or an ISO timestamp, so none of them needs quoting
+    private static void writeCsv(Writer writer, Transaction transaction) throws IOException {
+        writer.write(String.valueOf(transaction.getId()));
+        writer.write(',');
+        writer.write(String.valueOf(transaction.getUser().getId()));
+        writer.write(',');
+        writer.write(transaction.getTransactionCategory().name());
+        writer.write(',');
+        writer.write(transaction.getCurrency());
+        writer.write(',');
+        writer.write(transaction.getAmount().toString());
+        writer.write(',');
+        writer.write(transaction.getLastBalance().toString());
+        writer.write(',');
+        writer.write(transaction.getCreatedAt().toString());
+        writer.write(',');
+        if (transaction.getCounterpartyUserId() != null) {
+            writer.write(String.valueOf(transaction.getCounterpartyUserId()));
+        }
+        writer.write('\n');
+    }
+
+    private static void writeNdjson(Writer writer, Transaction transaction) throws IOException {
+        writer.write("{\"id\":");
+        writer.write(String.valueOf(transaction.getId()));
+        writer.write(",\"userId\":");
+        writer.write(String.valueOf(transaction.getUser().getId()));
+        writer.write(",\"transactionCategory\":\"");
+        writer.write(transaction.getTransactionCategory().name());
+        writer.write("\",\"currency\":\"");
+        writer.write(transaction.getCurrency());
+        writer.write("\",\"amount\":");
+        writer.write(transaction.getAmount().toString());
+        writer.write(",\"lastBalance\":");
+        writer.write(transaction.getLastBalance().toString());
+        writer.write(",\"createdAt\":\"");
+        writer.write(transaction.getCreatedAt().toString());
+        writer.write("\",\"counterpartyUserId\":");
+        writer.write(String.valueOf(transaction.getCounterpartyUserId()));
+        writer.write("}\n");
+    }
+}
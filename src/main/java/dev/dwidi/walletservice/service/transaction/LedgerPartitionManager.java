@@ -0,0 +1,150 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.repository.LedgerPartitionRepository;
+import dev.dwidi.walletservice.repository.archive.LedgerArchiveRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.SortedSet;
+
+/**
+ * Keeps the monthly partitions of the ledger (see {@link LedgerPartitionRepository}) ahead of the
+ * clock and takes old ones out of it.
+ * <p>
+ * Runs at startup and on {@code wallet.ledger.partitions.cron}. The current month and the
+ * {@code months-ahead} months after it always have a partition, so inserts keep working if the
+ * job misses a few runs. With {@code retention-months} set, partitions of months older than that
+ * are detached into the {@code ledger_archive} schema: their rows stay in the database but no
+ * longer count towards the ledger's indexes, vacuum or queries. History and exports are bounded
+ * by created_at, so PostgreSQL only reads the partitions of the months they ask for.
+ * <p>
+ * In append mode a balance is its snapshot plus the transactions after it, so before any month is
+ * archived every balance whose tail reaches back into it gets a new snapshot. That happens in a
+ * transaction of its own, so appenders waiting for those ledgers are not also kept waiting for
+ * the partition changes, which run in one transaction under an advisory lock: only one instance
+ * changes partitions at a time, and a run that cannot get the table lock within
+ * {@code lock-timeout} gives up until the next one.
+ * <p>
+ * With {@code wallet.ledger.archive.enabled} the archived partitions then leave the database:
+ * each is copied into the month's segment files (see {@link LedgerArchiveRepository}) and dropped
+ * in the same transaction, under the same lock. A month whose files hold fewer rows than its
+ * table, after a crash or a failed run, is written again before the table is dropped.
+ */
+@Component
+@Slf4j
+public class LedgerPartitionManager {
+
+    private final LedgerPartitionRepository ledgerPartitionRepository;
+    private final AppendOnlyLedger appendOnlyLedger;
+    private final LedgerArchiveRepository ledgerArchiveRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final Duration lockTimeout;
+    private final int archiveFetchSize;
+
+    public LedgerPartitionManager(LedgerPartitionRepository ledgerPartitionRepository,
+                                  AppendOnlyLedger appendOnlyLedger,
+                                  LedgerArchiveRepository ledgerArchiveRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${wallet.ledger.partitions.enabled:true}") boolean enabled,
+                                  @Value("${wallet.ledger.partitions.months-ahead:3}") int monthsAhead,
+                                  @Value("${wallet.ledger.partitions.retention-months:0}") int retentionMonths,
+                                  @Value("${wallet.ledger.partitions.lock-timeout:5s}") Duration lockTimeout,
+                                  @Value("${wallet.ledger.archive.fetch-size:10000}") int archiveFetchSize) {
+        this.ledgerPartitionRepository = ledgerPartitionRepository;
+        this.appendOnlyLedger = appendOnlyLedger;
+        this.ledgerArchiveRepository = ledgerArchiveRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.lockTimeout = lockTimeout;
+        this.archiveFetchSize = archiveFetchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${wallet.ledger.partitions.cron:0 0 3 * * *}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        YearMonth currentMonth = YearMonth.now();
+        try {
+            if (retentionMonths > 0 && appendOnlyLedger.isEnabled()) {
+                int snapshots = transactionTemplate.execute(status -> appendOnlyLedger.snapshotTailsCreatedBefore(
+                        oldestKeptMonth(currentMonth).atDay(1).atStartOfDay(), LocalDateTime.now()));
+                if (snapshots > 0) {
+                    log.info("Snapshotted {} balances whose ledger tails reach into the months to archive", snapshots);
+                }
+            }
+            transactionTemplate.executeWithoutResult(status -> maintain(currentMonth));
+            if (ledgerArchiveRepository.isEnabled()) {
+                ledgerArchiveRepository.reload();
+                for (YearMonth month : ledgerPartitionRepository.findArchivedPartitions()) {
+                    transactionTemplate.executeWithoutResult(status -> archiveToSegments(month));
+                }
+            }
+        } catch (DataAccessException | UncheckedIOException e) {
+            log.warn("Ledger partition maintenance failed, retrying on the next run", e);
+        }
+    }
+
+    void maintain(YearMonth currentMonth) {
+        if (!ledgerPartitionRepository.tryLock(lockTimeout)) {
+            log.debug("Ledger partitions are being maintained by another instance");
+            return;
+        }
+        SortedSet<YearMonth> partitions = ledgerPartitionRepository.findPartitions();
+
+        YearMonth lastMonth = currentMonth.plusMonths(monthsAhead);
+        for (YearMonth month = currentMonth; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            if (!partitions.contains(month)) {
+                ledgerPartitionRepository.createPartition(month);
+                log.info("Created ledger partition for {}", month);
+            }
+        }
+
+        if (retentionMonths > 0) {
+            for (YearMonth month : partitions.headSet(oldestKeptMonth(currentMonth))) {
+                int keys = ledgerPartitionRepository.archivePartition(month);
+                log.info("Archived ledger partition for {} into {}, forgetting {} idempotency keys",
+                        month, LedgerPartitionRepository.ARCHIVE_SCHEMA, keys);
+            }
+        }
+    }
+
+    void archiveToSegments(YearMonth month) {
+        if (!ledgerPartitionRepository.tryLock(lockTimeout)) {
+            log.debug("Ledger partitions are being maintained by another instance");
+            return;
+        }
+        long rows = ledgerPartitionRepository.countArchivedPartition(month);
+        if (ledgerArchiveRepository.rowCount(month) != rows) {
+            long written = ledgerArchiveRepository.write(month,
+                    consumer -> ledgerPartitionRepository.streamArchivedPartition(month, archiveFetchSize, consumer));
+            if (written != rows) {
+                log.error("Archived {} of the {} transactions of {}, keeping its partition", written, rows, month);
+                return;
+            }
+        }
+        ledgerPartitionRepository.dropArchivedPartition(month);
+        log.info("Moved {} transactions of {} out of the database into the ledger archive", rows, month);
+    }
+
+    private YearMonth oldestKeptMonth(YearMonth currentMonth) {
+        return currentMonth.minusMonths(retentionMonths);
+    }
+}
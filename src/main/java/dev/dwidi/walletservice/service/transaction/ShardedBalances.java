@@ -0,0 +1,113 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.WalletBalanceShard;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
+import dev.dwidi.walletservice.repository.WalletBalanceShardRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sharded balances of hot wallets ({@code wallet.sharded-balance.wallets}).
+ * <p>
+ * A single credit to a sharded wallet adds to one of {@code wallet.sharded-balance.shards}
+ * shard rows picked at random instead of the balance row. The {@link WalletMutationExecutor}
+ * queues and coalesces credits per shard, so concurrent credits to the same wallet are spread
+ * over that many row locks instead of waiting for one.
+ * The balance is the balance row plus all of its shards. Anything that needs the whole balance
+ * under a lock, a debit, a batch or a transfer, locks the balance row and sweeps the shards
+ * into it first.
+ * <p>
+ * Sharding only applies in update mode. Shards of wallets that are no longer sharded, or of
+ * every wallet in append mode, are swept into their balance rows at startup.
+ */
+@Component
+@Slf4j
+public class ShardedBalances {
+
+    /**
+     * The shard argument of writes that go to the balance row rather than to a shard.
+     */
+    public static final int BALANCE_ROW = -1;
+
+    private final UserJdbcRepository userJdbcRepository;
+    private final WalletBalanceShardRepository walletBalanceShardRepository;
+    private final Set<Long> shardedUserIds;
+    private final int shards;
+
+    public ShardedBalances(UserJdbcRepository userJdbcRepository,
+                           WalletBalanceShardRepository walletBalanceShardRepository,
+                           AppendOnlyLedger appendOnlyLedger,
+                           @Value("${wallet.sharded-balance.wallets:}") Set<Long> shardedUserIds,
+                           @Value("${wallet.sharded-balance.shards:8}") int shards) {
+        this.userJdbcRepository = userJdbcRepository;
+        this.walletBalanceShardRepository = walletBalanceShardRepository;
+        this.shardedUserIds = appendOnlyLedger.isEnabled() ? Set.of() : Set.copyOf(shardedUserIds);
+        this.shards = shards;
+    }
+
+    @PostConstruct
+    void foldUnshardedWallets() {
+        if (walletBalanceShardRepository.count() == 0) {
+            return;
+        }
+        int folded = userJdbcRepository.foldBalanceShards(shardedUserIds, LocalDateTime.now());
+        if (folded > 0) {
+            log.info("Folded the shards of {} wallet balances that are no longer sharded into their rows", folded);
+        }
+    }
+
+    public boolean isSharded(Long userId) {
+        return shardedUserIds.contains(userId);
+    }
+
+    public int pickShard() {
+        return ThreadLocalRandom.current().nextInt(shards);
+    }
+
+    /**
+     * Adds a non-negative {@code delta} to a shard of the balance. Returns the balance as seen by
+     * the credit, or empty when the wallet does not exist.
+     */
+    public Optional<Money> credit(BalanceKey key, int shard, Money delta, LocalDateTime now) {
+        return walletBalanceShardRepository.credit(key.userId(), key.currency(), shard, delta.toBigDecimal(), now)
+                .map(Money::of);
+    }
+
+    /**
+     * Locks the balance rows like {@link UserJdbcRepository#lockBalances} and sweeps the shards of
+     * the sharded wallets among them into their rows, so every returned balance is whole. A
+     * balance without a row gets one when it has shards to sweep.
+     */
+    public Map<BalanceKey, Money> lockBalances(Collection<BalanceKey> keys, Collection<BalanceKey> creditKeys, LocalDateTime now) {
+        Map<BalanceKey, Money> balances = userJdbcRepository.lockBalances(keys, creditKeys, now);
+        List<BalanceKey> sharded = balances.keySet().stream().filter(key -> isSharded(key.userId())).sorted().toList();
+        if (!sharded.isEmpty()) {
+            balances.putAll(userJdbcRepository.sweepBalanceShards(sharded, now));
+        }
+        return balances;
+    }
+
+    /**
+     * Returns the sum of the shards of each currency the wallet holds shards in.
+     */
+    public Map<String, Money> shardTotals(Long userId) {
+        Map<String, Money> totals = new HashMap<>();
+        for (WalletBalanceShard shard : walletBalanceShardRepository.findByUserId(userId)) {
+            totals.merge(shard.getCurrency(), shard.getBalance(), Money::plus);
+        }
+        return totals;
+    }
+}
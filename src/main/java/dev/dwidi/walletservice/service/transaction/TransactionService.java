@@ -1,11 +1,19 @@
 package dev.dwidi.walletservice.service.transaction;
 
 import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionHistoryRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionHistoryResponseDTO;
 import dev.dwidi.walletservice.dto.transaction.TransactionRequestDTO;
 import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransferRequestDTO;
 
 public interface TransactionService {
     BaseResponseDTO<TransactionResponseDTO> topUpBalance(Long userId, TransactionRequestDTO transactionRequestDTO);
     BaseResponseDTO<TransactionResponseDTO> refundBalance(Long userId, TransactionRequestDTO transactionRequestDTO);
     BaseResponseDTO<TransactionResponseDTO> billPayment(Long userId, TransactionRequestDTO transactionRequestDTO);
+    BaseResponseDTO<TransactionResponseDTO> transfer(Long userId, TransferRequestDTO transferRequestDTO);
+    BaseResponseDTO<BatchTransactionResponseDTO> processBatch(BatchTransactionRequestDTO batchTransactionRequestDTO);
+    BaseResponseDTO<TransactionHistoryResponseDTO> getTransactionHistory(Long userId, TransactionHistoryRequestDTO transactionHistoryRequestDTO);
 }
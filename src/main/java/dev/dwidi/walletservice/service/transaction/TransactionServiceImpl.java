@@ -1,125 +1,179 @@
 package dev.dwidi.walletservice.service.transaction;
 
 import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionResultDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionHistoryRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionHistoryResponseDTO;
 import dev.dwidi.walletservice.dto.transaction.TransactionRequestDTO;
 import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
-import dev.dwidi.walletservice.entity.Transaction;
-import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.dto.transaction.TransferRequestDTO;
+import dev.dwidi.walletservice.entity.Money;
 import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.exception.UserNotFoundException;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
 import dev.dwidi.walletservice.repository.TransactionRepository;
 import dev.dwidi.walletservice.repository.UserRepository;
+import dev.dwidi.walletservice.repository.archive.LedgerArchiveRepository;
+import dev.dwidi.walletservice.service.ConflictRetry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class TransactionServiceImpl implements TransactionService {
 
-    private final UserRepository userRepository;
+    private final WalletMutationExecutor walletMutationExecutor;
+    private final WalletGroupCommitter walletGroupCommitter;
+    private final IdempotencyService idempotencyService;
+    private final WalletBatchWriter walletBatchWriter;
+    private final WalletTransferWriter walletTransferWriter;
     private final TransactionRepository transactionRepository;
+    private final UserRepository userRepository;
+    private final LedgerArchiveRepository ledgerArchiveRepository;
+    private final WalletMetrics walletMetrics;
+    private final ConflictRetry conflictRetry;
+    private final CurrencyResolver currencyResolver;
 
     @Override
     public BaseResponseDTO<TransactionResponseDTO> topUpBalance(Long userId, TransactionRequestDTO transactionRequestDTO) {
-        log.info("Processing top up balance from user with ID: {}", userId);
+        log.debug("Processing top up balance from user with ID: {}", userId);
 
-        User existingUser = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        TransactionResponseDTO transactionResponseDTO = walletMetrics.record(Operation.TOPUP, () -> idempotencyService.execute(
+                toMutation(userId, TransactionCategory.TOPUP, transactionRequestDTO), this::write));
 
-        Transaction topUp = new Transaction();
-        topUp.setUser(existingUser);
-        topUp.setAmount(transactionRequestDTO.getAmount());
-        topUp.setTransactionCategory(TransactionCategory.TOPUP);
+        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Top up successfully", transactionResponseDTO);
+    }
 
-        // Update balance on user table
-        BigDecimal newBalance = existingUser.getLastBalance().add(transactionRequestDTO.getAmount());
-        existingUser.setLastBalance(newBalance);
+    @Override
+    public BaseResponseDTO<TransactionResponseDTO> refundBalance(Long userId, TransactionRequestDTO transactionRequestDTO) {
+        log.debug("Processing refund balance to user with ID: {}", userId);
 
-        // Save to database
-        transactionRepository.save(topUp);
-        userRepository.save(existingUser);
+        TransactionResponseDTO transactionResponseDTO = walletMetrics.record(Operation.REFUND, () -> idempotencyService.execute(
+                toMutation(userId, TransactionCategory.REFUND, transactionRequestDTO), this::write));
 
-        // Build the response
-        TransactionResponseDTO transactionResponseDTO = new TransactionResponseDTO();
-        transactionResponseDTO.setId(topUp.getId());
-        transactionResponseDTO.setTransactionCategory(TransactionCategory.TOPUP);
-        transactionResponseDTO.setAmount(transactionRequestDTO.getAmount());
-        transactionResponseDTO.setLastBalance(existingUser.getLastBalance());
-        transactionResponseDTO.setCreatedAt(topUp.getCreatedAt());
-        transactionResponseDTO.setUpdatedAt(topUp.getUpdatedAt());
+        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Refund successfully processed", transactionResponseDTO);
+    }
 
-        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Top up successfully", transactionResponseDTO);
+    @Override
+    public BaseResponseDTO<TransactionResponseDTO> billPayment(Long userId, TransactionRequestDTO transactionRequestDTO) {
+        log.debug("Processing bill payment to user with ID: {}", userId);
+
+        // The insufficient balance check is part of the balance update statement
+        TransactionResponseDTO transactionResponseDTO = walletMetrics.record(Operation.BILLPAYMENT, () -> idempotencyService.execute(
+                toMutation(userId, TransactionCategory.BILLPAYMENT, transactionRequestDTO), this::write));
+
+        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Bill payment successfully processed", transactionResponseDTO);
     }
 
     @Override
-    public BaseResponseDTO<TransactionResponseDTO> refundBalance(Long userId, TransactionRequestDTO transactionRequestDTO) {
-        log.info("Processing refund balance to user with ID: {}", userId);
+    public BaseResponseDTO<TransactionResponseDTO> transfer(Long userId, TransferRequestDTO transferRequestDTO) {
+        log.debug("Processing transfer from user with ID: {} to user with ID: {}", userId, transferRequestDTO.getToUserId());
 
-        User existingUser = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        if (userId.equals(transferRequestDTO.getToUserId())) {
+            throw new RuntimeException("Cannot transfer to the same wallet");
+        }
+
+        // Both wallets change in one transaction, so transfers bypass the per-wallet executor and group commit
+        WalletMutation transfer = new WalletMutation(userId, currencyResolver.resolve(transferRequestDTO.getCurrency()),
+                TransactionCategory.TRANSFER_OUT, Money.of(transferRequestDTO.getAmount()), transferRequestDTO.getIdempotencyKey(),
+                transferRequestDTO.getToUserId());
+        TransactionResponseDTO transactionResponseDTO = walletMetrics.record(Operation.TRANSFER, () -> idempotencyService.execute(
+                transfer, mutation -> conflictRetry.execute(Operation.TRANSFER, () -> walletTransferWriter.apply(mutation))));
+
+        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Transfer successfully processed", transactionResponseDTO);
+    }
 
-        Transaction refund = new Transaction();
-        refund.setUser(existingUser);
-        refund.setAmount(transactionRequestDTO.getAmount());
-        refund.setTransactionCategory(TransactionCategory.REFUND);
+    @Override
+    public BaseResponseDTO<BatchTransactionResponseDTO> processBatch(BatchTransactionRequestDTO batchTransactionRequestDTO) {
+        log.debug("Processing batch of {} transactions", batchTransactionRequestDTO.getTransactions().size());
 
-        // Update balance
-        BigDecimal newBalance = existingUser.getLastBalance().add(transactionRequestDTO.getAmount());
-        existingUser.setLastBalance(newBalance);
+        batchTransactionRequestDTO.getTransactions().forEach(item -> item.setCurrency(currencyResolver.resolve(item.getCurrency())));
 
-        // Save to database
-        transactionRepository.save(refund);
-        userRepository.save(existingUser);
+        List<BatchTransactionResultDTO> results = walletMetrics.record(Operation.BATCH, () -> conflictRetry.execute(Operation.BATCH,
+                () -> walletBatchWriter.apply(batchTransactionRequestDTO.getTransactions())));
 
         // Build the response
-        TransactionResponseDTO transactionResponseDTO = new TransactionResponseDTO();
-        transactionResponseDTO.setId(refund.getId());
-        transactionResponseDTO.setTransactionCategory(TransactionCategory.REFUND);
-        transactionResponseDTO.setAmount(transactionRequestDTO.getAmount());
-        transactionResponseDTO.setLastBalance(existingUser.getLastBalance());
-        transactionResponseDTO.setCreatedAt(refund.getCreatedAt());
-        transactionResponseDTO.setUpdatedAt(refund.getUpdatedAt());
+        int succeeded = (int) results.stream().filter(result -> result.getStatusCode() == HttpStatus.OK.value()).count();
+        BatchTransactionResponseDTO batchTransactionResponseDTO = new BatchTransactionResponseDTO();
+        batchTransactionResponseDTO.setSucceeded(succeeded);
+        batchTransactionResponseDTO.setFailed(results.size() - succeeded);
+        batchTransactionResponseDTO.setResults(results);
 
-        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Refund successfully processed", transactionResponseDTO);
+        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Batch successfully processed", batchTransactionResponseDTO);
     }
 
     @Override
-    public BaseResponseDTO<TransactionResponseDTO> billPayment(Long userId, TransactionRequestDTO transactionRequestDTO) {
-        log.info("Processing bill payment to user with ID: {}", userId);
+    public BaseResponseDTO<TransactionHistoryResponseDTO> getTransactionHistory(Long userId, TransactionHistoryRequestDTO transactionHistoryRequestDTO) {
+        log.debug("Processing transaction history of user with ID: {}", userId);
 
-        User existingUser = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        return walletMetrics.record(Operation.HISTORY, () -> findHistory(userId, transactionHistoryRequestDTO));
+    }
 
-        if (existingUser.getLastBalance().compareTo(transactionRequestDTO.getAmount()) < 0) {
-            throw new RuntimeException("Insufficient balance");
+    private BaseResponseDTO<TransactionHistoryResponseDTO> findHistory(Long userId, TransactionHistoryRequestDTO transactionHistoryRequestDTO) {
+        HistoryCursor after = transactionHistoryRequestDTO.getCursor() == null
+                ? null : HistoryCursor.decode(transactionHistoryRequestDTO.getCursor());
+        int size = transactionHistoryRequestDTO.getSize();
+        LocalDateTime afterCreatedAt = after == null ? null : after.getCreatedAt();
+        Long afterId = after == null ? null : after.getId();
+
+        // Fetch one extra row to know whether there is a next page without counting
+        List<TransactionResponseDTO> transactions = transactionRepository.findHistory(userId,
+                transactionHistoryRequestDTO.getCategory(), transactionHistoryRequestDTO.getFrom(), transactionHistoryRequestDTO.getTo(),
+                afterCreatedAt, afterId, size + 1);
+        // Archived months are older than every month still in the ledger, so they continue a short page
+        boolean userChecked = false;
+        if (transactions.size() <= size && ledgerArchiveRepository.isEnabled()) {
+            // The archive keeps the rows of deleted wallets, so it is only read for wallets that still exist
+            if (!userRepository.existsById(userId)) {
+                throw new UserNotFoundException();
+            }
+            userChecked = true;
+            List<TransactionResponseDTO> page = new ArrayList<>(transactions);
+            ledgerArchiveRepository.findHistory(userId, transactionHistoryRequestDTO.getCategory(), transactionHistoryRequestDTO.getFrom(),
+                            transactionHistoryRequestDTO.getTo(), afterCreatedAt, afterId, size + 1 - transactions.size())
+                    .forEach(transaction -> page.add(WalletLedgerWriter.toResponse(transaction)));
+            transactions = page;
+        }
+        if (!userChecked && after == null && transactions.isEmpty() && !userRepository.existsById(userId)) {
+            throw new UserNotFoundException();
         }
 
-        Transaction billPayment = new Transaction();
-        billPayment.setUser(existingUser);
-        billPayment.setAmount(transactionRequestDTO.getAmount());
-        billPayment.setTransactionCategory(TransactionCategory.BILLPAYMENT);
+        boolean hasNext = transactions.size() > size;
+        if (hasNext) {
+            transactions = transactions.subList(0, size);
+        }
 
-        // Update balance
-        BigDecimal newBalance = existingUser.getLastBalance().subtract(transactionRequestDTO.getAmount());
-        existingUser.setLastBalance(newBalance);
+        // Build the response
+        TransactionHistoryResponseDTO transactionHistoryResponseDTO = new TransactionHistoryResponseDTO();
+        transactionHistoryResponseDTO.setTransactions(transactions);
+        transactionHistoryResponseDTO.setSize(size);
+        transactionHistoryResponseDTO.setHasNext(hasNext);
+        if (hasNext) {
+            TransactionResponseDTO last = transactions.getLast();
+            transactionHistoryResponseDTO.setNextCursor(new HistoryCursor(last.getCreatedAt(), last.getId()).encode());
+        }
 
-        // Save to database
-        transactionRepository.save(billPayment);
-        userRepository.save(existingUser);
+        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Transaction history successfully retrieved", transactionHistoryResponseDTO);
+    }
 
-        // Build the response
-        TransactionResponseDTO transactionResponseDTO = new TransactionResponseDTO();
-        transactionResponseDTO.setId(billPayment.getId());
-        transactionResponseDTO.setTransactionCategory(TransactionCategory.BILLPAYMENT);
-        transactionResponseDTO.setAmount(transactionRequestDTO.getAmount());
-        transactionResponseDTO.setLastBalance(existingUser.getLastBalance());
-        transactionResponseDTO.setCreatedAt(billPayment.getCreatedAt());
-        transactionResponseDTO.setUpdatedAt(billPayment.getUpdatedAt());
+    private TransactionResponseDTO write(WalletMutation mutation) {
+        return conflictRetry.execute(Operation.of(mutation.getTransactionCategory()), () -> walletGroupCommitter.isEnabled()
+                ? walletGroupCommitter.submit(mutation)
+                : walletMutationExecutor.execute(mutation));
+    }
 
-        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Bill payment successfully processed", transactionResponseDTO);
+    private WalletMutation toMutation(Long userId, TransactionCategory category, TransactionRequestDTO transactionRequestDTO) {
+        return new WalletMutation(userId, currencyResolver.resolve(transactionRequestDTO.getCurrency()), category,
+                Money.of(transactionRequestDTO.getAmount()), transactionRequestDTO.getIdempotencyKey());
     }
 }
@@ -0,0 +1,247 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionItemDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionResultDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Outcome;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Phase;
+import dev.dwidi.walletservice.repository.LedgerHead;
+import dev.dwidi.walletservice.repository.TransactionJdbcRepository;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
+import dev.dwidi.walletservice.repository.UserRepository;
+import dev.dwidi.walletservice.service.user.UserCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Applies a batch of wallet mutations in one transaction.
+ * <p>
+ * The balances involved are locked once, in key order, and every item is checked against the
+ * running balance of its wallet in its currency in memory. Accepted items are then written with one JDBC batch
+ * insert into the ledger and one set-based balance update, whatever the batch size. Items that
+ * cannot be applied are reported individually and do not affect the rest of the batch. The
+ * shards of sharded wallets are swept into their balance rows when the rows are locked.
+ * Each of the four steps is timed as a phase of the {@code batch} operation, or of the operation
+ * the caller names when it batches mutations itself.
+ * <p>
+ * In append mode the balances' ledgers are locked instead of their rows, every accepted item
+ * gets the next number of its balance's ledger sequence, and the balance update is replaced by
+ * the snapshots that fall due.
+ */
+@Component
+@RequiredArgsConstructor
+public class WalletBatchWriter {
+
+    private final UserRepository userRepository;
+    private final UserJdbcRepository userJdbcRepository;
+    private final TransactionJdbcRepository transactionJdbcRepository;
+    private final UserCache userCache;
+    private final WalletMetrics walletMetrics;
+    private final AppendOnlyLedger appendOnlyLedger;
+    private final ShardedBalances shardedBalances;
+
+    @Transactional
+    public List<BatchTransactionResultDTO> apply(List<BatchTransactionItemDTO> items) {
+        return apply(items, Operation.BATCH);
+    }
+
+    @Transactional
+    public List<BatchTransactionResultDTO> apply(List<BatchTransactionItemDTO> items, Operation operation) {
+        TreeSet<BalanceKey> keys = new TreeSet<>();
+        Set<BalanceKey> creditKeys = new HashSet<>();
+        for (BatchTransactionItemDTO item : items) {
+            BalanceKey key = new BalanceKey(item.getUserId(), item.getCurrency());
+            keys.add(key);
+            // Credits are never turned down for the balance, so only their balances may need a new row
+            if (!item.getTransactionCategory().isDebit() && !item.getTransactionCategory().isTransfer()) {
+                creditKeys.add(key);
+            }
+        }
+        long lookupStart = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        boolean append = appendOnlyLedger.isEnabled();
+        Map<BalanceKey, LedgerHead> heads = append ? new HashMap<>(appendOnlyLedger.lock(keys)) : null;
+        Map<BalanceKey, Money> balances = append ? new HashMap<>() : shardedBalances.lockBalances(keys, creditKeys, now);
+        if (append) {
+            heads.forEach((balanceKey, head) -> balances.put(balanceKey, head.getBalance()));
+        }
+        Map<String, Transaction> recorded = findRecorded(items);
+        walletMetrics.recordPhase(operation, Phase.LOOKUP, System.nanoTime() - lookupStart);
+
+        long balanceStart = System.nanoTime();
+        BatchTransactionResultDTO[] results = new BatchTransactionResultDTO[items.size()];
+        Map<Integer, Transaction> accepted = new LinkedHashMap<>();
+        Map<Integer, Integer> repeatedKeys = new HashMap<>();
+        Map<String, Integer> firstIndexByKey = new HashMap<>();
+        WalletMutation[] mutations = new WalletMutation[items.size()];
+        Map<BalanceKey, Money> deltas = new HashMap<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            BatchTransactionItemDTO item = items.get(i);
+            WalletMutation mutation = new WalletMutation(item.getUserId(), item.getCurrency(), item.getTransactionCategory(),
+                    Money.of(item.getAmount()), item.getIdempotencyKey());
+            mutations[i] = mutation;
+            BalanceKey balanceKey = mutation.getBalanceKey();
+            String key = recordKey(mutation.getUserId(), mutation.getIdempotencyKey());
+
+            // A transfer needs both of its rows, a lone half would create or destroy money
+            if (mutation.getTransactionCategory().isTransfer()) {
+                results[i] = failure(i, mutation, HttpStatus.BAD_REQUEST, "Transfers are not supported in batches");
+                continue;
+            }
+            Money balance = balances.get(balanceKey);
+            if (balance == null) {
+                results[i] = failure(i, mutation, HttpStatus.NOT_FOUND, "User not found");
+                walletMetrics.rejected(operation, Outcome.NOT_FOUND);
+                continue;
+            }
+            if (key != null && recorded.containsKey(key)) {
+                results[i] = replay(i, mutation, recorded.get(key));
+                continue;
+            }
+            if (key != null && firstIndexByKey.containsKey(key)) {
+                WalletMutation first = mutations[firstIndexByKey.get(key)];
+                if (isSameRequest(mutation, first.getTransactionCategory(), first.getCurrency(), first.getAmount())) {
+                    repeatedKeys.put(i, firstIndexByKey.get(key));
+                } else {
+                    results[i] = conflict(i, mutation);
+                }
+                continue;
+            }
+            if (key != null) {
+                firstIndexByKey.put(key, i);
+            }
+
+            Money newBalance = balance.plus(mutation.getBalanceDelta());
+            if (newBalance.signum() < 0) {
+                results[i] = failure(i, mutation, HttpStatus.BAD_REQUEST, "Insufficient balance");
+                walletMetrics.rejected(operation, Outcome.INSUFFICIENT_BALANCE);
+                continue;
+            }
+
+            balances.put(balanceKey, newBalance);
+            deltas.merge(balanceKey, mutation.getBalanceDelta(), Money::plus);
+            Long ledgerSequence = null;
+            if (append) {
+                LedgerHead head = heads.get(balanceKey).append(mutation.getBalanceDelta());
+                heads.put(balanceKey, head);
+                ledgerSequence = head.getSequence();
+            }
+            accepted.put(i, toTransaction(mutation, newBalance, ledgerSequence, now));
+        }
+        walletMetrics.recordPhase(operation, Phase.BALANCE, System.nanoTime() - balanceStart);
+
+        if (!accepted.isEmpty()) {
+            walletMetrics.recordPhase(operation, Phase.LEDGER_INSERT,
+                    () -> transactionJdbcRepository.insertAll(new ArrayList<>(accepted.values())));
+            if (append) {
+                heads.keySet().retainAll(deltas.keySet());
+                walletMetrics.recordPhase(operation, Phase.WALLET_UPDATE, () -> appendOnlyLedger.appended(heads, now));
+            } else {
+                walletMetrics.recordPhase(operation, Phase.WALLET_UPDATE, () -> userJdbcRepository.applyBalanceDeltas(deltas, now));
+            }
+            userCache.evictAllAfterCommit(deltas.keySet().stream().map(BalanceKey::userId).collect(Collectors.toSet()));
+            accepted.forEach((i, transaction) -> results[i] = success(i, transaction));
+        }
+
+        // The same idempotency key used twice in one batch for the same transaction gets the result of its first use
+        repeatedKeys.forEach((i, first) -> {
+            BatchTransactionResultDTO firstResult = results[first];
+            results[i] = new BatchTransactionResultDTO(i, firstResult.getUserId(), firstResult.getStatusCode(),
+                    firstResult.getMessage(), firstResult.getTransaction());
+        });
+
+        return List.of(results);
+    }
+
+    private Map<String, Transaction> findRecorded(List<BatchTransactionItemDTO> items) {
+        List<Long> userIds = new ArrayList<>();
+        List<String> idempotencyKeys = new ArrayList<>();
+        for (BatchTransactionItemDTO item : items) {
+            if (item.getIdempotencyKey() != null) {
+                userIds.add(item.getUserId());
+                idempotencyKeys.add(item.getIdempotencyKey());
+            }
+        }
+        if (idempotencyKeys.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, Transaction> recorded = new HashMap<>();
+        for (Transaction transaction : transactionJdbcRepository.findByIdempotencyKeys(userIds, idempotencyKeys)) {
+            recorded.put(recordKey(transaction.getUser().getId(), transaction.getIdempotencyKey()), transaction);
+        }
+        return recorded;
+    }
+
+    private Transaction toTransaction(WalletMutation mutation, Money lastBalance, Long ledgerSequence, LocalDateTime now) {
+        Transaction transaction = new Transaction();
+        transaction.setUser(userRepository.getReferenceById(mutation.getUserId()));
+        transaction.setCurrency(mutation.getCurrency());
+        transaction.setTransactionCategory(mutation.getTransactionCategory());
+        transaction.setAmount(mutation.getAmount());
+        transaction.setLastBalance(lastBalance);
+        transaction.setIdempotencyKey(mutation.getIdempotencyKey());
+        transaction.setLedgerSequence(ledgerSequence);
+        transaction.setCreatedAt(now);
+        transaction.setUpdatedAt(now);
+        return transaction;
+    }
+
+    private static BatchTransactionResultDTO success(int index, Transaction transaction) {
+        return new BatchTransactionResultDTO(index, transaction.getUser().getId(), HttpStatus.OK.value(),
+                successMessage(transaction.getTransactionCategory()), WalletLedgerWriter.toResponse(transaction));
+    }
+
+    private static BatchTransactionResultDTO replay(int index, WalletMutation mutation, Transaction recorded) {
+        if (!isSameRequest(mutation, recorded.getTransactionCategory(), recorded.getCurrency(), recorded.getAmount())) {
+            return conflict(index, mutation);
+        }
+        return success(index, recorded);
+    }
+
+    private static boolean isSameRequest(WalletMutation mutation, TransactionCategory category, String currency, Money amount) {
+        return category == mutation.getTransactionCategory()
+                && currency.equals(mutation.getCurrency())
+                && amount.equals(mutation.getAmount());
+    }
+
+    private static BatchTransactionResultDTO conflict(int index, WalletMutation mutation) {
+        return failure(index, mutation, HttpStatus.CONFLICT, "Idempotency key already used for a different transaction");
+    }
+
+    private static BatchTransactionResultDTO failure(int index, WalletMutation mutation, HttpStatus status, String message) {
+        return new BatchTransactionResultDTO(index, mutation.getUserId(), status.value(), message, null);
+    }
+
+    private static String recordKey(Long userId, String idempotencyKey) {
+        return idempotencyKey == null ? null : userId + ":" + idempotencyKey;
+    }
+
+    private static String successMessage(TransactionCategory category) {
+        return switch (category) {
+            case TOPUP -> "Top up successfully";
+            case REFUND -> "Refund successfully processed";
+            case BILLPAYMENT -> "Bill payment successfully processed";
+            case TRANSFER_OUT, TRANSFER_IN -> "Transfer successfully processed";
+        };
+    }
+}
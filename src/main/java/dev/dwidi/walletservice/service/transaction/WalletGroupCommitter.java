@@ -0,0 +1,247 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionItemDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionResultDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.exception.InsufficientBalanceException;
+import dev.dwidi.walletservice.exception.UserNotFoundException;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Phase;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit of single wallet mutations ({@code wallet.group-commit.enabled}).
+ * <p>
+ * Callers put their mutation on a bounded queue and wait. One committer thread takes whatever
+ * is queued, waits up to {@code wallet.group-commit.max-wait} for more until
+ * {@code wallet.group-commit.max-batch-size} mutations are collected, and writes them with
+ * {@link WalletBatchWriter} in a single transaction: one lock statement, one batched ledger
+ * insert and one balance update. Each caller gets its own result only after that transaction
+ * commits, so many concurrent requests share one commit and its fsync. When the queue is full
+ * callers block until there is room.
+ * <p>
+ * If the whole batch fails, its mutations are retried one transaction each so that a single bad
+ * mutation cannot fail the others. The committer stops after the web server, once everything
+ * queued has been written. If its thread is interrupted it stops at once, failing the mutations
+ * it has not committed.
+ */
+@Component
+@Slf4j
+public class WalletGroupCommitter implements SmartLifecycle {
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+    private static final long STOP_TIMEOUT_MILLIS = 10_000;
+
+    private final WalletBatchWriter walletBatchWriter;
+    private final WalletLedgerWriter walletLedgerWriter;
+    private final WalletMetrics walletMetrics;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<PendingMutation> queue;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public WalletGroupCommitter(WalletBatchWriter walletBatchWriter,
+                                WalletLedgerWriter walletLedgerWriter,
+                                WalletMetrics walletMetrics,
+                                @Value("${wallet.group-commit.enabled:false}") boolean enabled,
+                                @Value("${wallet.group-commit.max-batch-size:256}") int maxBatchSize,
+                                @Value("${wallet.group-commit.max-wait:2ms}") Duration maxWait,
+                                @Value("${wallet.group-commit.queue-capacity:10000}") int queueCapacity) {
+        this.walletBatchWriter = walletBatchWriter;
+        this.walletLedgerWriter = walletLedgerWriter;
+        this.walletMetrics = walletMetrics;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public TransactionResponseDTO submit(WalletMutation mutation) {
+        if (!running) {
+            throw new RuntimeException("Wallet service is shutting down");
+        }
+
+        PendingMutation pendingMutation = new PendingMutation(mutation);
+        try {
+            queue.put(pendingMutation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to queue the transaction", e);
+        }
+
+        try {
+            return pendingMutation.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        thread = Thread.ofPlatform().daemon().name("wallet-group-committer").start(this::commitLoop);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Started before and stopped after the web server, so requests still in flight during a
+     * graceful shutdown are committed.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void commitLoop() {
+        List<PendingMutation> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMutation first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+
+                // The wait is counted from the first mutation's arrival, so none waits longer than max-wait
+                long deadline = first.enqueuedAt + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingMutation next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                // Nothing is committed after an interrupt: fail what was taken off the queue and stop taking more
+                log.warn("Wallet group committer interrupted, rejecting further transactions");
+                RuntimeException interrupted = new RuntimeException("Wallet group committer interrupted", e);
+                batch.forEach(pending -> pending.result.completeExceptionally(interrupted));
+                running = false;
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Wallet group commit failed", e);
+                batch.forEach(pending -> pending.result.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Anything queued after the last check can no longer be committed
+        List<PendingMutation> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        leftover.forEach(pending -> pending.result.completeExceptionally(new RuntimeException("Wallet service is shutting down")));
+    }
+
+    private void commit(List<PendingMutation> batch) {
+        long dequeuedAt = System.nanoTime();
+        List<BatchTransactionItemDTO> items = new ArrayList<>(batch.size());
+        for (PendingMutation pending : batch) {
+            walletMetrics.recordPhase(Operation.of(pending.mutation.getTransactionCategory()), Phase.QUEUE,
+                    dequeuedAt - pending.enqueuedAt);
+            items.add(toItem(pending.mutation));
+        }
+        walletMetrics.groupCommitted(batch.size());
+
+        List<BatchTransactionResultDTO> results;
+        try {
+            results = walletMetrics.record(Operation.GROUP_COMMIT, () -> walletBatchWriter.apply(items, Operation.GROUP_COMMIT));
+        } catch (RuntimeException e) {
+            log.warn("Group commit of {} transactions failed, applying them individually", batch.size(), e);
+            batch.forEach(this::applyOne);
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            BatchTransactionResultDTO result = results.get(i);
+            if (result.getStatusCode() == HttpStatus.OK.value()) {
+                batch.get(i).result.complete(result.getTransaction());
+            } else {
+                batch.get(i).result.completeExceptionally(toException(result));
+            }
+        }
+    }
+
+    private void applyOne(PendingMutation pendingMutation) {
+        try {
+            pendingMutation.result.complete(walletLedgerWriter.apply(pendingMutation.mutation));
+        } catch (RuntimeException e) {
+            pendingMutation.result.completeExceptionally(e);
+        }
+    }
+
+    // Only single credits and debits are grouped, so a 400 can only be a debit the balance does not cover
+    private static RuntimeException toException(BatchTransactionResultDTO result) {
+        return switch (HttpStatus.valueOf(result.getStatusCode())) {
+            case NOT_FOUND -> new UserNotFoundException();
+            case BAD_REQUEST -> new InsufficientBalanceException();
+            default -> new RuntimeException(result.getMessage());
+        };
+    }
+
+    private static BatchTransactionItemDTO toItem(WalletMutation mutation) {
+        BatchTransactionItemDTO item = new BatchTransactionItemDTO();
+        item.setUserId(mutation.getUserId());
+        item.setCurrency(mutation.getCurrency());
+        item.setTransactionCategory(mutation.getTransactionCategory());
+        item.setAmount(mutation.getAmount().toBigDecimal());
+        item.setIdempotencyKey(mutation.getIdempotencyKey());
+        return item;
+    }
+
+    private static final class PendingMutation {
+        private final WalletMutation mutation;
+        private final CompletableFuture<TransactionResponseDTO> result = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+
+        private PendingMutation(WalletMutation mutation) {
+            this.mutation = mutation;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.exception.InsufficientBalanceException;
+import dev.dwidi.walletservice.exception.UserNotFoundException;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Phase;
+import dev.dwidi.walletservice.repository.LedgerHead;
+import dev.dwidi.walletservice.repository.TransactionJdbcRepository;
+import dev.dwidi.walletservice.repository.TransactionRepository;
+import dev.dwidi.walletservice.repository.UserRepository;
+import dev.dwidi.walletservice.repository.WalletBalanceRepository;
+import dev.dwidi.walletservice.service.user.UserCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Writes wallet mutations to the database. Every call is one transaction made of a
+ * single conditional balance UPDATE of the mutation's currency followed by the ledger inserts.
+ * A credit in a currency the wallet does not hold yet creates the balance in the same statement. The new balance is
+ * computed by the UPDATE itself, so the only phases timed here are the wallet update, the
+ * ledger insert and, when the update matches no row, the lookup that tells why.
+ * <p>
+ * In append mode the UPDATE is replaced by a lock on the balance's ledger and a read of its
+ * head (see {@link AppendOnlyLedger}); the balance check is then done here.
+ * <p>
+ * A credit to a sharded wallet updates one of its shards instead, and a debit first sweeps the
+ * shards into the locked balance row (see {@link ShardedBalances}). Their responses carry the
+ * balance as seen by the statement and the cached user is evicted rather than updated.
+ */
+@Component
+@RequiredArgsConstructor
+public class WalletLedgerWriter {
+
+    private final UserRepository userRepository;
+    private final WalletBalanceRepository walletBalanceRepository;
+    private final TransactionRepository transactionRepository;
+    private final TransactionJdbcRepository transactionJdbcRepository;
+    private final UserCache userCache;
+    private final WalletMetrics walletMetrics;
+    private final AppendOnlyLedger appendOnlyLedger;
+    private final ShardedBalances shardedBalances;
+
+    @Transactional
+    public TransactionResponseDTO apply(WalletMutation mutation) {
+        return apply(mutation, ShardedBalances.BALANCE_ROW);
+    }
+
+    /**
+     * Applies a mutation, crediting the given shard when the wallet is sharded. Debits, and
+     * credits with {@link ShardedBalances#BALANCE_ROW}, ignore the shard.
+     */
+    @Transactional
+    public TransactionResponseDTO apply(WalletMutation mutation, int shard) {
+        Operation operation = Operation.of(mutation.getTransactionCategory());
+        if (appendOnlyLedger.isEnabled()) {
+            LocalDateTime now = LocalDateTime.now();
+            LedgerHead head = lockLedger(operation, mutation.getBalanceKey()).append(mutation.getBalanceDelta());
+            if (head.getBalance().signum() < 0) {
+                throw new InsufficientBalanceException();
+            }
+            Transaction transaction = insert(operation, toTransaction(mutation, head.getBalance(), head.getSequence()));
+            appended(operation, mutation.getBalanceKey(), head, now);
+            return toResponse(transaction);
+        }
+
+        Money newBalance = applyBalanceChange(operation, mutation.getBalanceKey(), shard, mutation.getBalanceDelta());
+        Transaction transaction = insert(operation, toTransaction(mutation, newBalance, null));
+
+        return toResponse(transaction);
+    }
+
+    /**
+     * Applies several credits to the same balance, or to one shard of it, with one balance
+     * UPDATE for their total. Results are returned in the order of {@code credits}, each carrying
+     * the running balance after that credit.
+     */
+    @Transactional
+    public List<TransactionResponseDTO> applyCredits(BalanceKey key, int shard, List<WalletMutation> credits) {
+        List<Transaction> transactions = new ArrayList<>(credits.size());
+        if (appendOnlyLedger.isEnabled()) {
+            LocalDateTime now = LocalDateTime.now();
+            LedgerHead head = lockLedger(Operation.CREDITS, key);
+            for (WalletMutation credit : credits) {
+                head = head.append(credit.getBalanceDelta());
+                transactions.add(toTransaction(credit, head.getBalance(), head.getSequence()));
+            }
+            insertAll(Operation.CREDITS, transactions);
+            appended(Operation.CREDITS, key, head, now);
+            return transactions.stream().map(WalletLedgerWriter::toResponse).toList();
+        }
+
+        Money total = Money.ZERO;
+        for (WalletMutation credit : credits) {
+            total = total.plus(credit.getBalanceDelta());
+        }
+
+        Money runningBalance = applyBalanceChange(Operation.CREDITS, key, shard, total).minus(total);
+        for (WalletMutation credit : credits) {
+            runningBalance = runningBalance.plus(credit.getBalanceDelta());
+            transactions.add(toTransaction(credit, runningBalance, null));
+        }
+        insertAll(Operation.CREDITS, transactions);
+
+        return transactions.stream().map(WalletLedgerWriter::toResponse).toList();
+    }
+
+    private Money applyBalanceChange(Operation operation, BalanceKey key, int shard, Money delta) {
+        LocalDateTime now = LocalDateTime.now();
+        if (shardedBalances.isSharded(key.userId())) {
+            return applyShardedBalanceChange(operation, key, shard, delta, now);
+        }
+
+        Money newBalance = walletMetrics.recordPhase(operation, Phase.WALLET_UPDATE, () -> delta.signum() >= 0
+                        ? walletBalanceRepository.credit(key.userId(), key.currency(), delta.toBigDecimal(), now)
+                        : walletBalanceRepository.debit(key.userId(), key.currency(), delta.toBigDecimal(), now))
+                .map(Money::of)
+                .orElseThrow(() -> walletMetrics.recordPhase(operation, Phase.LOOKUP, () -> userRepository.existsById(key.userId()))
+                        ? new InsufficientBalanceException()
+                        : new UserNotFoundException());
+
+        // Called under the row lock, so the cache can tell whether a transfer or batch committed after this change
+        userCache.updateBalanceAfterCommit(key, newBalance.toBigDecimal(), now);
+        return newBalance;
+    }
+
+    private Money applyShardedBalanceChange(Operation operation, BalanceKey key, int shard, Money delta, LocalDateTime now) {
+        Optional<Money> newBalance = walletMetrics.recordPhase(operation, Phase.WALLET_UPDATE, () -> {
+            if (delta.signum() >= 0) {
+                return shardedBalances.credit(key, shard == ShardedBalances.BALANCE_ROW ? shardedBalances.pickShard() : shard, delta, now);
+            }
+            shardedBalances.lockBalances(List.of(key), List.of(), now);
+            return walletBalanceRepository.debit(key.userId(), key.currency(), delta.toBigDecimal(), now).map(Money::of);
+        });
+        if (newBalance.isEmpty()) {
+            throw walletMetrics.recordPhase(operation, Phase.LOOKUP, () -> userRepository.existsById(key.userId()))
+                    ? new InsufficientBalanceException()
+                    : new UserNotFoundException();
+        }
+
+        // Credits to other shards may commit in between, so the balance seen here is not cached
+        userCache.evictAfterCommit(key.userId());
+        return newBalance.get();
+    }
+
+    private LedgerHead lockLedger(Operation operation, BalanceKey key) {
+        return walletMetrics.recordPhase(operation, Phase.LOOKUP, () -> appendOnlyLedger.lock(key));
+    }
+
+    private void appended(Operation operation, BalanceKey key, LedgerHead head, LocalDateTime now) {
+        walletMetrics.recordPhase(operation, Phase.WALLET_UPDATE, () -> appendOnlyLedger.appended(Map.of(key, head), now));
+        userCache.updateBalanceAfterCommit(key, head.getBalance().toBigDecimal(), now);
+    }
+
+    private Transaction insert(Operation operation, Transaction transaction) {
+        return walletMetrics.recordPhase(operation, Phase.LEDGER_INSERT, () -> {
+            if (transaction.getIdempotencyKey() != null) {
+                // The key is written by the ledger insert itself, a keyed request costs no extra round trip
+                LocalDateTime now = LocalDateTime.now();
+                transaction.setCreatedAt(now);
+                transaction.setUpdatedAt(now);
+                transactionJdbcRepository.insertWithIdempotencyKey(transaction);
+                return transaction;
+            }
+            Transaction saved = transactionRepository.save(transaction);
+            // Flush so the insert is timed here rather than as part of the commit
+            transactionRepository.flush();
+            return saved;
+        });
+    }
+
+    private void insertAll(Operation operation, List<Transaction> transactions) {
+        walletMetrics.recordPhase(operation, Phase.LEDGER_INSERT, () -> {
+            transactionRepository.saveAll(transactions);
+            transactionRepository.flush();
+            transactionJdbcRepository.insertIdempotencyKeys(transactions);
+        });
+    }
+
+    private Transaction toTransaction(WalletMutation mutation, Money lastBalance, Long ledgerSequence) {
+        Transaction transaction = new Transaction();
+        transaction.setUser(userRepository.getReferenceById(mutation.getUserId()));
+        transaction.setCurrency(mutation.getCurrency());
+        transaction.setAmount(mutation.getAmount());
+        transaction.setTransactionCategory(mutation.getTransactionCategory());
+        transaction.setLastBalance(lastBalance);
+        transaction.setIdempotencyKey(mutation.getIdempotencyKey());
+        transaction.setLedgerSequence(ledgerSequence);
+        return transaction;
+    }
+
+    static TransactionResponseDTO toResponse(Transaction transaction) {
+        TransactionResponseDTO transactionResponseDTO = new TransactionResponseDTO();
+        transactionResponseDTO.setId(transaction.getId());
+        transactionResponseDTO.setTransactionCategory(transaction.getTransactionCategory());
+        transactionResponseDTO.setCurrency(transaction.getCurrency());
+        transactionResponseDTO.setAmount(transaction.getAmount().toBigDecimal());
+        transactionResponseDTO.setLastBalance(transaction.getLastBalance().toBigDecimal());
+        transactionResponseDTO.setCreatedAt(transaction.getCreatedAt());
+        transactionResponseDTO.setUpdatedAt(transaction.getUpdatedAt());
+        transactionResponseDTO.setCounterpartyUserId(transaction.getCounterpartyUserId());
+        return transactionResponseDTO;
+    }
+}
@@ -0,0 +1,43 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class WalletMutation {
+    private final Long userId;
+    // ISO 4217 code of the balance the mutation applies to
+    private final String currency;
+    private final TransactionCategory transactionCategory;
+    private final Money amount;
+    private final String idempotencyKey;
+    // Receiving wallet of a transfer
+    private final Long counterpartyUserId;
+
+    public WalletMutation(Long userId, String currency, TransactionCategory transactionCategory, Money amount) {
+        this(userId, currency, transactionCategory, amount, null);
+    }
+
+    public WalletMutation(Long userId, String currency, TransactionCategory transactionCategory, Money amount, String idempotencyKey) {
+        this(userId, currency, transactionCategory, amount, idempotencyKey, null);
+    }
+
+    public BalanceKey getBalanceKey() {
+        return new BalanceKey(userId, currency);
+    }
+
+    public boolean isCredit() {
+        return !transactionCategory.isDebit();
+    }
+
+    /**
+     * Amount as it is applied to the wallet balance, negative for debits.
+     */
+    public Money getBalanceDelta() {
+        return isCredit() ? amount : amount.negate();
+    }
+}
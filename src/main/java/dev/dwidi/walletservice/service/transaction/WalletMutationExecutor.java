@@ -0,0 +1,184 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Phase;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes wallet mutations per balance, that is per user and currency, on a fixed set of
+ * lock stripes.
+ * <p>
+ * A mutation for a balance nobody else is writing to runs directly on the caller's thread.
+ * When the balance is busy the mutation is queued, and whichever caller holds the stripe
+ * drains the queue, folding consecutive credits into one balance update. Hot balances therefore
+ * issue one UPDATE per batch instead of queueing on the row lock, while balances on different
+ * stripes never wait for each other. Credits to a sharded wallet (see {@link ShardedBalances})
+ * are spread over its shards at random, each shard being serialized and coalesced like a
+ * balance of its own, so a hot wallet has as many writers in flight as it has shards.
+ * {@link ReentrantLock} is used rather than {@code synchronized} so waiting virtual threads do
+ * not pin their carrier. Time spent queued is recorded as the {@code queue} phase of the
+ * mutation's operation.
+ */
+@Component
+@Slf4j
+public class WalletMutationExecutor {
+
+    private final WalletLedgerWriter walletLedgerWriter;
+    private final WalletMetrics walletMetrics;
+    private final ShardedBalances shardedBalances;
+    private final ReentrantLock[] stripes;
+    private final int maxBatchSize;
+    private final ConcurrentHashMap<Lane, Queue<PendingMutation>> pending = new ConcurrentHashMap<>();
+
+    public WalletMutationExecutor(WalletLedgerWriter walletLedgerWriter,
+                                  WalletMetrics walletMetrics,
+                                  ShardedBalances shardedBalances,
+                                  @Value("${wallet.mutation.stripes:1024}") int stripeCount,
+                                  @Value("${wallet.mutation.max-batch-size:100}") int maxBatchSize) {
+        this.walletLedgerWriter = walletLedgerWriter;
+        this.walletMetrics = walletMetrics;
+        this.shardedBalances = shardedBalances;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public TransactionResponseDTO execute(WalletMutation mutation) {
+        Lane lane = laneFor(mutation);
+        ReentrantLock stripe = stripeFor(lane);
+
+        // Fast path: nothing queued for this balance and the stripe is free
+        if (stripe.tryLock()) {
+            try {
+                if (!pending.containsKey(lane)) {
+                    return walletLedgerWriter.apply(mutation, lane.shard());
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+
+        PendingMutation pendingMutation = new PendingMutation(mutation);
+        Queue<PendingMutation> queue = pending.computeIfAbsent(lane, k -> new ConcurrentLinkedQueue<>());
+        queue.offer(pendingMutation);
+
+        stripe.lock();
+        try {
+            // Another caller may have already applied this mutation as part of its batch
+            if (!pendingMutation.result.isDone()) {
+                drain(lane, queue);
+            }
+        } finally {
+            stripe.unlock();
+        }
+
+        try {
+            return pendingMutation.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void drain(Lane lane, Queue<PendingMutation> queue) {
+        PendingMutation next;
+        while ((next = queue.poll()) != null) {
+            dequeued(next);
+            if (!next.mutation.isCredit()) {
+                applyOne(lane, next);
+                continue;
+            }
+
+            List<PendingMutation> batch = new ArrayList<>();
+            batch.add(next);
+            while (batch.size() < maxBatchSize && queue.peek() != null && queue.peek().mutation.isCredit()) {
+                PendingMutation credit = queue.poll();
+                dequeued(credit);
+                batch.add(credit);
+            }
+            applyCredits(lane, batch);
+        }
+        pending.remove(lane, queue);
+    }
+
+    private void applyCredits(Lane lane, List<PendingMutation> batch) {
+        if (batch.size() == 1) {
+            applyOne(lane, batch.getFirst());
+            return;
+        }
+
+        List<WalletMutation> credits = batch.stream().map(p -> p.mutation).toList();
+        try {
+            List<TransactionResponseDTO> responses = walletLedgerWriter.applyCredits(lane.balance(), lane.shard(), credits);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(responses.get(i));
+            }
+        } catch (RuntimeException e) {
+            // Fall back to one transaction per mutation so a single failure does not fail the batch
+            log.debug("Coalesced credit batch of {} for {} failed, applying individually", batch.size(), lane, e);
+            batch.forEach(pendingMutation -> applyOne(lane, pendingMutation));
+        }
+    }
+
+    private void applyOne(Lane lane, PendingMutation pendingMutation) {
+        try {
+            pendingMutation.result.complete(walletLedgerWriter.apply(pendingMutation.mutation, lane.shard()));
+        } catch (RuntimeException e) {
+            pendingMutation.result.completeExceptionally(e);
+        }
+    }
+
+    private void dequeued(PendingMutation pendingMutation) {
+        walletMetrics.recordPhase(Operation.of(pendingMutation.mutation.getTransactionCategory()), Phase.QUEUE,
+                System.nanoTime() - pendingMutation.enqueuedAt);
+    }
+
+    int queuedMutations(BalanceKey key) {
+        Queue<PendingMutation> queue = pending.get(new Lane(key, ShardedBalances.BALANCE_ROW));
+        return queue == null ? 0 : queue.size();
+    }
+
+    private Lane laneFor(WalletMutation mutation) {
+        BalanceKey key = mutation.getBalanceKey();
+        return mutation.isCredit() && shardedBalances.isSharded(key.userId())
+                ? new Lane(key, shardedBalances.pickShard())
+                : new Lane(key, ShardedBalances.BALANCE_ROW);
+    }
+
+    private ReentrantLock stripeFor(Lane lane) {
+        // The balance row keeps the balance's own stripe, its shards take the stripes after it
+        return stripes[Math.floorMod(lane.balance().hashCode() + lane.shard() + 1, stripes.length)];
+    }
+
+    // The row a queue of mutations writes to: the balance row, or one shard of a sharded balance
+    private record Lane(BalanceKey balance, int shard) {
+    }
+
+    private static final class PendingMutation {
+        private final WalletMutation mutation;
+        private final CompletableFuture<TransactionResponseDTO> result = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+
+        private PendingMutation(WalletMutation mutation) {
+            this.mutation = mutation;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.exception.InsufficientBalanceException;
+import dev.dwidi.walletservice.exception.UserNotFoundException;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Phase;
+import dev.dwidi.walletservice.repository.LedgerHead;
+import dev.dwidi.walletservice.repository.TransactionJdbcRepository;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
+import dev.dwidi.walletservice.repository.UserRepository;
+import dev.dwidi.walletservice.service.user.UserCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Moves money from one wallet to another, in one currency, in a single transaction.
+ * <p>
+ * Both balances are locked with one statement, in key order. Every writer that locks more than
+ * one balance does so in that order, so two transfers crossing between the same wallets queue
+ * on the lower key instead of deadlocking. The debit and the credit are then written as a pair
+ * of ledger rows pointing at each other's wallet, with one batched insert, and both balances
+ * are changed with one set-based update. A sharded wallet's shards are swept into its balance
+ * row when the row is locked.
+ * <p>
+ * In append mode the balances' ledgers are locked instead of their rows and each row gets the
+ * next number of its balance's ledger sequence.
+ */
+@Component
+@RequiredArgsConstructor
+public class WalletTransferWriter {
+
+    private final UserRepository userRepository;
+    private final UserJdbcRepository userJdbcRepository;
+    private final TransactionJdbcRepository transactionJdbcRepository;
+    private final UserCache userCache;
+    private final WalletMetrics walletMetrics;
+    private final AppendOnlyLedger appendOnlyLedger;
+    private final ShardedBalances shardedBalances;
+
+    /**
+     * Applies a {@code TRANSFER_OUT} mutation of the sending wallet, whose counterparty is the
+     * receiving wallet, and returns the sender's ledger row.
+     */
+    @Transactional
+    public TransactionResponseDTO apply(WalletMutation transfer) {
+        Long fromUserId = transfer.getUserId();
+        Long toUserId = transfer.getCounterpartyUserId();
+        String currency = transfer.getCurrency();
+        BalanceKey from = new BalanceKey(fromUserId, currency);
+        BalanceKey to = new BalanceKey(toUserId, currency);
+        TreeSet<BalanceKey> keys = new TreeSet<>(List.of(from, to));
+
+        LocalDateTime now = LocalDateTime.now();
+        boolean append = appendOnlyLedger.isEnabled();
+        Map<BalanceKey, LedgerHead> heads = append
+                ? new HashMap<>(walletMetrics.recordPhase(Operation.TRANSFER, Phase.LOOKUP, () -> appendOnlyLedger.lock(keys)))
+                : null;
+        Map<BalanceKey, Money> balances = append ? new HashMap<>()
+                : walletMetrics.recordPhase(Operation.TRANSFER, Phase.LOOKUP, () -> shardedBalances.lockBalances(keys, List.of(to), now));
+        if (append) {
+            heads.forEach((key, head) -> balances.put(key, head.getBalance()));
+        }
+        if (!balances.containsKey(from) || !balances.containsKey(to)) {
+            throw new UserNotFoundException();
+        }
+
+        Money amount = transfer.getAmount();
+        Money fromBalance = balances.get(from).minus(amount);
+        if (fromBalance.signum() < 0) {
+            throw new InsufficientBalanceException();
+        }
+        Money toBalance = balances.get(to).plus(amount);
+
+        Long fromSequence = null;
+        Long toSequence = null;
+        if (append) {
+            heads.put(from, heads.get(from).append(amount.negate()));
+            heads.put(to, heads.get(to).append(amount));
+            fromSequence = heads.get(from).getSequence();
+            toSequence = heads.get(to).getSequence();
+        }
+
+        // The idempotency key stays with the sender, whose request this is
+        Transaction debit = toTransaction(from, TransactionCategory.TRANSFER_OUT, amount, fromBalance,
+                transfer.getIdempotencyKey(), fromSequence, toUserId, now);
+        Transaction credit = toTransaction(to, TransactionCategory.TRANSFER_IN, amount, toBalance,
+                null, toSequence, fromUserId, now);
+        walletMetrics.recordPhase(Operation.TRANSFER, Phase.LEDGER_INSERT,
+                () -> transactionJdbcRepository.insertAll(List.of(debit, credit)));
+
+        if (append) {
+            walletMetrics.recordPhase(Operation.TRANSFER, Phase.WALLET_UPDATE, () -> appendOnlyLedger.appended(heads, now));
+        } else {
+            walletMetrics.recordPhase(Operation.TRANSFER, Phase.WALLET_UPDATE,
+                    () -> userJdbcRepository.applyBalanceDeltas(Map.of(from, amount.negate(), to, amount), now));
+        }
+        userCache.evictAllAfterCommit(List.of(fromUserId, toUserId));
+
+        return WalletLedgerWriter.toResponse(debit);
+    }
+
+    private Transaction toTransaction(BalanceKey key, TransactionCategory category, Money amount, Money lastBalance,
+                                      String idempotencyKey, Long ledgerSequence, Long counterpartyUserId, LocalDateTime now) {
+        Transaction transaction = new Transaction();
+        transaction.setUser(userRepository.getReferenceById(key.userId()));
+        transaction.setCurrency(key.currency());
+        transaction.setTransactionCategory(category);
+        transaction.setAmount(amount);
+        transaction.setLastBalance(lastBalance);
+        transaction.setIdempotencyKey(idempotencyKey);
+        transaction.setLedgerSequence(ledgerSequence);
+        transaction.setCounterpartyUserId(counterpartyUserId);
+        transaction.setCreatedAt(now);
+        transaction.setUpdatedAt(now);
+        return transaction;
+    }
+}
@@ -0,0 +1,141 @@
+package dev.dwidi.walletservice.service.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.dwidi.walletservice.dto.user.UserResponseDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of {@link UserResponseDTO} by user id.
+ * <p>
+ * Writers touch the cache only after their transaction commits: single balance mutations write
+ * the new balance through, and every other change evicts the entry. A write-through that may be
+ * older than the cached entry, because another change of the wallet committed in between,
+ * evicts it instead. Loads run outside any cache lock so a miss never blocks a carrier thread on the
+ * database. To keep a load that read the row before a commit from putting the old value back
+ * after that commit's eviction, every write bumps a generation counter for the user's stripe
+ * and a load is only cached if the generation did not move while it ran.
+ * <p>
+ * Every write is also announced to the other instances through {@link WalletChangePublisher}
+ * once it has committed, and they evict their own copy when the notification arrives.
+ */
+@Component
+public class UserCache {
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final WalletChangePublisher walletChangePublisher;
+    private final Cache<Long, UserResponseDTO> users;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public UserCache(MeterRegistry meterRegistry, WalletChangePublisher walletChangePublisher,
+                     @Value("${wallet.user-cache.maximum-size:100000}") long maximumSize,
+                     @Value("${wallet.user-cache.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.walletChangePublisher = walletChangePublisher;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    public UserResponseDTO get(Long userId, Function<Long, UserResponseDTO> loader) {
+        UserResponseDTO cached = users.getIfPresent(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        int stripe = stripeFor(userId);
+        long generation = generations.get(stripe);
+        UserResponseDTO loaded = loader.apply(userId);
+        users.asMap().compute(userId, (id, current) ->
+                current == null && generations.get(stripe) == generation ? loaded : current);
+        return loaded;
+    }
+
+    /**
+     * Writes the committed balance in one currency through to the cached entry, if there is one.
+     * Must be called while the writer still holds the balance row lock. Transfers and batches
+     * only evict, and their eviction may land before this write-through runs, so the entry is
+     * only updated if nothing else changed the user's stripe since that moment; otherwise it
+     * may already be newer than this balance, and it is evicted instead.
+     */
+    public void updateBalanceAfterCommit(BalanceKey key, BigDecimal balance, LocalDateTime updatedAt) {
+        Long userId = key.userId();
+        int stripe = stripeFor(userId);
+        long generation = generations.get(stripe);
+        afterCommit(() -> {
+            walletChangePublisher.publish(List.of(userId));
+            users.asMap().computeIfPresent(userId, (id, cached) -> {
+                if (generations.get(stripe) != generation) {
+                    return null;
+                }
+                Map<String, BigDecimal> balances = new TreeMap<>(cached.getBalances());
+                balances.put(key.currency(), balance);
+                return new UserResponseDTO(cached.getId(), cached.getFullName(), cached.getEmail(), cached.getPhoneNumber(),
+                        balances, cached.getCreatedAt(), updatedAt);
+            });
+            generations.incrementAndGet(stripe);
+        });
+    }
+
+    public void evictAfterCommit(Long userId) {
+        evictAllAfterCommit(List.of(userId));
+    }
+
+    public void evictAllAfterCommit(Collection<Long> userIds) {
+        afterCommit(() -> {
+            walletChangePublisher.publish(userIds);
+            userIds.forEach(this::evict);
+        });
+    }
+
+    /**
+     * Evicts the user right away, for changes that are already committed.
+     */
+    public void evict(Long userId) {
+        generations.incrementAndGet(stripeFor(userId));
+        users.invalidate(userId);
+    }
+
+    public void evictAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        users.invalidateAll();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static int stripeFor(Long userId) {
+        return Math.floorMod(Long.hashCode(userId), GENERATION_STRIPES);
+    }
+}
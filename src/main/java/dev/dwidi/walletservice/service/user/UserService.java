@@ -1,12 +1,17 @@
 package dev.dwidi.walletservice.service.user;
 
 import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserImportRequestDTO;
+import dev.dwidi.walletservice.dto.user.UserImportResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserPatchRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserResponseDTO;
 
 public interface UserService {
     BaseResponseDTO<UserResponseDTO> createUser(UserRequestDTO userRequestDTO);
+    BaseResponseDTO<UserImportResponseDTO> importUsers(UserImportRequestDTO userImportRequestDTO);
     BaseResponseDTO<UserResponseDTO> getUserById(Long userId);
     BaseResponseDTO<UserResponseDTO> editUser(Long userId, UserRequestDTO userRequestDTO);
+    BaseResponseDTO<UserResponseDTO> patchUser(Long userId, UserPatchRequestDTO userPatchRequestDTO);
     BaseResponseDTO<UserResponseDTO> deleteUser(Long userId);
 }
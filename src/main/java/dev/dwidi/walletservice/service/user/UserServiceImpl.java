@@ -1,16 +1,43 @@
 package dev.dwidi.walletservice.service.user;
 
 import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserImportRequestDTO;
+import dev.dwidi.walletservice.dto.user.UserImportResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserImportResultDTO;
+import dev.dwidi.walletservice.dto.user.UserPatchRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserResponseDTO;
 import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.exception.UserNotFoundException;
+import dev.dwidi.walletservice.logging.PiiMasker;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Phase;
+import dev.dwidi.walletservice.repository.PatchedProfile;
+import dev.dwidi.walletservice.repository.TransactionRepository;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
 import dev.dwidi.walletservice.repository.UserRepository;
+import dev.dwidi.walletservice.repository.WalletBalanceRepository;
+import dev.dwidi.walletservice.repository.WalletBalanceShardRepository;
+import dev.dwidi.walletservice.repository.WalletTombstoneRepository;
+import dev.dwidi.walletservice.service.ConflictRetry;
+import dev.dwidi.walletservice.service.transaction.AppendOnlyLedger;
+import dev.dwidi.walletservice.service.transaction.ShardedBalances;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
 @RequiredArgsConstructor
@@ -18,76 +45,131 @@ import java.math.BigDecimal;
 public class UserServiceImpl implements UserService {
 
     private final UserRepository userRepository;
+    private final UserJdbcRepository userJdbcRepository;
+    private final WalletBalanceRepository walletBalanceRepository;
+    private final WalletBalanceShardRepository walletBalanceShardRepository;
+    private final TransactionRepository transactionRepository;
+    private final WalletTombstoneRepository walletTombstoneRepository;
+    private final UserCache userCache;
+    private final WalletMetrics walletMetrics;
+    private final AppendOnlyLedger appendOnlyLedger;
+    private final ShardedBalances shardedBalances;
+    private final ConflictRetry conflictRetry;
 
     @Override
     public BaseResponseDTO<UserResponseDTO> createUser(UserRequestDTO userRequestDTO) {
-        log.info("Processing to create user {}", userRequestDTO);
+        log.debug("Processing to create user with email {}", PiiMasker.maskEmail(userRequestDTO.getEmail()));
 
-        // Find if user exist
-        if (userRepository.existsByEmail(userRequestDTO.getEmail()) ||
-                userRepository.existsByPhoneNumber(userRequestDTO.getPhoneNumber())) {
-            throw new RuntimeException("Email or phone number already exist");
+        return walletMetrics.record(Operation.USER_CREATE, () -> create(userRequestDTO));
+    }
+
+    private BaseResponseDTO<UserResponseDTO> create(UserRequestDTO userRequestDTO) {
+        User newuser = toUser(userRequestDTO);
+
+        // The unique constraints decide, so two concurrent signups with the same email cannot both succeed
+        Set<Long> inserted = walletMetrics.recordPhase(Operation.USER_CREATE, Phase.WALLET_UPDATE,
+                () -> userJdbcRepository.insertIgnoringConflicts(List.of(newuser), LocalDateTime.now()));
+        if (!inserted.contains(newuser.getId())) {
+            return conflict();
+        }
+
+        return new BaseResponseDTO<>(HttpStatus.CREATED.value(), "User successfully created", toCreatedResponse(newuser));
+    }
+
+    @Override
+    public BaseResponseDTO<UserImportResponseDTO> importUsers(UserImportRequestDTO userImportRequestDTO) {
+        log.debug("Processing to import {} users", userImportRequestDTO.getUsers().size());
+
+        return walletMetrics.record(Operation.USER_IMPORT, () -> importAll(userImportRequestDTO.getUsers()));
+    }
+
+    private BaseResponseDTO<UserImportResponseDTO> importAll(List<UserRequestDTO> userRequestDTOs) {
+        List<User> newUsers = userRequestDTOs.stream().map(this::toUser).toList();
+
+        // One INSERT for the whole import; rows clashing with existing users or earlier rows are skipped
+        Set<Long> inserted = walletMetrics.recordPhase(Operation.USER_IMPORT, Phase.WALLET_UPDATE,
+                () -> userJdbcRepository.insertIgnoringConflicts(newUsers, LocalDateTime.now()));
+
+        List<UserImportResultDTO> results = new ArrayList<>(newUsers.size());
+        for (int i = 0; i < newUsers.size(); i++) {
+            User newUser = newUsers.get(i);
+            results.add(inserted.contains(newUser.getId())
+                    ? new UserImportResultDTO(i, HttpStatus.CREATED.value(), "User successfully created", toCreatedResponse(newUser))
+                    : new UserImportResultDTO(i, HttpStatus.CONFLICT.value(), "Email or phone number already exist", null));
         }
 
+        UserImportResponseDTO userImportResponseDTO = UserImportResponseDTO.builder()
+                .created(inserted.size())
+                .failed(newUsers.size() - inserted.size())
+                .results(results)
+                .build();
+
+        return new BaseResponseDTO<>(HttpStatus.OK.value(), "Users imported", userImportResponseDTO);
+    }
+
+    private static BaseResponseDTO<UserResponseDTO> conflict() {
+        return new BaseResponseDTO<>(HttpStatus.CONFLICT.value(), "Email or phone number already exist", null);
+    }
+
+    private User toUser(UserRequestDTO userRequestDTO) {
         User newuser = new User();
         newuser.setFullName(userRequestDTO.getFullName());
         newuser.setEmail(userRequestDTO.getEmail());
         newuser.setPhoneNumber(userRequestDTO.getPhoneNumber());
-        newuser.setLastBalance(BigDecimal.ZERO);
-
-        userRepository.save(newuser);
+        return newuser;
+    }
 
-        // Build the response
+    private UserResponseDTO toCreatedResponse(User newuser) {
         UserResponseDTO userResponseDTO = new UserResponseDTO();
         userResponseDTO.setId(newuser.getId());
         userResponseDTO.setFullName(newuser.getFullName());
         userResponseDTO.setEmail(newuser.getEmail());
-        userResponseDTO.setLastBalance(newuser.getLastBalance());
+        // A new wallet holds no currency until its first credit
+        userResponseDTO.setBalances(Map.of());
         userResponseDTO.setCreatedAt(newuser.getCreatedAt());
         userResponseDTO.setUpdatedAt(newuser.getUpdatedAt());
-
-        return new BaseResponseDTO<>(HttpStatus.CREATED.value(), "User successfully created", userResponseDTO);
+        return userResponseDTO;
     }
 
     @Override
     public BaseResponseDTO<UserResponseDTO> getUserById(Long userId) {
-        log.info("Processing to get user with id: {}", userId);
+        log.debug("Processing to get user with id: {}", userId);
 
-        User existingUser = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        // Build the response
-        UserResponseDTO userResponseDTO = new UserResponseDTO();
-        userResponseDTO.setId(existingUser.getId());
-        userResponseDTO.setFullName(existingUser.getFullName());
-        userResponseDTO.setEmail(existingUser.getEmail());
-        userResponseDTO.setPhoneNumber(existingUser.getPhoneNumber());
-        userResponseDTO.setLastBalance(existingUser.getLastBalance());
-        userResponseDTO.setCreatedAt(existingUser.getCreatedAt());
-        userResponseDTO.setUpdatedAt(existingUser.getUpdatedAt());
+        UserResponseDTO userResponseDTO = walletMetrics.record(Operation.USER_GET, () -> userCache.get(userId, this::loadUser));
 
         return new BaseResponseDTO<>(HttpStatus.OK.value(), "User successfully retrieved", userResponseDTO);
     }
 
     @Override
     public BaseResponseDTO<UserResponseDTO> editUser(Long userId, UserRequestDTO userRequestDTO) {
-        log.info("Processing to edit user with id : {}", userId);
+        log.debug("Processing to edit user with id : {}", userId);
 
-        User existingUser = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        // A concurrent edit bumps the version and fails the save, the edit is then reapplied to a fresh copy
+        return walletMetrics.record(Operation.USER_EDIT, () -> conflictRetry.execute(Operation.USER_EDIT, () -> edit(userId, userRequestDTO)));
+    }
+
+    private BaseResponseDTO<UserResponseDTO> edit(Long userId, UserRequestDTO userRequestDTO) {
+        User existingUser = walletMetrics.recordPhase(Operation.USER_EDIT, Phase.LOOKUP, () -> userRepository.findById(userId))
+                .orElseThrow(UserNotFoundException::new);
 
         existingUser.setFullName(userRequestDTO.getFullName());
         existingUser.setEmail(userRequestDTO.getEmail());
         existingUser.setPhoneNumber(userRequestDTO.getPhoneNumber());
 
-        userRepository.save(existingUser);
+        try {
+            walletMetrics.recordPhase(Operation.USER_EDIT, Phase.WALLET_UPDATE, () -> userRepository.save(existingUser));
+        } catch (DataIntegrityViolationException e) {
+            // The request is validated, so only the unique email and phone number can be violated
+            return conflict();
+        }
+        userCache.evictAfterCommit(userId);
 
         UserResponseDTO userResponseDTO = new UserResponseDTO();
         userResponseDTO.setId(existingUser.getId());
         userResponseDTO.setFullName(existingUser.getFullName());
         userResponseDTO.setEmail(existingUser.getEmail());
         userResponseDTO.setPhoneNumber(existingUser.getPhoneNumber());
-        userResponseDTO.setLastBalance(existingUser.getLastBalance());
+        userResponseDTO.setBalances(currentBalances(existingUser.getId()));
         userResponseDTO.setCreatedAt(existingUser.getCreatedAt());
         userResponseDTO.setUpdatedAt(existingUser.getUpdatedAt());
 
@@ -95,15 +177,95 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
+    public BaseResponseDTO<UserResponseDTO> patchUser(Long userId, UserPatchRequestDTO userPatchRequestDTO) {
+        log.debug("Processing to patch user with id : {}", userId);
+
+        return walletMetrics.record(Operation.USER_EDIT, () -> patch(userId, userPatchRequestDTO));
+    }
+
+    private BaseResponseDTO<UserResponseDTO> patch(Long userId, UserPatchRequestDTO userPatchRequestDTO) {
+        // One UPDATE of the changed columns that also reads the balances; the entity is never loaded, so there is nothing stale to write back
+        PatchedProfile patched;
+        try {
+            patched = walletMetrics.recordPhase(Operation.USER_EDIT, Phase.WALLET_UPDATE,
+                            () -> userJdbcRepository.patchProfile(userId, userPatchRequestDTO.getFullName(),
+                                    userPatchRequestDTO.getEmail(), userPatchRequestDTO.getPhoneNumber(), LocalDateTime.now()))
+                    .orElseThrow(UserNotFoundException::new);
+        } catch (DuplicateKeyException e) {
+            return conflict();
+        }
+        userCache.evictAfterCommit(userId);
+
+        User patchedUser = patched.getUser();
+        Map<String, BigDecimal> balances = new TreeMap<>();
+        patched.getBalances().forEach((currency, balance) -> balances.put(currency, balance.toBigDecimal()));
+
+        UserResponseDTO userResponseDTO = new UserResponseDTO();
+        userResponseDTO.setId(patchedUser.getId());
+        userResponseDTO.setFullName(patchedUser.getFullName());
+        userResponseDTO.setEmail(patchedUser.getEmail());
+        userResponseDTO.setPhoneNumber(patchedUser.getPhoneNumber());
+        userResponseDTO.setBalances(balances);
+        userResponseDTO.setCreatedAt(patchedUser.getCreatedAt());
+        userResponseDTO.setUpdatedAt(patchedUser.getUpdatedAt());
+
+        return new BaseResponseDTO<>(HttpStatus.OK.value(), "User successfully updated", userResponseDTO);
+    }
+
+    @Override
+    @Transactional
     public BaseResponseDTO<UserResponseDTO> deleteUser(Long userId) {
-        log.info("Processing to delete user with id: {}", userId);
+        log.debug("Processing to delete user with id: {}", userId);
 
-        User existingUser = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        return walletMetrics.record(Operation.USER_DELETE, () -> {
+            // Lock the wallet first so no transaction can be recorded for it while its ledger is removed
+            walletMetrics.recordPhase(Operation.USER_DELETE, Phase.LOOKUP, () -> userRepository.lockById(userId))
+                    .orElseThrow(UserNotFoundException::new);
 
-        userRepository.delete(existingUser);
+            // Set-based deletes, the ledger is never loaded into memory
+            transactionRepository.deleteIdempotencyKeysByUserId(userId);
+            transactionRepository.deleteByUserId(userId);
+            walletBalanceShardRepository.deleteByUserId(userId);
+            walletBalanceRepository.deleteByUserId(userId);
+            userRepository.deleteWalletById(userId);
+            // Archived months keep the wallet's rows, the tombstone hides them
+            walletTombstoneRepository.insert(userId, LocalDateTime.now());
+            userCache.evictAfterCommit(userId);
 
-        return new BaseResponseDTO<>(HttpStatus.OK.value(), "User deleted successfully", null);
+            return new BaseResponseDTO<>(HttpStatus.OK.value(), "User deleted successfully", null);
+        });
+    }
+
+    private Map<String, BigDecimal> currentBalances(Long userId) {
+        Map<String, BigDecimal> balances = new TreeMap<>();
+        if (appendOnlyLedger.isEnabled()) {
+            // In append mode the balance rows only hold snapshots
+            appendOnlyLedger.balances(userId).forEach((currency, balance) -> balances.put(currency, balance.toBigDecimal()));
+        } else {
+            walletBalanceRepository.findByUserId(userId)
+                    .forEach(balance -> balances.put(balance.getCurrency(), balance.getBalance().toBigDecimal()));
+            if (shardedBalances.isSharded(userId)) {
+                shardedBalances.shardTotals(userId)
+                        .forEach((currency, total) -> balances.merge(currency, total.toBigDecimal(), BigDecimal::add));
+            }
+        }
+        return balances;
     }
-}
 
+    private UserResponseDTO loadUser(Long userId) {
+        // Only cache misses get here
+        User existingUser = walletMetrics.recordPhase(Operation.USER_GET, Phase.LOOKUP, () -> userRepository.findById(userId))
+                .orElseThrow(UserNotFoundException::new);
+
+        // Build the response
+        UserResponseDTO userResponseDTO = new UserResponseDTO();
+        userResponseDTO.setId(existingUser.getId());
+        userResponseDTO.setFullName(existingUser.getFullName());
+        userResponseDTO.setEmail(existingUser.getEmail());
+        userResponseDTO.setPhoneNumber(existingUser.getPhoneNumber());
+        userResponseDTO.setBalances(currentBalances(existingUser.getId()));
+        userResponseDTO.setCreatedAt(existingUser.getCreatedAt());
+        userResponseDTO.setUpdatedAt(existingUser.getUpdatedAt());
+        return userResponseDTO;
+    }
+}
@@ -0,0 +1,114 @@
+package dev.dwidi.walletservice.service.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Evicts cached users changed by other instances, as announced by {@link WalletChangePublisher}.
+ * <p>
+ * One connection is kept in {@code LISTEN} on a dedicated thread that blocks until notifications
+ * arrive. Whenever the connection is (re)established the whole cache is dropped, since anything
+ * published while nobody was listening is lost.
+ */
+@Component
+@Slf4j
+public class WalletChangeListener implements SmartLifecycle {
+
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final DataSource dataSource;
+    private final UserCache userCache;
+    private final String nodeId;
+    private final boolean enabled;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public WalletChangeListener(DataSource dataSource, UserCache userCache, WalletChangePublisher walletChangePublisher,
+                                @Value("${wallet.user-cache.invalidation.enabled:true}") boolean enabled) {
+        this.dataSource = dataSource;
+        this.userCache = userCache;
+        this.nodeId = walletChangePublisher.getNodeId();
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        thread = Thread.ofPlatform().daemon().name("wallet-change-listener").start(this::listen);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(POLL_TIMEOUT_MILLIS * 2L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + WalletChangePublisher.CHANNEL);
+                }
+                userCache.evictAll();
+                log.info("Listening for wallet changes of other instances");
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            handle(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Wallet change listener lost its connection, reconnecting", e);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(String payload) {
+        int separator = payload.indexOf('|');
+        if (separator < 0 || payload.startsWith(nodeId + "|")) {
+            return;
+        }
+        for (String userId : payload.substring(separator + 1).split(",")) {
+            userCache.evict(Long.valueOf(userId));
+        }
+    }
+}
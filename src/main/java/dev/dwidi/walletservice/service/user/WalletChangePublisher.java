@@ -0,0 +1,147 @@
+package dev.dwidi.walletservice.service.user;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells the other instances which wallets changed, through PostgreSQL {@code NOTIFY}.
+ * <p>
+ * Writers only queue the ids of wallets they changed, once their transaction has committed, so
+ * replicas never hear about a change that was rolled back and the writers' own commits never
+ * issue a {@code NOTIFY}: PostgreSQL takes a database-wide lock at commit for transactions that
+ * did, which would serialize every wallet write. A dedicated thread drains the queue on its own
+ * connection, drops duplicate ids and sends whatever piled up in one transaction. Each message is
+ * {@code <nodeId>|<userId>,<userId>...} and is kept under the 8000 byte payload limit.
+ * <p>
+ * Ids queued while the connection is down are sent once it is back; if the application stops
+ * first they are lost and the other instances keep their copies until they expire.
+ */
+@Component
+@Slf4j
+public class WalletChangePublisher implements SmartLifecycle {
+
+    static final String CHANNEL = "wallet_changes";
+
+    private static final int MAX_IDS_PER_NOTIFICATION = 300;
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final BlockingQueue<Long> pending = new LinkedBlockingQueue<>();
+
+    @Getter
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public WalletChangePublisher(DataSource dataSource,
+                                 @Value("${wallet.user-cache.invalidation.enabled:true}") boolean enabled) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Queues committed changes of the users for the next notification.
+     */
+    public void publish(Collection<Long> userIds) {
+        if (enabled) {
+            pending.addAll(userIds);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        thread = Thread.ofPlatform().daemon().name("wallet-change-publisher").start(this::sendPending);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join(POLL_TIMEOUT_MILLIS * 2L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void sendPending() {
+        Set<Long> userIds = new LinkedHashSet<>();
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try (PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+                    // Whatever is left when stopping still goes out, so the last writes are not lost
+                    while (running || !pending.isEmpty() || !userIds.isEmpty()) {
+                        if (userIds.isEmpty()) {
+                            Long userId = pending.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                            if (userId == null) {
+                                continue;
+                            }
+                            userIds.add(userId);
+                        }
+                        pending.drainTo(userIds);
+                        sendNotifications(connection, statement, userIds);
+                        // Only forgotten once sent, a lost connection sends them again after reconnecting
+                        userIds.clear();
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Wallet change publisher lost its connection, reconnecting", e);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void sendNotifications(Connection connection, PreparedStatement statement, Set<Long> userIds) throws SQLException {
+        Iterator<Long> iterator = userIds.iterator();
+        while (iterator.hasNext()) {
+            StringJoiner ids = new StringJoiner(",", nodeId + "|", "");
+            for (int i = 0; i < MAX_IDS_PER_NOTIFICATION && iterator.hasNext(); i++) {
+                ids.add(String.valueOf(iterator.next()));
+            }
+            statement.setString(1, CHANNEL);
+            statement.setString(2, ids.toString());
+            statement.executeQuery().close();
+        }
+        connection.commit();
+    }
+}
@@ -0,0 +1,29 @@
+-- The schema as Hibernate's ddl-auto=update created it before the schema moved to Flyway,
+-- constraint names included. Databases that were created that way are baselined at this version
+-- and only run the migrations after it, which bring them to the current schema.
+
+CREATE TABLE user_wallet (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY,
+    created_at   timestamp(6),
+    email        varchar(255)   NOT NULL,
+    full_name    varchar(255),
+    last_balance numeric(38, 2),
+    phone_number varchar(255)   NOT NULL,
+    updated_at   timestamp(6),
+    CONSTRAINT user_wallet_pkey PRIMARY KEY (id),
+    CONSTRAINT uka7rs9da1axx9wn58iquaqwd6g UNIQUE (email),
+    CONSTRAINT ukjwli3gnmdudnbey432r00eyeq UNIQUE (phone_number)
+);
+
+CREATE TABLE transaction (
+    id                   bigint GENERATED BY DEFAULT AS IDENTITY,
+    amount               numeric(38, 2),
+    created_at           timestamp(6),
+    transaction_category varchar(255),
+    updated_at           timestamp(6),
+    user_id              bigint NOT NULL,
+    CONSTRAINT transaction_pkey PRIMARY KEY (id),
+    CONSTRAINT transaction_transaction_category_check
+        CHECK (transaction_category IN ('TOPUP', 'REFUND', 'BILLPAYMENT')),
+    CONSTRAINT fkdh6i6st3j3mtkqoj7r8pdo0b0 FOREIGN KEY (user_id) REFERENCES user_wallet (id)
+);
@@ -0,0 +1,11 @@
+-- Ids come from sequences handed out in blocks of 50 (pooled-lo) instead of identity columns, so
+-- inserts can be batched. The sequences start past the ids already in use.
+
+CREATE SEQUENCE user_wallet_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE transaction_seq START WITH 1 INCREMENT BY 50;
+
+SELECT setval('user_wallet_seq', (SELECT COALESCE(max(id), 0) + 1 FROM user_wallet), false);
+SELECT setval('transaction_seq', (SELECT COALESCE(max(id), 0) + 1 FROM transaction), false);
+
+ALTER TABLE user_wallet ALTER COLUMN id DROP IDENTITY;
+ALTER TABLE transaction ALTER COLUMN id DROP IDENTITY;
@@ -0,0 +1,36 @@
+-- Ledger rows gain their currency, the balance after them, the idempotency key and, for the
+-- append-only ledger and transfers, a sequence number and the other wallet. Profile edits are
+-- checked against a version column.
+
+-- The check only knows the categories that existed when the table was created, TRANSFER is newer
+ALTER TABLE transaction DROP CONSTRAINT IF EXISTS transaction_transaction_category_check;
+
+ALTER TABLE transaction
+    ALTER COLUMN amount TYPE numeric(19, 2),
+    ADD COLUMN currency             varchar(3),
+    ADD COLUMN last_balance         numeric(19, 2),
+    ADD COLUMN idempotency_key      varchar(255),
+    ADD COLUMN ledger_sequence      bigint,
+    ADD COLUMN counterparty_user_id bigint;
+
+ALTER TABLE user_wallet
+    ALTER COLUMN last_balance TYPE numeric(19, 2),
+    ADD COLUMN version bigint NOT NULL DEFAULT 0;
+
+-- Earlier transactions were all in the default currency; their balance after each one is the
+-- running total of the wallet, bill payments being the only debits there were
+UPDATE transaction t
+SET currency     = '${default_currency}',
+    last_balance = running.balance
+FROM (SELECT id,
+             sum(CASE WHEN transaction_category = 'BILLPAYMENT' THEN -amount ELSE amount END)
+                 OVER (PARTITION BY user_id ORDER BY created_at, id) AS balance
+      FROM transaction) running
+WHERE t.id = running.id;
+
+ALTER TABLE transaction
+    ADD CONSTRAINT uk_transaction_user_idempotency_key UNIQUE (user_id, idempotency_key),
+    ADD CONSTRAINT uk_transaction_user_currency_ledger_sequence UNIQUE (user_id, currency, ledger_sequence);
+
+CREATE INDEX idx_transaction_user_created_id ON transaction (user_id, created_at, id);
+CREATE INDEX idx_transaction_created_id ON transaction (created_at, id);
@@ -0,0 +1,32 @@
+-- Balances move off user_wallet into one row per wallet and currency, plus the shard rows of
+-- wallets with sharded balances. The existing balances are carried over in the default currency;
+-- wallets that never had a transaction get no row, like wallets created from now on.
+
+CREATE TABLE wallet_balance (
+    user_id           bigint         NOT NULL,
+    currency          varchar(3)     NOT NULL,
+    balance           numeric(19, 2) NOT NULL,
+    snapshot_sequence bigint         NOT NULL,
+    created_at        timestamp(6),
+    updated_at        timestamp(6),
+    CONSTRAINT wallet_balance_pkey PRIMARY KEY (user_id, currency),
+    CONSTRAINT fkbes0v2qmxbye4cv7q8a5pmm2k FOREIGN KEY (user_id) REFERENCES user_wallet (id)
+);
+
+CREATE TABLE wallet_balance_shard (
+    user_id    bigint         NOT NULL,
+    currency   varchar(3)     NOT NULL,
+    shard      integer        NOT NULL,
+    balance    numeric(19, 2) NOT NULL,
+    updated_at timestamp(6),
+    CONSTRAINT wallet_balance_shard_pkey PRIMARY KEY (user_id, currency, shard),
+    CONSTRAINT fk26xtwb3pao3j3c4omtowarm4m FOREIGN KEY (user_id) REFERENCES user_wallet (id)
+);
+
+INSERT INTO wallet_balance (user_id, currency, balance, snapshot_sequence, created_at, updated_at)
+SELECT u.id, '${default_currency}', COALESCE(u.last_balance, 0), 0, u.created_at, u.updated_at
+FROM user_wallet u
+WHERE EXISTS (SELECT 1 FROM transaction t WHERE t.user_id = u.id)
+   OR COALESCE(u.last_balance, 0) <> 0;
+
+ALTER TABLE user_wallet DROP COLUMN last_balance;
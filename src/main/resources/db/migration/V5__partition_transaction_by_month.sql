@@ -0,0 +1,74 @@
+-- Range-partition the ledger by month on created_at. Every unique constraint of a partitioned
+-- table has to contain the partition key, so the primary key becomes (id, created_at) and the
+-- per-user idempotency keys move to transaction_idempotency_key, which stays unique across
+-- all months. Ledger sequences are only handed out under the per-balance advisory lock and
+-- keep a plain index.
+-- Partitions are named transaction_yyyy_mm; LedgerPartitionManager creates the months ahead
+-- and detaches old ones into the ledger_archive schema.
+
+CREATE SCHEMA IF NOT EXISTS ledger_archive;
+
+ALTER TABLE transaction RENAME TO transaction_unpartitioned;
+ALTER TABLE transaction_unpartitioned RENAME CONSTRAINT transaction_pkey TO transaction_unpartitioned_pkey;
+DROP INDEX idx_transaction_user_created_id;
+DROP INDEX idx_transaction_created_id;
+
+CREATE TABLE transaction (
+    id                   bigint       NOT NULL,
+    user_id              bigint       NOT NULL,
+    transaction_category varchar(255),
+    currency             varchar(3),
+    amount               numeric(19, 2),
+    last_balance         numeric(19, 2),
+    idempotency_key      varchar(255),
+    ledger_sequence      bigint,
+    counterparty_user_id bigint,
+    created_at           timestamp(6) NOT NULL,
+    updated_at           timestamp(6),
+    CONSTRAINT transaction_pkey PRIMARY KEY (id, created_at),
+    CONSTRAINT fk_transaction_user FOREIGN KEY (user_id) REFERENCES user_wallet (id)
+) PARTITION BY RANGE (created_at);
+
+CREATE INDEX idx_transaction_user_created_id ON transaction (user_id, created_at, id);
+CREATE INDEX idx_transaction_created_id ON transaction (created_at, id);
+CREATE INDEX idx_transaction_user_currency_ledger_sequence ON transaction (user_id, currency, ledger_sequence)
+    WHERE ledger_sequence IS NOT NULL;
+
+-- One partition per month from the oldest transaction up to three months ahead
+DO $$
+DECLARE
+    partition_start date := date_trunc('month', COALESCE((SELECT min(created_at) FROM transaction_unpartitioned), CURRENT_TIMESTAMP));
+    last_start      date := date_trunc('month', CURRENT_TIMESTAMP) + interval '3 months';
+BEGIN
+    WHILE partition_start <= last_start LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF transaction FOR VALUES FROM (%L) TO (%L)',
+                       'transaction_' || to_char(partition_start, 'YYYY_MM'),
+                       partition_start, partition_start + interval '1 month');
+        partition_start := partition_start + interval '1 month';
+    END LOOP;
+END $$;
+
+INSERT INTO transaction (id, user_id, transaction_category, currency, amount, last_balance, idempotency_key,
+                         ledger_sequence, counterparty_user_id, created_at, updated_at)
+SELECT id, user_id, transaction_category, currency, amount, last_balance, idempotency_key,
+       ledger_sequence, counterparty_user_id, COALESCE(created_at, updated_at, CURRENT_TIMESTAMP), updated_at
+FROM transaction_unpartitioned;
+
+DROP TABLE transaction_unpartitioned;
+
+-- The ledger row of each idempotency key; created_at lets a lookup go straight to its partition
+CREATE TABLE transaction_idempotency_key (
+    user_id         bigint       NOT NULL,
+    idempotency_key varchar(255) NOT NULL,
+    transaction_id  bigint       NOT NULL,
+    created_at      timestamp(6) NOT NULL,
+    CONSTRAINT transaction_idempotency_key_pkey PRIMARY KEY (user_id, idempotency_key),
+    CONSTRAINT fk_transaction_idempotency_key_user FOREIGN KEY (user_id) REFERENCES user_wallet (id)
+);
+
+CREATE INDEX idx_transaction_idempotency_key_created_at ON transaction_idempotency_key (created_at);
+
+INSERT INTO transaction_idempotency_key (user_id, idempotency_key, transaction_id, created_at)
+SELECT user_id, idempotency_key, id, created_at
+FROM transaction
+WHERE idempotency_key IS NOT NULL;
@@ -0,0 +1,9 @@
+-- Deleting a wallet removes its rows from the ledger, but not from months already archived into
+-- segment files, which are never rewritten. A tombstone per deleted wallet lets the archive
+-- readers skip them; wallet ids come from a sequence and are never handed out again.
+
+CREATE TABLE wallet_tombstone (
+    user_id    bigint       NOT NULL,
+    deleted_at timestamp(6) NOT NULL,
+    CONSTRAINT wallet_tombstone_pkey PRIMARY KEY (user_id)
+);
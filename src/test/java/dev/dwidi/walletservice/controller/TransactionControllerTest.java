@@ -0,0 +1,152 @@
+package dev.dwidi.walletservice.controller;
+
+import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.service.transaction.LedgerExportService;
+import dev.dwidi.walletservice.service.transaction.TransactionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(TransactionController.class)
+class TransactionControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private TransactionService transactionService;
+
+    @MockBean
+    private LedgerExportService ledgerExportService;
+
+    @Test
+    void topUp_WithTwoDecimals_ShouldPassAmountThrough() throws Exception {
+        when(transactionService.topUpBalance(eq(1L), any(TransactionRequestDTO.class)))
+                .thenReturn(new BaseResponseDTO<>(200, "Top up successfully", new TransactionResponseDTO()));
+
+        mockMvc.perform(post("/api/v1/transaction/topup/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactionCategory\":\"TOPUP\",\"amount\":10.25}"))
+                .andExpect(status().isOk());
+
+        verify(transactionService).topUpBalance(eq(1L),
+                argThat(request -> request.getAmount().compareTo(new BigDecimal("10.25")) == 0));
+    }
+
+    @Test
+    void topUp_WithKeyInBodyAndHeader_ShouldOnlyUseHeader() throws Exception {
+        when(transactionService.topUpBalance(eq(1L), any(TransactionRequestDTO.class)))
+                .thenReturn(new BaseResponseDTO<>(200, "Top up successfully", new TransactionResponseDTO()));
+
+        mockMvc.perform(post("/api/v1/transaction/topup/1")
+                        .header("Idempotency-Key", "from-header")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactionCategory\":\"TOPUP\",\"amount\":10,\"idempotencyKey\":\"from-body\"}"))
+                .andExpect(status().isOk());
+
+        verify(transactionService).topUpBalance(eq(1L), argThat(request -> "from-header".equals(request.getIdempotencyKey())));
+    }
+
+    @Test
+    void topUp_WithKeyInBodyOnly_ShouldIgnoreIt() throws Exception {
+        when(transactionService.topUpBalance(eq(1L), any(TransactionRequestDTO.class)))
+                .thenReturn(new BaseResponseDTO<>(200, "Top up successfully", new TransactionResponseDTO()));
+
+        mockMvc.perform(post("/api/v1/transaction/topup/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactionCategory\":\"TOPUP\",\"amount\":10,\"idempotencyKey\":\"from-body\"}"))
+                .andExpect(status().isOk());
+
+        verify(transactionService).topUpBalance(eq(1L), argThat(request -> request.getIdempotencyKey() == null));
+    }
+
+    @Test
+    void topUp_WithTooLongIdempotencyKey_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/transaction/topup/1")
+                        .header("Idempotency-Key", "k".repeat(256))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactionCategory\":\"TOPUP\",\"amount\":10}"))
+                .andExpect(status().isBadRequest());
+
+        verify(transactionService, never()).topUpBalance(any(), any());
+    }
+
+    @Test
+    void topUp_WithMoreThanTwoDecimals_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/transaction/topup/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactionCategory\":\"TOPUP\",\"amount\":10.005}"))
+                .andExpect(status().isBadRequest());
+
+        verify(transactionService, never()).topUpBalance(any(), any());
+    }
+
+    @Test
+    void transfer_WithMoreThanTwoDecimals_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/transaction/transfer/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"toUserId\":2,\"amount\":0.001}"))
+                .andExpect(status().isBadRequest());
+
+        verify(transactionService, never()).transfer(any(), any());
+    }
+
+    @Test
+    void batch_WithMoreThanTwoDecimals_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/transaction/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactions\":[{\"userId\":1,\"transactionCategory\":\"TOPUP\",\"amount\":1.999}]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(transactionService, never()).processBatch(any(BatchTransactionRequestDTO.class));
+    }
+
+    @Test
+    void topUp_WithInvalidCurrency_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/transaction/topup/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactionCategory\":\"TOPUP\",\"amount\":10.25,\"currency\":\"usd\"}"))
+                .andExpect(status().isBadRequest());
+
+        verify(transactionService, never()).topUpBalance(any(), any());
+    }
+
+    @Test
+    void topUp_WithCurrencyWithoutTwoDecimals_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/transaction/topup/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactionCategory\":\"TOPUP\",\"amount\":100.50,\"currency\":\"JPY\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/v1/transaction/topup/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactionCategory\":\"TOPUP\",\"amount\":1.5,\"currency\":\"KWD\"}"))
+                .andExpect(status().isBadRequest());
+
+        verify(transactionService, never()).topUpBalance(any(), any());
+    }
+
+    @Test
+    void batch_WithUnknownCurrency_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/transaction/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transactions\":[{\"userId\":1,\"transactionCategory\":\"TOPUP\",\"amount\":10,\"currency\":\"XYZ\"}]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(transactionService, never()).processBatch(any(BatchTransactionRequestDTO.class));
+    }
+}
@@ -1,6 +1,9 @@
 package dev.dwidi.walletservice.controller;
 
 import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserImportRequestDTO;
+import dev.dwidi.walletservice.dto.user.UserImportResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserPatchRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserResponseDTO;
 import dev.dwidi.walletservice.service.user.UserService;
@@ -14,6 +17,8 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -47,7 +52,7 @@ class UserControllerTest {
         userResponseDTO.setFullName("John Doe");
         userResponseDTO.setEmail("john.doe@example.com");
         userResponseDTO.setPhoneNumber("+1234567890");
-        userResponseDTO.setLastBalance(BigDecimal.ZERO);
+        userResponseDTO.setBalances(Map.of("IDR", BigDecimal.ZERO));
         userResponseDTO.setCreatedAt(LocalDateTime.now());
         userResponseDTO.setUpdatedAt(LocalDateTime.now());
 
@@ -74,6 +79,40 @@ class UserControllerTest {
         verify(userService, times(1)).createUser(any(UserRequestDTO.class));
     }
 
+    @Test
+    void createUser_WithInvalidEmail_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/user/create")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"fullName\":\"John Doe\",\"email\":\"invalid-email\",\"phoneNumber\":\"+1234567890\"}"))
+                .andExpect(status().isBadRequest());
+
+        verify(userService, never()).createUser(any());
+    }
+
+    @Test
+    void importUsers_Success() throws Exception {
+        when(userService.importUsers(any(UserImportRequestDTO.class))).thenReturn(new BaseResponseDTO<>(200, "Users imported",
+                UserImportResponseDTO.builder().created(1).failed(0).results(List.of()).build()));
+
+        mockMvc.perform(post("/api/v1/user/import")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"users\":[{\"fullName\":\"John Doe\",\"email\":\"john.doe@example.com\",\"phoneNumber\":\"+1234567890\"}]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.created").value(1));
+
+        verify(userService, times(1)).importUsers(eq(new UserImportRequestDTO(List.of(userRequestDTO))));
+    }
+
+    @Test
+    void importUsers_WithInvalidUser_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/user/import")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"users\":[{\"fullName\":\"John Doe\",\"email\":\"john.doe@example.com\"}]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(userService, never()).importUsers(any());
+    }
+
 
 
 
@@ -148,6 +187,34 @@ class UserControllerTest {
         verify(userService, times(1)).editUser(eq(userId), any());
     }
 
+    @Test
+    void patchUser_Success() throws Exception {
+        Long userId = 1L;
+        when(userService.patchUser(eq(userId), any(UserPatchRequestDTO.class))).thenReturn(baseResponse);
+
+        mockMvc.perform(patch("/api/v1/user/edit/{userId}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"fullName\":\"Jane Doe\"}"))
+                .andExpect(status().isOk());
+
+        verify(userService, times(1)).patchUser(eq(userId), eq(new UserPatchRequestDTO("Jane Doe", null, null)));
+    }
+
+    @Test
+    void patchUser_WithoutFields_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(patch("/api/v1/user/edit/{userId}", 1L)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(patch("/api/v1/user/edit/{userId}", 1L)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"invalid-email\"}"))
+                .andExpect(status().isBadRequest());
+
+        verify(userService, never()).patchUser(any(), any());
+    }
+
     @Test
     void deleteUser_Success() throws Exception {
         Long userId = 1L;
@@ -0,0 +1,60 @@
+package dev.dwidi.walletservice.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void of_ExactAmount_StoresMinorUnits() {
+        // Act
+        Money money = Money.of(new BigDecimal("12.3"));
+
+        // Assert
+        assertEquals(1230, money.minorUnits());
+        assertEquals(new BigDecimal("12.30"), money.toBigDecimal());
+        assertEquals("12.30", money.toString());
+        assertEquals(money, Money.of(new BigDecimal("12.300")));
+    }
+
+    @Test
+    void of_TooManyDecimals_ThrowsException() {
+        // Act & Assert
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("0.005")));
+    }
+
+    @Test
+    void of_TooLarge_ThrowsException() {
+        // Act & Assert
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("92233720368547758.08")));
+    }
+
+    @Test
+    void arithmetic_MatchesBigDecimal() {
+        // Arrange
+        Money balance = Money.of(new BigDecimal("100.10"));
+        Money amount = Money.of(new BigDecimal("0.25"));
+
+        // Act
+        Money credited = balance.plus(amount);
+        Money debited = balance.minus(amount);
+
+        // Assert
+        assertEquals(new BigDecimal("100.35"), credited.toBigDecimal());
+        assertEquals(new BigDecimal("99.85"), debited.toBigDecimal());
+        assertEquals(-1, amount.negate().signum());
+        assertTrue(debited.compareTo(credited) < 0);
+    }
+
+    @Test
+    void plus_Overflow_ThrowsException() {
+        // Arrange
+        Money max = new Money(Long.MAX_VALUE);
+
+        // Act & Assert
+        assertThrows(ArithmeticException.class, () -> max.plus(new Money(1)));
+    }
+}
@@ -0,0 +1,38 @@
+package dev.dwidi.walletservice.logging;
+
+import dev.dwidi.walletservice.dto.user.UserRequestDTO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PiiMaskerTest {
+
+    @Test
+    void maskEmail_KeepsFirstCharacterAndDomain() {
+        assertEquals("j***@example.com", PiiMasker.maskEmail("john.doe@example.com"));
+        assertEquals("***", PiiMasker.maskEmail("not-an-email"));
+        assertNull(PiiMasker.maskEmail(null));
+    }
+
+    @Test
+    void maskPhoneNumber_KeepsLastTwoDigits() {
+        assertEquals("***90", PiiMasker.maskPhoneNumber("+1234567890"));
+        assertEquals("***", PiiMasker.maskPhoneNumber("12"));
+        assertNull(PiiMasker.maskPhoneNumber(null));
+    }
+
+    @Test
+    void userRequestToString_MasksEmailAndPhoneNumber() {
+        // Arrange
+        UserRequestDTO userRequestDTO = new UserRequestDTO("John Doe", "john.doe@example.com", "+1234567890");
+
+        // Act
+        String logged = userRequestDTO.toString();
+
+        // Assert
+        assertFalse(logged.contains("john.doe@example.com"));
+        assertFalse(logged.contains("+1234567890"));
+        assertTrue(logged.contains("email=j***@example.com"));
+        assertTrue(logged.contains("phoneNumber=***90"));
+    }
+}
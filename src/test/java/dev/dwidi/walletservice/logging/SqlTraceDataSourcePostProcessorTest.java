@@ -0,0 +1,65 @@
+package dev.dwidi.walletservice.logging;
+
+import org.h2.jdbc.JdbcConnection;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlTraceDataSourcePostProcessorTest {
+
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:sql_trace;DB_CLOSE_DELAY=-1");
+    }
+
+    @Test
+    void postProcessAfterInitialization_SamplingOff_ReturnsDataSourceUnchanged() {
+        // Act
+        Object processed = new SqlTraceDataSourcePostProcessor(0).postProcessAfterInitialization(dataSource, "dataSource");
+
+        // Assert
+        assertSame(dataSource, processed);
+    }
+
+    @Test
+    void postProcessAfterInitialization_SamplingOn_TracedStatementsBehaveLikeTheDriver() throws Exception {
+        // Arrange
+        DataSource traced = (DataSource) new SqlTraceDataSourcePostProcessor(1).postProcessAfterInitialization(dataSource, "dataSource");
+
+        // Act & Assert
+        assertNotSame(dataSource, traced);
+        assertSame(dataSource, traced.unwrap(JdbcDataSource.class));
+        try (Connection connection = traced.getConnection()) {
+            assertNotNull(connection.unwrap(JdbcConnection.class));
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS wallet (id BIGINT PRIMARY KEY, balance DECIMAL)");
+                statement.execute("DELETE FROM wallet");
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO wallet (id, balance) VALUES (?, ?)")) {
+                for (long id = 1; id <= 3; id++) {
+                    insert.setLong(1, id);
+                    insert.setLong(2, id * 100);
+                    insert.addBatch();
+                }
+                assertArrayEquals(new int[]{1, 1, 1}, insert.executeBatch());
+            }
+            try (PreparedStatement select = connection.prepareStatement("SELECT SUM(balance) FROM wallet");
+                 ResultSet resultSet = select.executeQuery()) {
+                assertTrue(resultSet.next());
+                assertEquals(600, resultSet.getLong(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package dev.dwidi.walletservice.metrics;
+
+import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.exception.InsufficientBalanceException;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Outcome;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Phase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalletMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private WalletMetrics walletMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        walletMetrics = new WalletMetrics(meterRegistry);
+    }
+
+    @Test
+    void record_Success_TimesOperationWithSuccessOutcome() {
+        // Act
+        String result = walletMetrics.record(Operation.TOPUP, () -> "done");
+        walletMetrics.record(Operation.TOPUP, () -> "done");
+
+        // Assert
+        assertEquals("done", result);
+        assertEquals(2, meterRegistry.get("wallet.operation").tag("operation", "topup").tag("outcome", "success").timer().count());
+        assertTrue(meterRegistry.find("wallet.rejections").counters().isEmpty());
+    }
+
+    @Test
+    void record_InsufficientBalance_TimesOperationAndCountsRejection() {
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> walletMetrics.record(Operation.BILLPAYMENT, () -> {
+            throw new InsufficientBalanceException();
+        }));
+        assertEquals("Insufficient balance", exception.getMessage());
+        assertEquals(1, meterRegistry.get("wallet.operation")
+                .tag("operation", "billpayment").tag("outcome", "insufficient_balance").timer().count());
+        assertEquals(1, meterRegistry.get("wallet.rejections")
+                .tag("operation", "billpayment").tag("reason", "insufficient_balance").counter().count());
+    }
+
+    @Test
+    void record_ReturnedConflict_IsTaggedAsConflict() {
+        // Act
+        walletMetrics.record(Operation.USER_CREATE, () -> new BaseResponseDTO<>(HttpStatus.CONFLICT.value(), "Email or phone number already exist", null));
+        walletMetrics.record(Operation.USER_CREATE, () -> new BaseResponseDTO<>(HttpStatus.CREATED.value(), "User successfully created", null));
+
+        // Assert
+        assertEquals(1, meterRegistry.get("wallet.operation").tag("operation", "user_create").tag("outcome", "conflict").timer().count());
+        assertEquals(1, meterRegistry.get("wallet.operation").tag("operation", "user_create").tag("outcome", "success").timer().count());
+        assertTrue(meterRegistry.find("wallet.rejections").counters().isEmpty());
+    }
+
+    @Test
+    void record_MessageAloneDoesNotDecideOutcome() {
+        // Act
+        assertThrows(RuntimeException.class, () -> walletMetrics.record(Operation.TOPUP, () -> {
+            throw new RuntimeException("User not found");
+        }));
+
+        // Assert
+        assertEquals(1, meterRegistry.get("wallet.operation").tag("operation", "topup").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    void record_UnexpectedFailure_IsTaggedAsErrorWithoutRejection() {
+        // Act
+        assertThrows(IllegalStateException.class, () -> walletMetrics.record(Operation.USER_EDIT, () -> {
+            throw new IllegalStateException("connection reset");
+        }));
+
+        // Assert
+        assertEquals(1, meterRegistry.get("wallet.operation").tag("operation", "user_edit").tag("outcome", "error").timer().count());
+        assertTrue(meterRegistry.find("wallet.rejections").counters().isEmpty());
+    }
+
+    @Test
+    void recordPhase_AccumulatesTimePerOperationAndPhase() {
+        // Act
+        walletMetrics.recordPhase(Operation.BATCH, Phase.LEDGER_INSERT, TimeUnit.MILLISECONDS.toNanos(3));
+        walletMetrics.recordPhase(Operation.BATCH, Phase.LEDGER_INSERT, TimeUnit.MILLISECONDS.toNanos(5));
+        walletMetrics.rejected(Operation.BATCH, Outcome.NOT_FOUND);
+        walletMetrics.rejected(Operation.BATCH, Outcome.SUCCESS);
+
+        // Assert
+        assertEquals(8, meterRegistry.get("wallet.operation.phase")
+                .tag("operation", "batch").tag("phase", "ledger_insert").timer().totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1, meterRegistry.get("wallet.rejections").counters().size());
+    }
+}
@@ -0,0 +1,168 @@
+package dev.dwidi.walletservice.repository;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.SessionEventListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class TransactionRepositoryTest {
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setFullName("John Doe");
+        user.setEmail("john.doe@example.com");
+        user.setPhoneNumber("+1234567890");
+        userRepository.saveAndFlush(user);
+    }
+
+    @Test
+    void saveAll_LedgerInserts_SentAsSingleJdbcBatch() {
+        // Arrange
+        JdbcCounter counter = new JdbcCounter();
+        entityManager.unwrap(Session.class).addEventListeners(counter);
+
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setUser(user);
+            transaction.setTransactionCategory(TransactionCategory.TOPUP);
+            transaction.setAmount(Money.of(BigDecimal.TEN));
+            transaction.setLastBalance(Money.of(BigDecimal.TEN.multiply(BigDecimal.valueOf(i + 1))));
+            transactions.add(transaction);
+        }
+
+        // Act
+        transactionRepository.saveAll(transactions);
+        entityManager.flush();
+
+        // Assert: all 20 inserts go out in one batch, ids come from at most one sequence call
+        assertEquals(1, counter.batches);
+        assertTrue(counter.statements <= 1, "Expected at most one sequence call, got " + counter.statements);
+        assertTrue(transactions.stream().allMatch(transaction -> transaction.getId() != null));
+        assertEquals(20, transactionRepository.count());
+    }
+
+    @Test
+    void findHistory_SeeksPastCursorNewestFirst() {
+        // Arrange
+        for (int i = 1; i <= 5; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setUser(user);
+            transaction.setTransactionCategory(TransactionCategory.TOPUP);
+            transaction.setAmount(Money.of(BigDecimal.valueOf(i)));
+            transaction.setLastBalance(Money.of(BigDecimal.valueOf(i)));
+            transactionRepository.save(transaction);
+        }
+        entityManager.flush();
+
+        // Act
+        List<TransactionResponseDTO> first = transactionRepository.findHistory(user.getId(), null, null, null, null, null, 3);
+        TransactionResponseDTO last = first.getLast();
+        List<TransactionResponseDTO> second = transactionRepository.findHistory(user.getId(), null, null, null,
+                last.getCreatedAt(), last.getId(), 3);
+
+        // Assert
+        assertEquals(3, first.size());
+        assertEquals(0, BigDecimal.valueOf(5).compareTo(first.getFirst().getAmount()));
+        assertEquals(2, second.size());
+        assertEquals(0, BigDecimal.valueOf(2).compareTo(second.getFirst().getAmount()));
+        assertEquals(0, BigDecimal.ONE.compareTo(second.getLast().getAmount()));
+    }
+
+    @Test
+    void findHistory_AppliesCategoryAndDateRangeFilters() {
+        // Arrange
+        TransactionCategory[] categories = {TransactionCategory.TOPUP, TransactionCategory.BILLPAYMENT, TransactionCategory.TOPUP};
+        for (TransactionCategory category : categories) {
+            Transaction transaction = new Transaction();
+            transaction.setUser(user);
+            transaction.setTransactionCategory(category);
+            transaction.setAmount(Money.of(BigDecimal.ONE));
+            transactionRepository.save(transaction);
+        }
+        entityManager.flush();
+        LocalDateTime now = LocalDateTime.now();
+
+        // Act
+        List<TransactionResponseDTO> topUps = transactionRepository.findHistory(user.getId(), TransactionCategory.TOPUP,
+                now.minusDays(1), now.plusDays(1), null, null, 10);
+        List<TransactionResponseDTO> future = transactionRepository.findHistory(user.getId(), null,
+                now.plusDays(1), null, null, null, 10);
+
+        // Assert
+        assertEquals(2, topUps.size());
+        assertTrue(topUps.stream().allMatch(transaction -> transaction.getTransactionCategory() == TransactionCategory.TOPUP));
+        assertTrue(future.isEmpty());
+    }
+
+    @Test
+    void deleteByUserId_RemovesLedgerWithoutLoadingIt() {
+        // Arrange
+        for (int i = 0; i < 3; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setUser(user);
+            transaction.setTransactionCategory(TransactionCategory.TOPUP);
+            transaction.setAmount(Money.of(BigDecimal.ONE));
+            transactionRepository.save(transaction);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // Act
+        int deletedTransactions = transactionRepository.deleteByUserId(user.getId());
+        int deletedUsers = userRepository.deleteWalletById(user.getId());
+
+        // Assert
+        assertEquals(3, deletedTransactions);
+        assertEquals(1, deletedUsers);
+        assertEquals(0, transactionRepository.count());
+        assertFalse(userRepository.existsById(user.getId()));
+    }
+
+    private static class JdbcCounter implements SessionEventListener {
+        private int batches;
+        private int statements;
+
+        @Override
+        public void jdbcExecuteBatchStart() {
+            batches++;
+        }
+
+        @Override
+        public void jdbcExecuteStatementStart() {
+            statements++;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package dev.dwidi.walletservice.repository.archive;
+
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerArchiveRepositoryTest {
+
+    private static final YearMonth MAY = YearMonth.of(2024, 5);
+    private static final YearMonth JUNE = YearMonth.of(2024, 6);
+
+    @TempDir
+    private Path directory;
+
+    private LedgerArchiveRepository ledgerArchiveRepository;
+    private List<Transaction> may;
+    private List<Transaction> june;
+
+    @BeforeEach
+    void setUp() {
+        ledgerArchiveRepository = new LedgerArchiveRepository(true, directory.toString());
+        // Enough rows for several blocks; user 1 has every third row, users 2 and 3 share the rest
+        may = transactions(MAY, 1, 2500);
+        june = transactions(JUNE, 2501, 100);
+        ledgerArchiveRepository.write(MAY, consumer -> may.forEach(consumer));
+        ledgerArchiveRepository.write(JUNE, consumer -> june.forEach(consumer));
+    }
+
+    @Test
+    void write_RoundTripsEveryColumn() {
+        // Act
+        List<Transaction> archived = new ArrayList<>();
+        ledgerArchiveRepository.streamLedger(null, null, null, archived::add);
+
+        // Assert
+        List<Transaction> expected = new ArrayList<>(may);
+        expected.addAll(june);
+        assertEquals(expected.size(), archived.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameTransaction(expected.get(i), archived.get(i));
+        }
+        assertEquals(2500, ledgerArchiveRepository.rowCount(MAY));
+        assertEquals(-1, ledgerArchiveRepository.rowCount(YearMonth.of(2024, 7)));
+    }
+
+    @Test
+    void streamLedger_OneUserInRange_ReturnsOnlyTheirRowsInOrder() {
+        // Arrange
+        LocalDateTime from = MAY.atDay(10).atStartOfDay();
+        LocalDateTime to = JUNE.atDay(1).atStartOfDay().plusHours(1);
+
+        // Act
+        List<Transaction> archived = new ArrayList<>();
+        ledgerArchiveRepository.streamLedger(1L, from, to, archived::add);
+
+        // Assert
+        List<Long> expected = new ArrayList<>();
+        for (Transaction transaction : concat(may, june)) {
+            if (transaction.getUser().getId() == 1L && !transaction.getCreatedAt().isBefore(from) && transaction.getCreatedAt().isBefore(to)) {
+                expected.add(transaction.getId());
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, archived.stream().map(Transaction::getId).toList());
+    }
+
+    @Test
+    void findHistory_PagesNewestFirstAcrossMonths() {
+        // Arrange
+        List<Long> expected = concat(may, june).stream()
+                .filter(transaction -> transaction.getUser().getId() == 1L)
+                .sorted(Comparator.comparing(Transaction::getCreatedAt).thenComparing(Transaction::getId).reversed())
+                .map(Transaction::getId)
+                .toList();
+
+        // Act: pages of 100, each starting after the last row of the previous one
+        List<Long> pages = new ArrayList<>();
+        List<Transaction> page = ledgerArchiveRepository.findHistory(1L, null, null, null, null, null, 100);
+        while (!page.isEmpty()) {
+            page.forEach(transaction -> pages.add(transaction.getId()));
+            Transaction last = page.getLast();
+            page = ledgerArchiveRepository.findHistory(1L, null, null, null, last.getCreatedAt(), last.getId(), 100);
+        }
+
+        // Assert
+        assertEquals(expected, pages);
+    }
+
+    @Test
+    void findHistory_ByCategory_SkipsOtherCategories() {
+        // Act
+        List<Transaction> history = ledgerArchiveRepository.findHistory(2L, TransactionCategory.BILLPAYMENT, null, null, null, null, 1000);
+
+        // Assert
+        assertFalse(history.isEmpty());
+        assertTrue(history.stream().allMatch(transaction -> transaction.getTransactionCategory() == TransactionCategory.BILLPAYMENT
+                && transaction.getUser().getId() == 2L));
+    }
+
+    @Test
+    void reload_MapsMonthsWrittenByAnotherInstance() throws IOException {
+        // Arrange: an instance that mapped the directory before the month was written, and an unfinished staging directory
+        Path shared = directory.resolve("shared");
+        LedgerArchiveRepository other = new LedgerArchiveRepository(true, shared.toString());
+        new LedgerArchiveRepository(true, shared.toString()).write(MAY, consumer -> may.forEach(consumer));
+        Path staging = Files.createDirectories(shared.resolve("2024-07.tmp"));
+        Files.writeString(staging.resolve("part-00000.seg"), "partial");
+        assertEquals(-1, other.rowCount(MAY));
+
+        // Act
+        other.reload();
+
+        // Assert
+        assertEquals(2500, other.rowCount(MAY));
+        assertEquals(-1, other.rowCount(YearMonth.of(2024, 7)));
+        assertEquals(3, other.findHistory(3L, null, null, null, null, null, 3).size());
+    }
+
+    @Test
+    void reads_MapMonthsWrittenByAnotherInstanceSinceLastReload() {
+        // Arrange: an instance that mapped the directory before another one archived May
+        Path shared = directory.resolve("shared");
+        LedgerArchiveRepository other = new LedgerArchiveRepository(true, shared.toString());
+        new LedgerArchiveRepository(true, shared.toString()).write(MAY, consumer -> may.forEach(consumer));
+
+        // Act
+        List<Transaction> history = other.findHistory(3L, null, null, null, null, null, 3);
+        List<Transaction> exported = new ArrayList<>();
+        other.streamLedger(null, null, null, exported::add);
+
+        // Assert
+        assertEquals(3, history.size());
+        assertEquals(may.size(), exported.size());
+        assertEquals(2500, other.rowCount(MAY));
+    }
+
+    @Test
+    void disabled_HasNoMonths() {
+        // Arrange
+        LedgerArchiveRepository disabled = new LedgerArchiveRepository(false, directory.toString());
+
+        // Act
+        List<Transaction> history = disabled.findHistory(1L, null, null, null, null, null, 10);
+
+        // Assert
+        assertTrue(history.isEmpty());
+        assertEquals(-1, disabled.rowCount(MAY));
+    }
+
+    private static List<Transaction> transactions(YearMonth month, long firstId, int count) {
+        List<Transaction> transactions = new ArrayList<>();
+        LocalDateTime createdAt = month.atDay(1).atStartOfDay();
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setId(i % 3 == 0 ? 1L : 2L + i % 2);
+
+            Transaction transaction = new Transaction();
+            transaction.setId(firstId + i);
+            transaction.setUser(user);
+            transaction.setTransactionCategory(i % 5 == 0 ? TransactionCategory.BILLPAYMENT : TransactionCategory.TOPUP);
+            transaction.setCurrency(i % 7 == 0 ? "USD" : "IDR");
+            transaction.setAmount(new Money(i % 5 == 0 ? -1_550 : 10_000 + i));
+            transaction.setLastBalance(new Money(1_000_000 + i));
+            transaction.setIdempotencyKey(i % 4 == 0 ? "key-" + i : null);
+            transaction.setLedgerSequence(i % 2 == 0 ? (long) i : null);
+            transaction.setCounterpartyUserId(i % 11 == 0 ? 99L : null);
+            // Rows share a timestamp now and then, so the id has to break the tie
+            transaction.setCreatedAt(createdAt.plusSeconds(i / 2 * 900L).plusNanos(123_456_000));
+            transaction.setUpdatedAt(transaction.getCreatedAt().plusNanos(i % 3 * 1_000));
+            transactions.add(transaction);
+        }
+        transactions.sort(Comparator.comparing(Transaction::getCreatedAt).thenComparing(Transaction::getId));
+        return transactions;
+    }
+
+    private static List<Transaction> concat(List<Transaction> first, List<Transaction> second) {
+        List<Transaction> all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    private static void assertSameTransaction(Transaction expected, Transaction actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getUser().getId(), actual.getUser().getId());
+        assertEquals(expected.getTransactionCategory(), actual.getTransactionCategory());
+        assertEquals(expected.getCurrency(), actual.getCurrency());
+        assertEquals(expected.getAmount(), actual.getAmount());
+        assertEquals(expected.getLastBalance(), actual.getLastBalance());
+        assertEquals(expected.getIdempotencyKey(), actual.getIdempotencyKey());
+        assertEquals(expected.getLedgerSequence(), actual.getLedgerSequence());
+        assertEquals(expected.getCounterpartyUserId(), actual.getCounterpartyUserId());
+        assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+    }
+}
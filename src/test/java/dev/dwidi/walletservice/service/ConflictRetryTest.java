@@ -0,0 +1,80 @@
+package dev.dwidi.walletservice.service;
+
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConflictRetryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ConflictRetry conflictRetry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        conflictRetry = new ConflictRetry(new WalletMetrics(meterRegistry), 3, Duration.ofMillis(1), Duration.ofMillis(2));
+    }
+
+    @Test
+    void execute_ConflictThenSuccess_Retried() {
+        // Arrange
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act
+        String result = conflictRetry.execute(Operation.USER_EDIT, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException("User", 1L);
+            }
+            return "saved";
+        });
+
+        // Assert
+        assertEquals("saved", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, conflicts("retried"));
+        assertEquals(0, conflicts("exhausted"));
+    }
+
+    @Test
+    void execute_ConflictOnEveryAttempt_GivesUp() {
+        // Arrange
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act & Assert
+        assertThrows(CannotAcquireLockException.class, () -> conflictRetry.execute(Operation.BATCH, () -> {
+            attempts.incrementAndGet();
+            throw new CannotAcquireLockException("deadlock detected");
+        }));
+        assertEquals(3, attempts.get());
+        assertEquals(1, conflicts("exhausted"));
+    }
+
+    @Test
+    void execute_OtherFailure_NotRetried() {
+        // Arrange
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act & Assert
+        assertThrows(DataIntegrityViolationException.class, () -> conflictRetry.execute(Operation.TOPUP, () -> {
+            attempts.incrementAndGet();
+            throw new DataIntegrityViolationException("duplicate key");
+        }));
+        assertEquals(1, attempts.get());
+        assertNull(meterRegistry.find("wallet.conflicts").counter());
+    }
+
+    private double conflicts(String resolution) {
+        var counter = meterRegistry.find("wallet.conflicts").tag("resolution", resolution).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
@@ -0,0 +1,94 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.enums.LedgerMode;
+import dev.dwidi.walletservice.repository.LedgerHead;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AppendOnlyLedgerTest {
+
+    private static final BalanceKey WALLET_1 = new BalanceKey(1L, "IDR");
+    private static final BalanceKey WALLET_2 = new BalanceKey(2L, "IDR");
+
+    @Mock
+    private UserJdbcRepository userJdbcRepository;
+
+    @Test
+    void appended_SnapshotsOnlyBalancesWhoseTailReachedTheThreshold() {
+        // Arrange
+        AppendOnlyLedger appendOnlyLedger = new AppendOnlyLedger(userJdbcRepository, LedgerMode.APPEND, 3);
+        LedgerHead due = new LedgerHead(Money.of(BigDecimal.valueOf(30)), 4, 1);
+        LedgerHead notDue = new LedgerHead(Money.of(BigDecimal.valueOf(20)), 5, 3);
+        LocalDateTime now = LocalDateTime.now();
+
+        // Act
+        appendOnlyLedger.appended(Map.of(WALLET_1, due, WALLET_2, notDue), now);
+
+        // Assert
+        verify(userJdbcRepository).snapshotBalances(Map.of(WALLET_1, due), now);
+    }
+
+    @Test
+    void appended_FirstAppendInACurrency_CreatesTheBalanceRow() {
+        // Arrange
+        AppendOnlyLedger appendOnlyLedger = new AppendOnlyLedger(userJdbcRepository, LedgerMode.APPEND, 100);
+        BalanceKey usd = new BalanceKey(1L, "USD");
+        LedgerHead first = new LedgerHead(Money.of(BigDecimal.TEN), 1, 0);
+        LocalDateTime now = LocalDateTime.now();
+
+        // Act
+        appendOnlyLedger.appended(Map.of(usd, first), now);
+
+        // Assert
+        verify(userJdbcRepository).snapshotBalances(Map.of(usd, first), now);
+    }
+
+    @Test
+    void appended_NothingDue_DoesNotTouchWalletRows() {
+        // Arrange
+        AppendOnlyLedger appendOnlyLedger = new AppendOnlyLedger(userJdbcRepository, LedgerMode.APPEND, 100);
+
+        // Act
+        appendOnlyLedger.appended(Map.of(WALLET_1, new LedgerHead(Money.of(BigDecimal.TEN), 99, 1)), LocalDateTime.now());
+
+        // Assert
+        verify(userJdbcRepository, never()).snapshotBalances(anyMap(), any());
+    }
+
+    @Test
+    void lock_UserNotFound() {
+        // Arrange
+        AppendOnlyLedger appendOnlyLedger = new AppendOnlyLedger(userJdbcRepository, LedgerMode.APPEND, 100);
+        when(userJdbcRepository.lockLedgerHeads(List.of(WALLET_1))).thenReturn(Map.of());
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> appendOnlyLedger.lock(WALLET_1));
+        assertEquals("User not found", exception.getMessage());
+    }
+
+    @Test
+    void foldTailsInUpdateMode_OnlyFoldsInUpdateMode() {
+        // Act
+        new AppendOnlyLedger(userJdbcRepository, LedgerMode.APPEND, 100).foldTailsInUpdateMode();
+        new AppendOnlyLedger(userJdbcRepository, LedgerMode.UPDATE, 100).foldTailsInUpdateMode();
+
+        // Assert
+        verify(userJdbcRepository, times(1)).foldLedgerTails();
+    }
+}
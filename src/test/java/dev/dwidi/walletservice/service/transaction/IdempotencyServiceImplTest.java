@@ -0,0 +1,153 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.repository.TransactionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceImplTest {
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    private IdempotencyServiceImpl idempotencyService;
+
+    private WalletMutation topUp;
+    private TransactionResponseDTO topUpResponse;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyServiceImpl(transactionRepository, 100, Duration.ofMinutes(1));
+
+        topUp = new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.valueOf(100)), "key-1");
+        topUpResponse = TransactionResponseDTO.builder()
+                .id(10L)
+                .transactionCategory(TransactionCategory.TOPUP)
+                .currency("IDR")
+                .amount(BigDecimal.valueOf(100))
+                .lastBalance(BigDecimal.valueOf(1100))
+                .build();
+    }
+
+    @Test
+    void execute_WithoutKey_AlwaysRunsAction() {
+        // Arrange
+        WalletMutation withoutKey = new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.valueOf(100)));
+        AtomicInteger calls = new AtomicInteger();
+        Function<WalletMutation, TransactionResponseDTO> action = mutation -> {
+            calls.incrementAndGet();
+            return topUpResponse;
+        };
+
+        // Act
+        idempotencyService.execute(withoutKey, action);
+        idempotencyService.execute(withoutKey, action);
+
+        // Assert
+        assertEquals(2, calls.get());
+        verifyNoInteractions(transactionRepository);
+    }
+
+    @Test
+    void execute_RepeatedKey_ReturnsCachedResultWithoutRunningAction() {
+        // Arrange
+        AtomicInteger calls = new AtomicInteger();
+        Function<WalletMutation, TransactionResponseDTO> action = mutation -> {
+            calls.incrementAndGet();
+            return topUpResponse;
+        };
+
+        // Act
+        TransactionResponseDTO first = idempotencyService.execute(topUp, action);
+        TransactionResponseDTO retry = idempotencyService.execute(topUp, action);
+
+        // Assert
+        assertEquals(1, calls.get());
+        assertSame(first, retry);
+        verifyNoInteractions(transactionRepository);
+    }
+
+    @Test
+    void execute_DuplicateRejectedByDatabase_ReturnsStoredTransaction() {
+        // Arrange
+        Transaction stored = new Transaction();
+        stored.setId(10L);
+        stored.setTransactionCategory(TransactionCategory.TOPUP);
+        stored.setCurrency("IDR");
+        stored.setAmount(Money.of(BigDecimal.valueOf(100)));
+        stored.setLastBalance(Money.of(BigDecimal.valueOf(1100)));
+        stored.setIdempotencyKey("key-1");
+        stored.setCreatedAt(LocalDateTime.now());
+        stored.setUpdatedAt(LocalDateTime.now());
+        when(transactionRepository.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.of(stored));
+
+        // Act
+        TransactionResponseDTO result = idempotencyService.execute(topUp, mutation -> {
+            throw new DataIntegrityViolationException("uk_transaction_user_idempotency_key");
+        });
+
+        // Assert
+        assertEquals(10L, result.getId());
+        assertEquals(0, BigDecimal.valueOf(1100).compareTo(result.getLastBalance()));
+        verify(transactionRepository).findByUserIdAndIdempotencyKey(1L, "key-1");
+    }
+
+    @Test
+    void execute_OtherIntegrityViolation_IsRethrown() {
+        // Arrange
+        when(transactionRepository.findByUserIdAndIdempotencyKey(anyLong(), anyString())).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThrows(DataIntegrityViolationException.class, () ->
+                idempotencyService.execute(topUp, mutation -> {
+                    throw new DataIntegrityViolationException("fk_transaction_user");
+                })
+        );
+    }
+
+    @Test
+    void execute_KeyReusedForDifferentTransaction_ThrowsException() {
+        // Arrange
+        idempotencyService.execute(topUp, mutation -> topUpResponse);
+        WalletMutation bill = new WalletMutation(1L, "IDR", TransactionCategory.BILLPAYMENT, Money.of(BigDecimal.valueOf(100)), "key-1");
+
+        // Act & Assert
+        Exception exception = assertThrows(RuntimeException.class, () ->
+                idempotencyService.execute(bill, mutation -> topUpResponse)
+        );
+        assertEquals("Idempotency key already used for a different transaction", exception.getMessage());
+    }
+
+    @Test
+    void execute_KeyReusedForOtherCurrency_ThrowsException() {
+        // Arrange
+        idempotencyService.execute(topUp, mutation -> topUpResponse);
+        WalletMutation usdTopUp = new WalletMutation(1L, "USD", TransactionCategory.TOPUP, Money.of(BigDecimal.valueOf(100)), "key-1");
+
+        // Act & Assert
+        Exception exception = assertThrows(RuntimeException.class, () ->
+                idempotencyService.execute(usdTopUp, mutation -> topUpResponse)
+        );
+        assertEquals("Idempotency key already used for a different transaction", exception.getMessage());
+    }
+}
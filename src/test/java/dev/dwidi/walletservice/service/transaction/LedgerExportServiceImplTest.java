@@ -0,0 +1,196 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.LedgerExportRequestDTO;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.enums.ExportFormat;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.repository.TransactionJdbcRepository;
+import dev.dwidi.walletservice.repository.WalletTombstoneRepository;
+import dev.dwidi.walletservice.repository.archive.LedgerArchiveRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerExportServiceImplTest {
+
+    @Mock
+    private TransactionJdbcRepository transactionJdbcRepository;
+
+    @Mock
+    private LedgerArchiveRepository ledgerArchiveRepository;
+
+    @Mock
+    private WalletTombstoneRepository walletTombstoneRepository;
+
+    private LedgerExportServiceImpl ledgerExportService;
+
+    private LocalDateTime from;
+    private LocalDateTime to;
+
+    @BeforeEach
+    void setUp() {
+        ledgerExportService = new LedgerExportServiceImpl(transactionJdbcRepository, ledgerArchiveRepository, walletTombstoneRepository, 500);
+        from = LocalDateTime.of(2024, 5, 1, 0, 0);
+        to = LocalDateTime.of(2024, 6, 1, 0, 0);
+    }
+
+    @Test
+    void exportLedger_Csv_WritesHeaderAndOneLinePerTransaction() throws IOException {
+        // Arrange
+        stubTwoTransactions();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ledgerExportService.exportLedger(new LedgerExportRequestDTO(7L, from, to, ExportFormat.CSV), out);
+
+        // Assert
+        assertEquals("""
+                id,user_id,transaction_category,currency,amount,last_balance,created_at,counterparty_user_id
+                1,7,TOPUP,IDR,100.00,100.00,2024-05-02T10:15:30,
+                2,7,BILLPAYMENT,IDR,25.50,74.50,2024-05-02T10:15:30,
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportLedger_Ndjson_WritesOneObjectPerLine() throws IOException {
+        // Arrange
+        stubTwoTransactions();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ledgerExportService.exportLedger(new LedgerExportRequestDTO(7L, from, to, ExportFormat.NDJSON), out);
+
+        // Assert
+        assertEquals("""
+                {"id":1,"userId":7,"transactionCategory":"TOPUP","currency":"IDR","amount":100.00,"lastBalance":100.00,"createdAt":"2024-05-02T10:15:30","counterpartyUserId":null}
+                {"id":2,"userId":7,"transactionCategory":"BILLPAYMENT","currency":"IDR","amount":25.50,"lastBalance":74.50,"createdAt":"2024-05-02T10:15:30","counterpartyUserId":null}
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportLedger_GlobalRange_StreamsWithoutUserFilter() throws IOException {
+        // Arrange
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ledgerExportService.exportLedger(new LedgerExportRequestDTO(null, from, null, ExportFormat.CSV), out);
+
+        // Assert
+        verify(transactionJdbcRepository).streamLedger(isNull(), eq(from), isNull(), eq(500), any());
+        assertEquals("id,user_id,transaction_category,currency,amount,last_balance,created_at,counterparty_user_id\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportLedger_WithArchivedMonths_WritesArchivedRowsFirst() throws IOException {
+        // Arrange
+        when(ledgerArchiveRepository.isEnabled()).thenReturn(true);
+        doAnswer(invocation -> {
+            Consumer<Transaction> consumer = invocation.getArgument(3);
+            consumer.accept(transaction(1L, TransactionCategory.TOPUP, "100.00", "100.00"));
+            return null;
+        }).when(ledgerArchiveRepository).streamLedger(eq(7L), eq(from), eq(to), any());
+        doAnswer(invocation -> {
+            Consumer<Transaction> consumer = invocation.getArgument(4);
+            consumer.accept(transaction(2L, TransactionCategory.BILLPAYMENT, "25.50", "74.50"));
+            return null;
+        }).when(transactionJdbcRepository).streamLedger(eq(7L), eq(from), eq(to), eq(500), any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ledgerExportService.exportLedger(new LedgerExportRequestDTO(7L, from, to, ExportFormat.CSV), out);
+
+        // Assert
+        InOrder inOrder = inOrder(ledgerArchiveRepository, transactionJdbcRepository);
+        inOrder.verify(ledgerArchiveRepository).streamLedger(eq(7L), eq(from), eq(to), any());
+        inOrder.verify(transactionJdbcRepository).streamLedger(eq(7L), eq(from), eq(to), eq(500), any());
+        assertEquals("""
+                id,user_id,transaction_category,currency,amount,last_balance,created_at,counterparty_user_id
+                1,7,TOPUP,IDR,100.00,100.00,2024-05-02T10:15:30,
+                2,7,BILLPAYMENT,IDR,25.50,74.50,2024-05-02T10:15:30,
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportLedger_GlobalRange_SkipsArchivedRowsOfDeletedUsers() throws IOException {
+        // Arrange
+        Transaction deleted = transaction(1L, TransactionCategory.TOPUP, "100.00", "100.00");
+        deleted.getUser().setId(8L);
+        when(ledgerArchiveRepository.isEnabled()).thenReturn(true);
+        when(walletTombstoneRepository.findAllUserIds()).thenReturn(Set.of(8L));
+        doAnswer(invocation -> {
+            Consumer<Transaction> consumer = invocation.getArgument(3);
+            consumer.accept(deleted);
+            consumer.accept(transaction(2L, TransactionCategory.BILLPAYMENT, "25.50", "74.50"));
+            return null;
+        }).when(ledgerArchiveRepository).streamLedger(isNull(), eq(from), eq(to), any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ledgerExportService.exportLedger(new LedgerExportRequestDTO(null, from, to, ExportFormat.CSV), out);
+
+        // Assert
+        assertEquals("""
+                id,user_id,transaction_category,currency,amount,last_balance,created_at,counterparty_user_id
+                2,7,BILLPAYMENT,IDR,25.50,74.50,2024-05-02T10:15:30,
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportLedger_DeletedUser_SkipsArchive() throws IOException {
+        // Arrange
+        when(ledgerArchiveRepository.isEnabled()).thenReturn(true);
+        when(walletTombstoneRepository.existsById(7L)).thenReturn(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ledgerExportService.exportLedger(new LedgerExportRequestDTO(7L, from, to, ExportFormat.CSV), out);
+
+        // Assert
+        verify(ledgerArchiveRepository, never()).streamLedger(any(), any(), any(), any());
+        assertEquals("id,user_id,transaction_category,currency,amount,last_balance,created_at,counterparty_user_id\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    private void stubTwoTransactions() {
+        doAnswer(invocation -> {
+            Consumer<Transaction> consumer = invocation.getArgument(4);
+            consumer.accept(transaction(1L, TransactionCategory.TOPUP, "100.00", "100.00"));
+            consumer.accept(transaction(2L, TransactionCategory.BILLPAYMENT, "25.50", "74.50"));
+            return null;
+        }).when(transactionJdbcRepository).streamLedger(eq(7L), eq(from), eq(to), eq(500), any());
+    }
+
+    private static Transaction transaction(Long id, TransactionCategory category, String amount, String lastBalance) {
+        User user = new User();
+        user.setId(7L);
+
+        Transaction transaction = new Transaction();
+        transaction.setId(id);
+        transaction.setUser(user);
+        transaction.setTransactionCategory(category);
+        transaction.setCurrency("IDR");
+        transaction.setAmount(Money.of(new BigDecimal(amount)));
+        transaction.setLastBalance(Money.of(new BigDecimal(lastBalance)));
+        transaction.setCreatedAt(LocalDateTime.of(2024, 5, 2, 10, 15, 30));
+        return transaction;
+    }
+}
@@ -0,0 +1,166 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.repository.LedgerPartitionRepository;
+import dev.dwidi.walletservice.repository.archive.LedgerArchiveRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerPartitionManagerTest {
+
+    private static final YearMonth CURRENT_MONTH = YearMonth.of(2026, 10);
+
+    @Mock
+    private LedgerPartitionRepository ledgerPartitionRepository;
+
+    @Mock
+    private AppendOnlyLedger appendOnlyLedger;
+
+    @Mock
+    private LedgerArchiveRepository ledgerArchiveRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void maintain_CreatesMissingMonthsAhead() {
+        // Arrange
+        LedgerPartitionManager manager = manager(0);
+        when(ledgerPartitionRepository.tryLock(Duration.ofSeconds(5))).thenReturn(true);
+        when(ledgerPartitionRepository.findPartitions()).thenReturn(new TreeSet<>(List.of(
+                YearMonth.of(2026, 9), CURRENT_MONTH, YearMonth.of(2026, 11))));
+
+        // Act
+        manager.maintain(CURRENT_MONTH);
+
+        // Assert: three months ahead of October, November already exists
+        verify(ledgerPartitionRepository).createPartition(YearMonth.of(2026, 12));
+        verify(ledgerPartitionRepository).createPartition(YearMonth.of(2027, 1));
+        verify(ledgerPartitionRepository, times(2)).createPartition(any());
+        verify(ledgerPartitionRepository, never()).archivePartition(any());
+    }
+
+    @Test
+    void maintain_WithRetention_ArchivesOlderMonths() {
+        // Arrange
+        LedgerPartitionManager manager = manager(2);
+        when(ledgerPartitionRepository.tryLock(Duration.ofSeconds(5))).thenReturn(true);
+        when(ledgerPartitionRepository.findPartitions()).thenReturn(new TreeSet<>(List.of(
+                YearMonth.of(2026, 6), YearMonth.of(2026, 7), YearMonth.of(2026, 8), YearMonth.of(2026, 9),
+                CURRENT_MONTH, YearMonth.of(2026, 11), YearMonth.of(2026, 12), YearMonth.of(2027, 1))));
+
+        // Act
+        manager.maintain(CURRENT_MONTH);
+
+        // Assert: October plus the two months before it stay in the ledger
+        verify(ledgerPartitionRepository).archivePartition(YearMonth.of(2026, 6));
+        verify(ledgerPartitionRepository).archivePartition(YearMonth.of(2026, 7));
+        verify(ledgerPartitionRepository, times(2)).archivePartition(any());
+        verify(ledgerPartitionRepository, never()).createPartition(any());
+    }
+
+    @Test
+    void maintain_LockHeldByAnotherInstance_ChangesNothing() {
+        // Arrange
+        LedgerPartitionManager manager = manager(2);
+        when(ledgerPartitionRepository.tryLock(Duration.ofSeconds(5))).thenReturn(false);
+
+        // Act
+        manager.maintain(CURRENT_MONTH);
+
+        // Assert
+        verify(ledgerPartitionRepository, never()).findPartitions();
+        verify(ledgerPartitionRepository, never()).createPartition(any());
+        verify(ledgerPartitionRepository, never()).archivePartition(any());
+    }
+
+    @Test
+    void run_AppendModeWithRetention_SnapshotsTailsBeforeArchiving() {
+        // Arrange
+        LedgerPartitionManager manager = manager(2);
+        when(appendOnlyLedger.isEnabled()).thenReturn(true);
+        when(ledgerPartitionRepository.tryLock(Duration.ofSeconds(5))).thenReturn(true);
+        when(ledgerPartitionRepository.findPartitions()).thenReturn(new TreeSet<>());
+
+        // Act
+        manager.run();
+
+        // Assert: transactions older than the oldest kept month leave every tail before any partition changes
+        InOrder inOrder = inOrder(appendOnlyLedger, ledgerPartitionRepository);
+        inOrder.verify(appendOnlyLedger).snapshotTailsCreatedBefore(
+                eq(YearMonth.now().minusMonths(2).atDay(1).atStartOfDay()), any(LocalDateTime.class));
+        inOrder.verify(ledgerPartitionRepository).tryLock(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void archiveToSegments_WritesMonthThenDropsItsPartition() {
+        // Arrange
+        LedgerPartitionManager manager = manager(2);
+        YearMonth month = YearMonth.of(2026, 6);
+        when(ledgerPartitionRepository.tryLock(Duration.ofSeconds(5))).thenReturn(true);
+        when(ledgerPartitionRepository.countArchivedPartition(month)).thenReturn(42L);
+        when(ledgerArchiveRepository.rowCount(month)).thenReturn(-1L);
+        when(ledgerArchiveRepository.write(eq(month), any())).thenReturn(42L);
+
+        // Act
+        manager.archiveToSegments(month);
+
+        // Assert
+        InOrder inOrder = inOrder(ledgerArchiveRepository, ledgerPartitionRepository);
+        inOrder.verify(ledgerArchiveRepository).write(eq(month), any());
+        inOrder.verify(ledgerPartitionRepository).dropArchivedPartition(month);
+    }
+
+    @Test
+    void archiveToSegments_MonthAlreadyWritten_OnlyDropsPartition() {
+        // Arrange: a run that wrote the files but failed before the drop committed
+        LedgerPartitionManager manager = manager(2);
+        YearMonth month = YearMonth.of(2026, 6);
+        when(ledgerPartitionRepository.tryLock(Duration.ofSeconds(5))).thenReturn(true);
+        when(ledgerPartitionRepository.countArchivedPartition(month)).thenReturn(42L);
+        when(ledgerArchiveRepository.rowCount(month)).thenReturn(42L);
+
+        // Act
+        manager.archiveToSegments(month);
+
+        // Assert
+        verify(ledgerArchiveRepository, never()).write(any(), any());
+        verify(ledgerPartitionRepository).dropArchivedPartition(month);
+    }
+
+    @Test
+    void archiveToSegments_WrittenCountDiffers_KeepsPartition() {
+        // Arrange
+        LedgerPartitionManager manager = manager(2);
+        YearMonth month = YearMonth.of(2026, 6);
+        when(ledgerPartitionRepository.tryLock(Duration.ofSeconds(5))).thenReturn(true);
+        when(ledgerPartitionRepository.countArchivedPartition(month)).thenReturn(42L);
+        when(ledgerArchiveRepository.rowCount(month)).thenReturn(-1L);
+        when(ledgerArchiveRepository.write(eq(month), any())).thenReturn(41L);
+
+        // Act
+        manager.archiveToSegments(month);
+
+        // Assert
+        verify(ledgerPartitionRepository, never()).dropArchivedPartition(any());
+    }
+
+    private LedgerPartitionManager manager(int retentionMonths) {
+        return new LedgerPartitionManager(ledgerPartitionRepository, appendOnlyLedger, ledgerArchiveRepository, transactionManager, true, 3,
+                retentionMonths, Duration.ofSeconds(5), 1000);
+    }
+}
@@ -1,66 +1,136 @@
 package dev.dwidi.walletservice.service.transaction;
 
 import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionHistoryRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionHistoryResponseDTO;
 import dev.dwidi.walletservice.dto.transaction.TransactionRequestDTO;
 import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.dto.transaction.TransferRequestDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
 import dev.dwidi.walletservice.entity.Transaction;
 import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.enums.LedgerMode;
 import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.repository.TransactionJdbcRepository;
 import dev.dwidi.walletservice.repository.TransactionRepository;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
 import dev.dwidi.walletservice.repository.UserRepository;
+import dev.dwidi.walletservice.repository.archive.LedgerArchiveRepository;
+import dev.dwidi.walletservice.repository.WalletBalanceRepository;
+import dev.dwidi.walletservice.repository.WalletBalanceShardRepository;
+import dev.dwidi.walletservice.service.ConflictRetry;
+import dev.dwidi.walletservice.service.user.UserCache;
+import dev.dwidi.walletservice.service.user.WalletChangePublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.intThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class TransactionServiceImplTest {
 
+    private static final Long SHARDED_USER_ID = 5L;
+
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private WalletBalanceRepository walletBalanceRepository;
+
     @Mock
     private TransactionRepository transactionRepository;
 
-    @InjectMocks
+    @Mock
+    private TransactionJdbcRepository transactionJdbcRepository;
+
+    @Mock
+    private UserJdbcRepository userJdbcRepository;
+
+    @Mock
+    private WalletBalanceShardRepository walletBalanceShardRepository;
+
+    @Mock
+    private LedgerArchiveRepository ledgerArchiveRepository;
+
+    @Mock
+    private WalletBatchWriter walletBatchWriter;
+
+    @Mock
+    private WalletTransferWriter walletTransferWriter;
+
     private TransactionServiceImpl transactionService;
 
     private User user;
+    private BigDecimal initialBalance;
     private TransactionRequestDTO transactionRequestDTO;
     private Transaction transaction;
 
     @BeforeEach
     void setUp() {
+        WalletMetrics walletMetrics = new WalletMetrics(new SimpleMeterRegistry());
+        AppendOnlyLedger appendOnlyLedger = new AppendOnlyLedger(null, LedgerMode.UPDATE, 100);
+        ShardedBalances shardedBalances = new ShardedBalances(userJdbcRepository, walletBalanceShardRepository, appendOnlyLedger,
+                Set.of(SHARDED_USER_ID), 4);
+        WalletLedgerWriter walletLedgerWriter = new WalletLedgerWriter(userRepository, walletBalanceRepository, transactionRepository, transactionJdbcRepository,
+                new UserCache(new SimpleMeterRegistry(), new WalletChangePublisher(null, false), 100, Duration.ofMinutes(1)), walletMetrics,
+                appendOnlyLedger, shardedBalances);
+        transactionService = new TransactionServiceImpl(
+                new WalletMutationExecutor(walletLedgerWriter, walletMetrics, shardedBalances, 16, 100),
+                new WalletGroupCommitter(walletBatchWriter, walletLedgerWriter, walletMetrics, false, 256, Duration.ofMillis(2), 100),
+                new IdempotencyServiceImpl(transactionRepository, 100, Duration.ofMinutes(1)),
+                walletBatchWriter,
+                walletTransferWriter,
+                transactionRepository,
+                userRepository,
+                ledgerArchiveRepository,
+                walletMetrics,
+                new ConflictRetry(walletMetrics, 3, Duration.ZERO, Duration.ZERO),
+                new CurrencyResolver("IDR"));
+
         // Setup User
         user = new User();
         user.setId(1L);
         user.setFullName("John Doe");
         user.setEmail("john.doe@example.com");
         user.setPhoneNumber("+1234567890");
-        user.setLastBalance(BigDecimal.valueOf(1000));
         user.setCreatedAt(LocalDateTime.now());
         user.setUpdatedAt(LocalDateTime.now());
 
+        // Balance of the wallet in the default currency
+        initialBalance = new BigDecimal("1000.00");
+
         // Setup TransactionRequestDTO
         transactionRequestDTO = new TransactionRequestDTO();
-        transactionRequestDTO.setAmount(BigDecimal.valueOf(100));
+        transactionRequestDTO.setAmount(new BigDecimal("100.00"));
 
         // Setup Transaction
         transaction = new Transaction();
         transaction.setId(1L);
         transaction.setUser(user);
-        transaction.setAmount(BigDecimal.valueOf(100));
+        transaction.setAmount(Money.of(BigDecimal.valueOf(100)));
         transaction.setCreatedAt(LocalDateTime.now());
         transaction.setUpdatedAt(LocalDateTime.now());
     }
@@ -68,7 +138,9 @@ class TransactionServiceImplTest {
     @Test
     void topUpBalance_Success() {
         // Arrange
-        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+        when(walletBalanceRepository.credit(eq(1L), eq("IDR"), eq(transactionRequestDTO.getAmount()), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(initialBalance.add(transactionRequestDTO.getAmount())));
+        when(userRepository.getReferenceById(1L)).thenReturn(user);
         when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> {
             Transaction savedTransaction = invocation.getArgument(0);
             savedTransaction.setId(1L);
@@ -76,9 +148,6 @@ class TransactionServiceImplTest {
             savedTransaction.setUpdatedAt(LocalDateTime.now());
             return savedTransaction;
         });
-        when(userRepository.save(any(User.class))).thenReturn(user);
-
-        BigDecimal initialBalance = user.getLastBalance();
 
         // Act
         BaseResponseDTO<TransactionResponseDTO> response = transactionService.topUpBalance(1L, transactionRequestDTO);
@@ -92,15 +161,17 @@ class TransactionServiceImplTest {
         assertEquals(transactionRequestDTO.getAmount(), response.getData().getAmount());
         assertEquals(initialBalance.add(transactionRequestDTO.getAmount()), response.getData().getLastBalance());
 
-        verify(userRepository).findById(1L);
+        verify(walletBalanceRepository).credit(eq(1L), eq("IDR"), any(BigDecimal.class), any(LocalDateTime.class));
         verify(transactionRepository).save(any(Transaction.class));
-        verify(userRepository).save(any(User.class));
+        verify(userRepository, never()).findById(anyLong());
     }
 
     @Test
     void topUpBalance_UserNotFound_ThrowsException() {
         // Arrange
-        when(userRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(walletBalanceRepository.credit(anyLong(), anyString(), any(BigDecimal.class), any(LocalDateTime.class)))
+                .thenReturn(Optional.empty());
+        when(userRepository.existsById(anyLong())).thenReturn(false);
 
         // Act & Assert
         Exception exception = assertThrows(RuntimeException.class, () ->
@@ -108,15 +179,16 @@ class TransactionServiceImplTest {
         );
         assertEquals("User not found", exception.getMessage());
 
-        verify(userRepository).findById(1L);
+        verify(userRepository).existsById(1L);
         verify(transactionRepository, never()).save(any(Transaction.class));
-        verify(userRepository, never()).save(any(User.class));
     }
 
     @Test
     void refundBalance_Success() {
         // Arrange
-        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+        when(walletBalanceRepository.credit(eq(1L), eq("IDR"), eq(transactionRequestDTO.getAmount()), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(initialBalance.add(transactionRequestDTO.getAmount())));
+        when(userRepository.getReferenceById(1L)).thenReturn(user);
         when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> {
             Transaction savedTransaction = invocation.getArgument(0);
             savedTransaction.setId(1L);
@@ -124,9 +196,6 @@ class TransactionServiceImplTest {
             savedTransaction.setUpdatedAt(LocalDateTime.now());
             return savedTransaction;
         });
-        when(userRepository.save(any(User.class))).thenReturn(user);
-
-        BigDecimal initialBalance = user.getLastBalance();
 
         // Act
         BaseResponseDTO<TransactionResponseDTO> response = transactionService.refundBalance(1L, transactionRequestDTO);
@@ -140,15 +209,17 @@ class TransactionServiceImplTest {
         assertEquals(transactionRequestDTO.getAmount(), response.getData().getAmount());
         assertEquals(initialBalance.add(transactionRequestDTO.getAmount()), response.getData().getLastBalance());
 
-        verify(userRepository).findById(1L);
+        verify(walletBalanceRepository).credit(eq(1L), eq("IDR"), any(BigDecimal.class), any(LocalDateTime.class));
         verify(transactionRepository).save(any(Transaction.class));
-        verify(userRepository).save(any(User.class));
+        verify(userRepository, never()).findById(anyLong());
     }
 
     @Test
     void refundBalance_UserNotFound_ThrowsException() {
         // Arrange
-        when(userRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(walletBalanceRepository.credit(anyLong(), anyString(), any(BigDecimal.class), any(LocalDateTime.class)))
+                .thenReturn(Optional.empty());
+        when(userRepository.existsById(anyLong())).thenReturn(false);
 
         // Act & Assert
         Exception exception = assertThrows(RuntimeException.class, () ->
@@ -156,15 +227,16 @@ class TransactionServiceImplTest {
         );
         assertEquals("User not found", exception.getMessage());
 
-        verify(userRepository).findById(1L);
+        verify(userRepository).existsById(1L);
         verify(transactionRepository, never()).save(any(Transaction.class));
-        verify(userRepository, never()).save(any(User.class));
     }
 
     @Test
     void billPayment_Success() {
         // Arrange
-        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+        when(walletBalanceRepository.debit(eq(1L), eq("IDR"), eq(transactionRequestDTO.getAmount().negate()), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(initialBalance.subtract(transactionRequestDTO.getAmount())));
+        when(userRepository.getReferenceById(1L)).thenReturn(user);
         when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> {
             Transaction savedTransaction = invocation.getArgument(0);
             savedTransaction.setId(1L);
@@ -172,9 +244,6 @@ class TransactionServiceImplTest {
             savedTransaction.setUpdatedAt(LocalDateTime.now());
             return savedTransaction;
         });
-        when(userRepository.save(any(User.class))).thenReturn(user);
-
-        BigDecimal initialBalance = user.getLastBalance();
 
         // Act
         BaseResponseDTO<TransactionResponseDTO> response = transactionService.billPayment(1L, transactionRequestDTO);
@@ -188,15 +257,17 @@ class TransactionServiceImplTest {
         assertEquals(transactionRequestDTO.getAmount(), response.getData().getAmount());
         assertEquals(initialBalance.subtract(transactionRequestDTO.getAmount()), response.getData().getLastBalance());
 
-        verify(userRepository).findById(1L);
+        verify(walletBalanceRepository).debit(eq(1L), eq("IDR"), any(BigDecimal.class), any(LocalDateTime.class));
         verify(transactionRepository).save(any(Transaction.class));
-        verify(userRepository).save(any(User.class));
+        verify(userRepository, never()).findById(anyLong());
     }
 
     @Test
     void billPayment_UserNotFound_ThrowsException() {
         // Arrange
-        when(userRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(walletBalanceRepository.debit(anyLong(), anyString(), any(BigDecimal.class), any(LocalDateTime.class)))
+                .thenReturn(Optional.empty());
+        when(userRepository.existsById(anyLong())).thenReturn(false);
 
         // Act & Assert
         Exception exception = assertThrows(RuntimeException.class, () ->
@@ -204,17 +275,17 @@ class TransactionServiceImplTest {
         );
         assertEquals("User not found", exception.getMessage());
 
-        verify(userRepository).findById(1L);
+        verify(userRepository).existsById(1L);
         verify(transactionRepository, never()).save(any(Transaction.class));
-        verify(userRepository, never()).save(any(User.class));
     }
 
     @Test
     void billPayment_InsufficientBalance_ThrowsException() {
         // Arrange
-        user.setLastBalance(BigDecimal.valueOf(50)); // Set balance to 50
         transactionRequestDTO.setAmount(BigDecimal.valueOf(100)); // Try to pay 100
-        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+        when(walletBalanceRepository.debit(anyLong(), anyString(), any(BigDecimal.class), any(LocalDateTime.class)))
+                .thenReturn(Optional.empty()); // Conditional update matches no row
+        when(userRepository.existsById(anyLong())).thenReturn(true);
 
         // Act & Assert
         RuntimeException exception = assertThrows(RuntimeException.class, () ->
@@ -222,8 +293,216 @@ class TransactionServiceImplTest {
         );
         assertEquals("Insufficient balance", exception.getMessage());
 
-        verify(userRepository).findById(1L);
+        verify(userRepository).existsById(1L);
         verify(transactionRepository, never()).save(any(Transaction.class));
-        verify(userRepository, never()).save(any(User.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void topUpBalance_InAnotherCurrency_CreditsOnlyThatBalance() {
+        // Arrange
+        transactionRequestDTO.setCurrency("USD");
+        when(walletBalanceRepository.credit(eq(1L), eq("USD"), eq(transactionRequestDTO.getAmount()), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(transactionRequestDTO.getAmount()));
+        when(userRepository.getReferenceById(1L)).thenReturn(user);
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        BaseResponseDTO<TransactionResponseDTO> response = transactionService.topUpBalance(1L, transactionRequestDTO);
+
+        // Assert
+        assertEquals("USD", response.getData().getCurrency());
+        assertEquals(transactionRequestDTO.getAmount(), response.getData().getLastBalance());
+        verify(walletBalanceRepository, never()).credit(anyLong(), eq("IDR"), any(BigDecimal.class), any(LocalDateTime.class));
+    }
+
+    @Test
+    void topUpBalance_WithIdempotencyKey_InsertsKeyWithLedgerRow() {
+        // Arrange
+        transactionRequestDTO.setIdempotencyKey("key-1");
+        when(walletBalanceRepository.credit(eq(1L), eq("IDR"), eq(transactionRequestDTO.getAmount()), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(initialBalance.add(transactionRequestDTO.getAmount())));
+        when(userRepository.getReferenceById(1L)).thenReturn(user);
+
+        // Act
+        BaseResponseDTO<TransactionResponseDTO> response = transactionService.topUpBalance(1L, transactionRequestDTO);
+
+        // Assert
+        assertEquals(initialBalance.add(transactionRequestDTO.getAmount()), response.getData().getLastBalance());
+        verify(transactionJdbcRepository).insertWithIdempotencyKey(argThat(saved ->
+                "key-1".equals(saved.getIdempotencyKey()) && saved.getCreatedAt() != null));
+        verify(transactionJdbcRepository, never()).insertIdempotencyKeys(anyList());
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
+
+    @Test
+    void topUpBalance_ShardedWallet_CreditsAShard() {
+        // Arrange
+        when(walletBalanceShardRepository.credit(eq(SHARDED_USER_ID), eq("IDR"), intThat(shard -> shard >= 0 && shard < 4),
+                eq(transactionRequestDTO.getAmount()), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(initialBalance.add(transactionRequestDTO.getAmount())));
+        when(userRepository.getReferenceById(SHARDED_USER_ID)).thenReturn(user);
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        BaseResponseDTO<TransactionResponseDTO> response = transactionService.topUpBalance(SHARDED_USER_ID, transactionRequestDTO);
+
+        // Assert
+        assertEquals(initialBalance.add(transactionRequestDTO.getAmount()), response.getData().getLastBalance());
+        verify(walletBalanceRepository, never()).credit(anyLong(), anyString(), any(BigDecimal.class), any(LocalDateTime.class));
+        verifyNoInteractions(userJdbcRepository);
+    }
+
+    @Test
+    void billPayment_ShardedWallet_SweepsShardsBeforeDebit() {
+        // Arrange
+        BalanceKey key = new BalanceKey(SHARDED_USER_ID, "IDR");
+        when(userJdbcRepository.lockBalances(eq(List.of(key)), eq(List.of()), any(LocalDateTime.class)))
+                .thenReturn(new HashMap<>(Map.of(key, Money.of(BigDecimal.ZERO))));
+        when(userJdbcRepository.sweepBalanceShards(eq(List.of(key)), any(LocalDateTime.class)))
+                .thenReturn(Map.of(key, Money.of(initialBalance)));
+        when(walletBalanceRepository.debit(eq(SHARDED_USER_ID), eq("IDR"), eq(transactionRequestDTO.getAmount().negate()), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(initialBalance.subtract(transactionRequestDTO.getAmount())));
+        when(userRepository.getReferenceById(SHARDED_USER_ID)).thenReturn(user);
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        BaseResponseDTO<TransactionResponseDTO> response = transactionService.billPayment(SHARDED_USER_ID, transactionRequestDTO);
+
+        // Assert
+        assertEquals(initialBalance.subtract(transactionRequestDTO.getAmount()), response.getData().getLastBalance());
+        InOrder inOrder = inOrder(userJdbcRepository, walletBalanceRepository);
+        inOrder.verify(userJdbcRepository).lockBalances(eq(List.of(key)), eq(List.of()), any(LocalDateTime.class));
+        inOrder.verify(userJdbcRepository).sweepBalanceShards(eq(List.of(key)), any(LocalDateTime.class));
+        inOrder.verify(walletBalanceRepository).debit(eq(SHARDED_USER_ID), eq("IDR"), any(BigDecimal.class), any(LocalDateTime.class));
+    }
+
+    @Test
+    void transfer_Success() {
+        // Arrange
+        when(walletTransferWriter.apply(any(WalletMutation.class))).thenAnswer(invocation -> {
+            WalletMutation transfer = invocation.getArgument(0);
+            return TransactionResponseDTO.builder().transactionCategory(transfer.getTransactionCategory())
+                    .amount(transfer.getAmount().toBigDecimal()).counterpartyUserId(transfer.getCounterpartyUserId()).build();
+        });
+
+        // Act
+        BaseResponseDTO<TransactionResponseDTO> response = transactionService.transfer(1L,
+                new TransferRequestDTO(2L, BigDecimal.valueOf(100), null, null));
+
+        // Assert
+        assertEquals(HttpStatus.OK.value(), response.getStatusCode());
+        assertEquals("Transfer successfully processed", response.getMessage());
+        assertEquals(TransactionCategory.TRANSFER_OUT, response.getData().getTransactionCategory());
+        assertEquals(2L, response.getData().getCounterpartyUserId());
+        verify(walletTransferWriter).apply(argThat(transfer -> transfer.getUserId() == 1L && transfer.getCounterpartyUserId() == 2L
+                && "IDR".equals(transfer.getCurrency())));
+    }
+
+    @Test
+    void transfer_SameWallet_ThrowsException() {
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () ->
+                transactionService.transfer(1L, new TransferRequestDTO(1L, BigDecimal.TEN, null, null))
+        );
+        assertEquals("Cannot transfer to the same wallet", exception.getMessage());
+
+        verify(walletTransferWriter, never()).apply(any());
+    }
+
+    @Test
+    void getTransactionHistory_ReturnsCursorForNextPage() {
+        // Arrange
+        LocalDateTime createdAt = LocalDateTime.of(2024, 5, 1, 10, 30, 15, 123456000);
+        List<TransactionResponseDTO> rows = List.of(
+                new TransactionResponseDTO(3L, TransactionCategory.TOPUP, "IDR", BigDecimal.TEN, BigDecimal.valueOf(30), createdAt, createdAt, null),
+                new TransactionResponseDTO(2L, TransactionCategory.TOPUP, "IDR", BigDecimal.TEN, BigDecimal.valueOf(20), createdAt, createdAt, null),
+                new TransactionResponseDTO(1L, TransactionCategory.TOPUP, "IDR", BigDecimal.TEN, BigDecimal.TEN, createdAt, createdAt, null));
+        when(transactionRepository.findHistory(1L, null, null, null, null, null, 3)).thenReturn(rows);
+        when(transactionRepository.findHistory(1L, null, null, null, createdAt, 2L, 3)).thenReturn(rows.subList(2, 3));
+
+        TransactionHistoryRequestDTO firstPage = new TransactionHistoryRequestDTO();
+        firstPage.setSize(2);
+
+        // Act
+        TransactionHistoryResponseDTO first = transactionService.getTransactionHistory(1L, firstPage).getData();
+        TransactionHistoryRequestDTO secondPage = new TransactionHistoryRequestDTO();
+        secondPage.setSize(2);
+        secondPage.setCursor(first.getNextCursor());
+        TransactionHistoryResponseDTO second = transactionService.getTransactionHistory(1L, secondPage).getData();
+
+        // Assert
+        assertEquals(2, first.getTransactions().size());
+        assertTrue(first.getHasNext());
+        assertNotNull(first.getNextCursor());
+        assertEquals(1, second.getTransactions().size());
+        assertFalse(second.getHasNext());
+        assertNull(second.getNextCursor());
+        verify(userRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    void getTransactionHistory_ShortPage_ContinuesIntoArchive() {
+        // Arrange
+        LocalDateTime createdAt = LocalDateTime.of(2024, 5, 1, 10, 30, 15, 123456000);
+        TransactionResponseDTO live = new TransactionResponseDTO(3L, TransactionCategory.TOPUP, "IDR", BigDecimal.TEN, BigDecimal.valueOf(30), createdAt, createdAt, null);
+        when(transactionRepository.findHistory(1L, null, null, null, null, null, 3)).thenReturn(List.of(live));
+        transaction.setTransactionCategory(TransactionCategory.TOPUP);
+        transaction.setCurrency("IDR");
+        transaction.setLastBalance(Money.of(BigDecimal.valueOf(20)));
+        Transaction older = new Transaction();
+        older.setId(0L);
+        older.setUser(user);
+        older.setTransactionCategory(TransactionCategory.TOPUP);
+        older.setCurrency("IDR");
+        older.setAmount(Money.of(BigDecimal.TEN));
+        older.setLastBalance(Money.of(BigDecimal.TEN));
+        older.setCreatedAt(createdAt.minusMonths(6));
+        older.setUpdatedAt(createdAt.minusMonths(6));
+        when(ledgerArchiveRepository.isEnabled()).thenReturn(true);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(ledgerArchiveRepository.findHistory(1L, null, null, null, null, null, 2)).thenReturn(List.of(transaction, older));
+
+        TransactionHistoryRequestDTO request = new TransactionHistoryRequestDTO();
+        request.setSize(2);
+
+        // Act
+        TransactionHistoryResponseDTO page = transactionService.getTransactionHistory(1L, request).getData();
+
+        // Assert: the live row, then the newest archived one; the second archived row means there is a next page
+        assertEquals(List.of(3L, 1L), page.getTransactions().stream().map(TransactionResponseDTO::getId).toList());
+        assertTrue(page.getHasNext());
+        assertEquals(new BigDecimal("20.00"), page.getTransactions().get(1).getLastBalance());
+    }
+
+    @Test
+    void getTransactionHistory_DeletedUserWithArchivedRows_ThrowsException() {
+        // Arrange
+        when(transactionRepository.findHistory(1L, null, null, null, null, null, 3)).thenReturn(List.of());
+        when(ledgerArchiveRepository.isEnabled()).thenReturn(true);
+        when(userRepository.existsById(1L)).thenReturn(false);
+
+        TransactionHistoryRequestDTO request = new TransactionHistoryRequestDTO();
+        request.setSize(2);
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () ->
+                transactionService.getTransactionHistory(1L, request)
+        );
+        assertEquals("User not found", exception.getMessage());
+        verify(ledgerArchiveRepository, never()).findHistory(anyLong(), any(), any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void getTransactionHistory_InvalidCursor_ThrowsException() {
+        // Arrange
+        TransactionHistoryRequestDTO request = new TransactionHistoryRequestDTO();
+        request.setCursor("not-a-cursor");
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () ->
+                transactionService.getTransactionHistory(1L, request)
+        );
+        assertEquals("Invalid cursor", exception.getMessage());
+        verifyNoInteractions(transactionRepository);
+    }
+}
@@ -0,0 +1,229 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionItemDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionResultDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.repository.TransactionJdbcRepository;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
+import dev.dwidi.walletservice.repository.UserRepository;
+import dev.dwidi.walletservice.service.user.UserCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletBatchWriterTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserJdbcRepository userJdbcRepository;
+
+    @Mock
+    private TransactionJdbcRepository transactionJdbcRepository;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private AppendOnlyLedger appendOnlyLedger;
+
+    @Mock
+    private ShardedBalances shardedBalances;
+
+    @Spy
+    private WalletMetrics walletMetrics = new WalletMetrics(new SimpleMeterRegistry());
+
+    @InjectMocks
+    private WalletBatchWriter walletBatchWriter;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(userRepository.getReferenceById(anyLong())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            return user;
+        });
+        lenient().doAnswer(invocation -> {
+            List<Transaction> transactions = invocation.getArgument(0);
+            transactions.forEach(transaction -> transaction.setId(ids.incrementAndGet()));
+            return null;
+        }).when(transactionJdbcRepository).insertAll(anyList());
+    }
+
+    @Test
+    void apply_MixedBatch_ReportsPartialFailures() {
+        // Arrange
+        when(shardedBalances.lockBalances(any(), any(), any())).thenReturn(new HashMap<>(Map.of(idr(1L), money(100), idr(2L), money(0))));
+        List<BatchTransactionItemDTO> items = List.of(
+                item(1L, TransactionCategory.BILLPAYMENT, 60, null),
+                item(2L, TransactionCategory.TOPUP, 30, null),
+                item(1L, TransactionCategory.BILLPAYMENT, 60, null),
+                item(3L, TransactionCategory.TOPUP, 10, null),
+                item(1L, TransactionCategory.REFUND, 5, null));
+
+        // Act
+        List<BatchTransactionResultDTO> results = walletBatchWriter.apply(items);
+
+        // Assert
+        assertEquals(5, results.size());
+        assertEquals(HttpStatus.OK.value(), results.get(0).getStatusCode());
+        assertEquals(0, BigDecimal.valueOf(40).compareTo(results.get(0).getTransaction().getLastBalance()));
+        assertEquals(0, BigDecimal.valueOf(30).compareTo(results.get(1).getTransaction().getLastBalance()));
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.get(2).getStatusCode());
+        assertEquals("Insufficient balance", results.get(2).getMessage());
+        assertEquals(HttpStatus.NOT_FOUND.value(), results.get(3).getStatusCode());
+        assertEquals("User not found", results.get(3).getMessage());
+        assertEquals(0, BigDecimal.valueOf(45).compareTo(results.get(4).getTransaction().getLastBalance()));
+
+        verify(transactionJdbcRepository).insertAll(argThat(transactions -> transactions.size() == 3));
+        verify(userJdbcRepository).applyBalanceDeltas(
+                eq(Map.of(idr(1L), money(-55), idr(2L), money(30))), any(LocalDateTime.class));
+        verify(transactionJdbcRepository, never()).findByIdempotencyKeys(anyList(), anyList());
+    }
+
+    @Test
+    void apply_AllItemsRejected_WritesNothing() {
+        // Arrange
+        when(shardedBalances.lockBalances(any(), any(), any())).thenReturn(new HashMap<>(Map.of(idr(1L), money(1))));
+
+        // Act
+        List<BatchTransactionResultDTO> results = walletBatchWriter.apply(List.of(item(1L, TransactionCategory.BILLPAYMENT, 2, null)));
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.getFirst().getStatusCode());
+        verify(transactionJdbcRepository, never()).insertAll(anyList());
+        verify(userJdbcRepository, never()).applyBalanceDeltas(anyMap(), any());
+    }
+
+    @Test
+    void apply_RecordedAndRepeatedIdempotencyKeys_AreNotAppliedTwice() {
+        // Arrange
+        when(shardedBalances.lockBalances(any(), any(), any())).thenReturn(new HashMap<>(Map.of(idr(1L), money(100))));
+        User user = new User();
+        user.setId(1L);
+        Transaction recorded = new Transaction();
+        recorded.setId(99L);
+        recorded.setUser(user);
+        recorded.setCurrency("IDR");
+        recorded.setTransactionCategory(TransactionCategory.TOPUP);
+        recorded.setAmount(money(10));
+        recorded.setLastBalance(money(100));
+        recorded.setIdempotencyKey("old");
+        when(transactionJdbcRepository.findByIdempotencyKeys(anyList(), anyList())).thenReturn(List.of(recorded));
+
+        List<BatchTransactionItemDTO> items = List.of(
+                item(1L, TransactionCategory.TOPUP, 10, "old"),
+                item(1L, TransactionCategory.TOPUP, 20, "new"),
+                item(1L, TransactionCategory.TOPUP, 20, "new"));
+
+        // Act
+        List<BatchTransactionResultDTO> results = walletBatchWriter.apply(items);
+
+        // Assert
+        assertEquals(99L, results.get(0).getTransaction().getId());
+        assertEquals(0, BigDecimal.valueOf(120).compareTo(results.get(1).getTransaction().getLastBalance()));
+        assertEquals(2, results.get(2).getIndex());
+        assertEquals(results.get(1).getTransaction().getId(), results.get(2).getTransaction().getId());
+
+        verify(transactionJdbcRepository).insertAll(argThat(transactions -> transactions.size() == 1));
+        verify(userJdbcRepository).applyBalanceDeltas(eq(Map.of(idr(1L), money(20))), any(LocalDateTime.class));
+    }
+
+    @Test
+    void apply_RepeatedIdempotencyKeyForDifferentTransaction_ReturnsConflict() {
+        // Arrange
+        when(shardedBalances.lockBalances(any(), any(), any())).thenReturn(new HashMap<>(Map.of(idr(1L), money(1000))));
+        List<BatchTransactionItemDTO> items = List.of(
+                item(1L, TransactionCategory.TOPUP, 100, "key"),
+                item(1L, TransactionCategory.BILLPAYMENT, 500, "key"),
+                item(1L, TransactionCategory.TOPUP, 200, "key"));
+
+        // Act
+        List<BatchTransactionResultDTO> results = walletBatchWriter.apply(items);
+
+        // Assert
+        assertEquals(HttpStatus.OK.value(), results.get(0).getStatusCode());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(1).getStatusCode());
+        assertEquals("Idempotency key already used for a different transaction", results.get(1).getMessage());
+        assertNull(results.get(1).getTransaction());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(2).getStatusCode());
+
+        verify(transactionJdbcRepository).insertAll(argThat(transactions -> transactions.size() == 1));
+        verify(userJdbcRepository).applyBalanceDeltas(eq(Map.of(idr(1L), money(100))), any(LocalDateTime.class));
+    }
+
+    @Test
+    void apply_SameWalletInTwoCurrencies_KeepsSeparateBalances() {
+        // Arrange
+        BalanceKey usd = new BalanceKey(1L, "USD");
+        when(shardedBalances.lockBalances(any(), any(), any())).thenReturn(new HashMap<>(Map.of(idr(1L), money(100), usd, money(0))));
+        List<BatchTransactionItemDTO> items = List.of(
+                item(1L, TransactionCategory.BILLPAYMENT, 60, null),
+                item(1L, "USD", TransactionCategory.BILLPAYMENT, 10, null),
+                item(1L, "USD", TransactionCategory.TOPUP, 5, null));
+
+        // Act
+        List<BatchTransactionResultDTO> results = walletBatchWriter.apply(items);
+
+        // Assert
+        assertEquals(0, BigDecimal.valueOf(40).compareTo(results.get(0).getTransaction().getLastBalance()));
+        assertEquals("Insufficient balance", results.get(1).getMessage());
+        assertEquals("USD", results.get(2).getTransaction().getCurrency());
+        assertEquals(0, BigDecimal.valueOf(5).compareTo(results.get(2).getTransaction().getLastBalance()));
+
+        // Only the currency with a credit may get a new balance row
+        verify(shardedBalances).lockBalances(eq(new TreeSet<>(List.of(idr(1L), usd))), eq(Set.of(usd)), any(LocalDateTime.class));
+        verify(userJdbcRepository).applyBalanceDeltas(eq(Map.of(idr(1L), money(-60), usd, money(5))), any(LocalDateTime.class));
+    }
+
+    private static BatchTransactionItemDTO item(Long userId, TransactionCategory category, long amount, String idempotencyKey) {
+        return item(userId, "IDR", category, amount, idempotencyKey);
+    }
+
+    private static BatchTransactionItemDTO item(Long userId, String currency, TransactionCategory category, long amount,
+                                                String idempotencyKey) {
+        BatchTransactionItemDTO item = new BatchTransactionItemDTO();
+        item.setUserId(userId);
+        item.setCurrency(currency);
+        item.setTransactionCategory(category);
+        item.setAmount(BigDecimal.valueOf(amount));
+        item.setIdempotencyKey(idempotencyKey);
+        return item;
+    }
+
+    private static BalanceKey idr(Long userId) {
+        return new BalanceKey(userId, "IDR");
+    }
+
+    private static Money money(long amount) {
+        return Money.of(BigDecimal.valueOf(amount));
+    }
+}
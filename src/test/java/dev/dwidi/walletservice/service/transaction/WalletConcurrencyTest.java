@@ -0,0 +1,282 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.WalletServiceApplication;
+import dev.dwidi.walletservice.dto.transaction.TransactionRequestDTO;
+import dev.dwidi.walletservice.dto.transaction.TransferRequestDTO;
+import dev.dwidi.walletservice.dto.user.UserRequestDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.service.user.UserService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Runs 10,000 concurrent balance mutations in two currencies, interleaved with profile edits of
+ * the same wallets, thousands of transfers crossing between a few hot wallets, and a mix of
+ * writes to a sharded wallet against PostgreSQL, and checks that no update is lost and no money
+ * is created or destroyed.
+ */
+class WalletConcurrencyTest {
+
+    private static final int WALLETS = 20;
+    private static final int MUTATIONS = 10_000;
+    private static final int EDITS = 200;
+    private static final int HOT_WALLETS = 4;
+    private static final int TRANSFERS = 4_000;
+    private static final List<String> CURRENCIES = List.of("IDR", "USD");
+    private static final long SHARDED_WALLET = 900_000L;
+    private static final int SHARDED_WRITES = 4_000;
+
+    private static EmbeddedPostgres postgres;
+    private static ConfigurableApplicationContext application;
+
+    @BeforeAll
+    static void start() throws IOException {
+        assumeFalse("root".equals(System.getProperty("user.name")), "PostgreSQL refuses to run as root");
+        postgres = EmbeddedPostgres.start();
+        application = new SpringApplicationBuilder(WalletServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.profiles.active=test",
+                        "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                        "--spring.datasource.username=postgres",
+                        "--spring.datasource.driver-class-name=org.postgresql.Driver",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.PostgreSQLDialect",
+                        "--spring.jpa.hibernate.ddl-auto=validate",
+                        "--spring.flyway.enabled=true",
+                        "--wallet.ledger.partitions.enabled=true",
+                        "--wallet.user-cache.invalidation.enabled=false",
+                        "--wallet.sharded-balance.wallets=" + SHARDED_WALLET,
+                        "--wallet.sharded-balance.shards=4");
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        if (application != null) {
+            application.close();
+        }
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void concurrentMutationsAndEdits_NoLostUpdates() throws Exception {
+        // Arrange
+        UserService userService = application.getBean(UserService.class);
+        TransactionService transactionService = application.getBean(TransactionService.class);
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < WALLETS; i++) {
+            userIds.add(userService.createUser(new UserRequestDTO("Wallet " + i, "wallet" + i + "@example.com",
+                    String.format("+10000000%03d", i))).getData().getId());
+        }
+        ConcurrentHashMap<BalanceKey, BigDecimal> expected = new ConcurrentHashMap<>();
+        for (Long userId : userIds) {
+            for (String currency : CURRENCIES) {
+                expected.put(new BalanceKey(userId, currency), BigDecimal.ZERO);
+            }
+        }
+        AtomicInteger editConflicts = new AtomicInteger();
+
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < MUTATIONS + EDITS; i++) {
+                Long userId = userIds.get(i % WALLETS);
+                if (i % ((MUTATIONS + EDITS) / EDITS) == 0) {
+                    String name = "Edited " + i;
+                    int index = userIds.indexOf(userId);
+                    futures.add(callers.submit(() -> {
+                        try {
+                            userService.editUser(userId, new UserRequestDTO(name, "wallet" + index + "@example.com",
+                                    String.format("+10000000%03d", index)));
+                        } catch (ConcurrencyFailureException e) {
+                            editConflicts.incrementAndGet();
+                        }
+                    }));
+                    continue;
+                }
+
+                BalanceKey key = new BalanceKey(userId, CURRENCIES.get((i / WALLETS) % CURRENCIES.size()));
+                BigDecimal amount = BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(1, 100));
+                TransactionCategory category = switch (i % 3) {
+                    case 0 -> TransactionCategory.TOPUP;
+                    case 1 -> TransactionCategory.REFUND;
+                    default -> TransactionCategory.BILLPAYMENT;
+                };
+                futures.add(callers.submit(() -> {
+                    TransactionRequestDTO request = new TransactionRequestDTO(category, amount, null, key.currency());
+                    try {
+                        switch (category) {
+                            case TOPUP -> transactionService.topUpBalance(userId, request);
+                            case REFUND -> transactionService.refundBalance(userId, request);
+                            case BILLPAYMENT -> transactionService.billPayment(userId, request);
+                        }
+                        expected.merge(key, category == TransactionCategory.BILLPAYMENT ? amount.negate() : amount, BigDecimal::add);
+                    } catch (RuntimeException e) {
+                        assertEquals("Insufficient balance", e.getMessage());
+                    }
+                }));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        // Assert
+        JdbcTemplate jdbcTemplate = application.getBean(JdbcTemplate.class);
+        for (BalanceKey key : expected.keySet()) {
+            BigDecimal balance = balance(jdbcTemplate, key);
+            BigDecimal ledger = ledger(jdbcTemplate, key);
+            assertEquals(0, expected.get(key).compareTo(balance), "balance of " + key);
+            assertEquals(0, ledger.compareTo(balance), "ledger of " + key);
+        }
+        for (Long userId : userIds) {
+            assertTrue(userService.getUserById(userId).getData().getFullName().startsWith("Edited "));
+        }
+        assertTrue(editConflicts.get() < EDITS, "every edit gave up on conflicts");
+    }
+
+    @Test
+    void crossingTransfers_NoDeadlocksAndMoneyConserved() throws Exception {
+        // Arrange
+        UserService userService = application.getBean(UserService.class);
+        TransactionService transactionService = application.getBean(TransactionService.class);
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < HOT_WALLETS; i++) {
+            Long userId = userService.createUser(new UserRequestDTO("Hot " + i, "hot" + i + "@example.com",
+                    String.format("+20000000%03d", i))).getData().getId();
+            transactionService.topUpBalance(userId, new TransactionRequestDTO(TransactionCategory.TOPUP, BigDecimal.valueOf(1000), null, null));
+            userIds.add(userId);
+        }
+
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < TRANSFERS; i++) {
+                int from = ThreadLocalRandom.current().nextInt(HOT_WALLETS);
+                int to = (from + 1 + ThreadLocalRandom.current().nextInt(HOT_WALLETS - 1)) % HOT_WALLETS;
+                BigDecimal amount = BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(1, 300));
+                futures.add(callers.submit(() -> {
+                    try {
+                        transactionService.transfer(userIds.get(from), new TransferRequestDTO(userIds.get(to), amount, null, null));
+                    } catch (RuntimeException e) {
+                        assertEquals("Insufficient balance", e.getMessage());
+                    }
+                }));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        // Assert
+        JdbcTemplate jdbcTemplate = application.getBean(JdbcTemplate.class);
+        BigDecimal total = BigDecimal.ZERO;
+        for (Long userId : userIds) {
+            BalanceKey key = new BalanceKey(userId, "IDR");
+            BigDecimal balance = balance(jdbcTemplate, key);
+            BigDecimal ledger = ledger(jdbcTemplate, key);
+            assertEquals(0, ledger.compareTo(balance), "ledger of wallet " + userId);
+            assertTrue(balance.signum() >= 0);
+            total = total.add(balance);
+        }
+        assertEquals(0, BigDecimal.valueOf(1000L * HOT_WALLETS).compareTo(total));
+        Integer unmatched = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM transaction o
+                WHERE o.transaction_category = 'TRANSFER_OUT' AND NOT EXISTS (
+                    SELECT 1 FROM transaction i
+                    WHERE i.transaction_category = 'TRANSFER_IN' AND i.user_id = o.counterparty_user_id
+                      AND i.counterparty_user_id = o.user_id AND i.amount = o.amount AND i.created_at = o.created_at)
+                """, Integer.class);
+        assertEquals(0, unmatched);
+    }
+
+    @Test
+    void shardedWallet_ConcurrentCreditsAndDebits_MoneyConserved() throws Exception {
+        // Arrange
+        UserService userService = application.getBean(UserService.class);
+        TransactionService transactionService = application.getBean(TransactionService.class);
+        JdbcTemplate jdbcTemplate = application.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("""
+                INSERT INTO user_wallet (id, full_name, email, phone_number, version, created_at, updated_at)
+                VALUES (?, 'Merchant', 'merchant@example.com', '+30000000000', 0, now(), now())
+                """, SHARDED_WALLET);
+        Long payee = userService.createUser(new UserRequestDTO("Payee", "payee@example.com", "+30000000001")).getData().getId();
+        AtomicReference<BigDecimal> expected = new AtomicReference<>(BigDecimal.ZERO);
+
+        // Act: mostly top ups, with bill payments and transfers out that have to sweep the shards
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < SHARDED_WRITES; i++) {
+                int kind = i % 8;
+                BigDecimal amount = BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(1, 100));
+                futures.add(callers.submit(() -> {
+                    try {
+                        if (kind < 6) {
+                            transactionService.topUpBalance(SHARDED_WALLET, new TransactionRequestDTO(TransactionCategory.TOPUP, amount, null, null));
+                            expected.accumulateAndGet(amount, BigDecimal::add);
+                        } else if (kind == 6) {
+                            transactionService.billPayment(SHARDED_WALLET, new TransactionRequestDTO(TransactionCategory.BILLPAYMENT, amount, null, null));
+                            expected.accumulateAndGet(amount.negate(), BigDecimal::add);
+                        } else {
+                            transactionService.transfer(SHARDED_WALLET, new TransferRequestDTO(payee, amount, null, null));
+                            expected.accumulateAndGet(amount.negate(), BigDecimal::add);
+                        }
+                    } catch (RuntimeException e) {
+                        assertEquals("Insufficient balance", e.getMessage());
+                    }
+                }));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        // Assert
+        BalanceKey merchant = new BalanceKey(SHARDED_WALLET, "IDR");
+        BigDecimal balance = balance(jdbcTemplate, merchant);
+        assertEquals(0, expected.get().compareTo(balance));
+        assertEquals(0, ledger(jdbcTemplate, merchant).compareTo(balance));
+        assertEquals(0, ledger(jdbcTemplate, new BalanceKey(payee, "IDR")).compareTo(balance(jdbcTemplate, new BalanceKey(payee, "IDR"))));
+        Integer negative = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM wallet_balance_shard WHERE user_id = ? AND balance < 0", Integer.class, SHARDED_WALLET);
+        assertEquals(0, negative);
+        assertEquals(0, balance.compareTo(userService.getUserById(SHARDED_WALLET).getData().getBalances().get("IDR")));
+    }
+
+    private static BigDecimal balance(JdbcTemplate jdbcTemplate, BalanceKey key) {
+        return jdbcTemplate.queryForObject("""
+                SELECT COALESCE((SELECT balance FROM wallet_balance WHERE user_id = ? AND currency = ?), 0)
+                     + COALESCE((SELECT SUM(balance) FROM wallet_balance_shard WHERE user_id = ? AND currency = ?), 0)
+                """, BigDecimal.class, key.userId(), key.currency(), key.userId(), key.currency());
+    }
+
+    private static BigDecimal ledger(JdbcTemplate jdbcTemplate, BalanceKey key) {
+        return jdbcTemplate.queryForObject("""
+                SELECT COALESCE(SUM(CASE WHEN transaction_category IN ('BILLPAYMENT', 'TRANSFER_OUT') THEN -amount ELSE amount END), 0)
+                FROM transaction WHERE user_id = ? AND currency = ?
+                """, BigDecimal.class, key.userId(), key.currency());
+    }
+}
@@ -0,0 +1,182 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionItemDTO;
+import dev.dwidi.walletservice.dto.transaction.BatchTransactionResultDTO;
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.exception.InsufficientBalanceException;
+import dev.dwidi.walletservice.exception.UserNotFoundException;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.metrics.WalletMetrics.Operation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletGroupCommitterTest {
+
+    @Mock
+    private WalletBatchWriter walletBatchWriter;
+
+    @Mock
+    private WalletLedgerWriter walletLedgerWriter;
+
+    private WalletGroupCommitter walletGroupCommitter;
+
+    @BeforeEach
+    void setUp() {
+        // A long wait makes the batch size the only trigger for a commit
+        walletGroupCommitter = new WalletGroupCommitter(walletBatchWriter, walletLedgerWriter,
+                new WalletMetrics(new SimpleMeterRegistry()), true, 3, Duration.ofSeconds(10), 100);
+        walletGroupCommitter.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        walletGroupCommitter.stop();
+    }
+
+    @Test
+    void submit_ConcurrentMutations_CommittedTogether() throws Exception {
+        // Arrange
+        when(walletBatchWriter.apply(anyList(), eq(Operation.GROUP_COMMIT))).thenAnswer(invocation -> {
+            List<BatchTransactionItemDTO> items = invocation.getArgument(0);
+            List<BatchTransactionResultDTO> results = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                BatchTransactionItemDTO item = items.get(i);
+                results.add(item.getTransactionCategory() == TransactionCategory.BILLPAYMENT
+                        ? new BatchTransactionResultDTO(i, item.getUserId(), 400, "Insufficient balance", null)
+                        : new BatchTransactionResultDTO(i, item.getUserId(), 200, "Top up successfully",
+                                TransactionResponseDTO.builder().amount(item.getAmount()).build()));
+            }
+            return results;
+        });
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            // Act
+            Future<TransactionResponseDTO> first = callers.submit(() ->
+                    walletGroupCommitter.submit(new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.ONE))));
+            Future<TransactionResponseDTO> second = callers.submit(() ->
+                    walletGroupCommitter.submit(new WalletMutation(2L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.TWO))));
+            Future<TransactionResponseDTO> bill = callers.submit(() ->
+                    walletGroupCommitter.submit(new WalletMutation(1L, "IDR", TransactionCategory.BILLPAYMENT, Money.of(BigDecimal.TEN))));
+
+            // Assert
+            assertEquals(0, BigDecimal.ONE.compareTo(first.get().getAmount()));
+            assertEquals(0, BigDecimal.TWO.compareTo(second.get().getAmount()));
+            ExecutionException exception = assertThrows(ExecutionException.class, bill::get);
+            assertInstanceOf(InsufficientBalanceException.class, exception.getCause());
+            assertEquals("Insufficient balance", exception.getCause().getMessage());
+            verify(walletBatchWriter, times(1)).apply(anyList(), eq(Operation.GROUP_COMMIT));
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    void submit_BatchFails_AppliesMutationsIndividually() throws Exception {
+        // Arrange
+        when(walletBatchWriter.apply(anyList(), eq(Operation.GROUP_COMMIT))).thenThrow(new RuntimeException("Connection reset"));
+        when(walletLedgerWriter.apply(any(WalletMutation.class))).thenAnswer(invocation -> {
+            WalletMutation mutation = invocation.getArgument(0);
+            if (mutation.getUserId() == 3L) {
+                throw new UserNotFoundException();
+            }
+            return TransactionResponseDTO.builder().amount(mutation.getAmount().toBigDecimal()).build();
+        });
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            // Act
+            List<Future<TransactionResponseDTO>> results = new ArrayList<>();
+            for (long userId = 1; userId <= 3; userId++) {
+                WalletMutation topUp = new WalletMutation(userId, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.valueOf(userId)));
+                results.add(callers.submit(() -> walletGroupCommitter.submit(topUp)));
+            }
+
+            // Assert
+            assertEquals(0, BigDecimal.ONE.compareTo(results.get(0).get().getAmount()));
+            assertEquals(0, BigDecimal.TWO.compareTo(results.get(1).get().getAmount()));
+            ExecutionException exception = assertThrows(ExecutionException.class, results.get(2)::get);
+            assertEquals("User not found", exception.getCause().getMessage());
+            verify(walletLedgerWriter, times(3)).apply(any(WalletMutation.class));
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    void submit_CommitterInterruptedDuringCommit_FailsBatchAndRejectsNewMutations() throws Exception {
+        // Arrange: the committer is interrupted while it writes a full batch
+        CountDownLatch committing = new CountDownLatch(1);
+        AtomicReference<Thread> committer = new AtomicReference<>();
+        when(walletBatchWriter.apply(anyList(), eq(Operation.GROUP_COMMIT))).thenAnswer(invocation -> {
+            committer.set(Thread.currentThread());
+            committing.countDown();
+            Thread.sleep(Duration.ofMinutes(1));
+            return List.of();
+        });
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<TransactionResponseDTO>> results = new ArrayList<>();
+            for (long userId = 1; userId <= 3; userId++) {
+                WalletMutation topUp = new WalletMutation(userId, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.ONE));
+                results.add(callers.submit(() -> walletGroupCommitter.submit(topUp)));
+            }
+            assertTrue(committing.await(5, TimeUnit.SECONDS));
+
+            // Act
+            committer.get().interrupt();
+            committer.get().join(5_000);
+
+            // Assert
+            for (Future<TransactionResponseDTO> result : results) {
+                ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertEquals("Wallet group committer interrupted", exception.getCause().getMessage());
+            }
+            assertFalse(committer.get().isAlive());
+            RuntimeException rejected = assertThrows(RuntimeException.class, () ->
+                    walletGroupCommitter.submit(new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.ONE))));
+            assertEquals("Wallet service is shutting down", rejected.getMessage());
+            verifyNoInteractions(walletLedgerWriter);
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    void submit_AfterStop_Rejected() {
+        // Arrange
+        walletGroupCommitter.stop();
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () ->
+                walletGroupCommitter.submit(new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.ONE))));
+        assertEquals("Wallet service is shutting down", exception.getMessage());
+    }
+}
@@ -0,0 +1,224 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.exception.UserNotFoundException;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletMutationExecutorTest {
+
+    private static final BalanceKey WALLET = new BalanceKey(1L, "IDR");
+
+    @Mock
+    private WalletLedgerWriter walletLedgerWriter;
+
+    @Mock
+    private ShardedBalances shardedBalances;
+
+    private WalletMutationExecutor walletMutationExecutor;
+
+    @BeforeEach
+    void setUp() {
+        walletMutationExecutor = new WalletMutationExecutor(walletLedgerWriter, new WalletMetrics(new SimpleMeterRegistry()), shardedBalances, 16, 100);
+    }
+
+    @Test
+    void execute_Uncontended_AppliesDirectly() {
+        // Arrange
+        WalletMutation topUp = new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.TEN));
+        TransactionResponseDTO response = TransactionResponseDTO.builder().id(1L).lastBalance(BigDecimal.TEN).build();
+        when(walletLedgerWriter.apply(topUp, ShardedBalances.BALANCE_ROW)).thenReturn(response);
+
+        // Act
+        TransactionResponseDTO result = walletMutationExecutor.execute(topUp);
+
+        // Assert
+        assertSame(response, result);
+        verify(walletLedgerWriter, never()).applyCredits(any(BalanceKey.class), anyInt(), anyList());
+        assertEquals(0, walletMutationExecutor.queuedMutations(WALLET));
+    }
+
+    @Test
+    void execute_QueuedCredits_CoalescedIntoOneWrite() throws Exception {
+        // Arrange
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWriter = new CountDownLatch(1);
+        WalletMutation bill = new WalletMutation(1L, "IDR", TransactionCategory.BILLPAYMENT, Money.of(BigDecimal.ONE));
+        when(walletLedgerWriter.apply(bill, ShardedBalances.BALANCE_ROW)).thenAnswer(invocation -> {
+            writerBlocked.countDown();
+            releaseWriter.await();
+            return TransactionResponseDTO.builder().id(1L).build();
+        });
+        when(walletLedgerWriter.applyCredits(eq(WALLET), eq(ShardedBalances.BALANCE_ROW), anyList())).thenAnswer(invocation -> {
+            List<WalletMutation> credits = invocation.getArgument(2);
+            return credits.stream().map(c -> TransactionResponseDTO.builder().amount(c.getAmount().toBigDecimal()).build()).toList();
+        });
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            // Act: hold the wallet with a bill payment, then queue three top ups behind it
+            Future<TransactionResponseDTO> first = callers.submit(() -> walletMutationExecutor.execute(bill));
+            writerBlocked.await();
+
+            List<Future<TransactionResponseDTO>> topUps = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                WalletMutation topUp = new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.valueOf(i)));
+                topUps.add(callers.submit(() -> walletMutationExecutor.execute(topUp)));
+            }
+            while (walletMutationExecutor.queuedMutations(WALLET) < 3) {
+                Thread.onSpinWait();
+            }
+            releaseWriter.countDown();
+
+            // Assert
+            assertNotNull(first.get());
+            for (int i = 0; i < topUps.size(); i++) {
+                assertEquals(0, BigDecimal.valueOf(i + 1).compareTo(topUps.get(i).get().getAmount()));
+            }
+        } finally {
+            callers.shutdown();
+        }
+
+        verify(walletLedgerWriter, times(1)).apply(any(WalletMutation.class), eq(ShardedBalances.BALANCE_ROW));
+        verify(walletLedgerWriter, times(1)).applyCredits(eq(WALLET), eq(ShardedBalances.BALANCE_ROW), argThat(credits -> credits.size() == 3));
+        assertEquals(0, walletMutationExecutor.queuedMutations(WALLET));
+    }
+
+    @Test
+    void execute_FailedBatch_FallsBackToIndividualWrites() throws Exception {
+        // Arrange
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWriter = new CountDownLatch(1);
+        WalletMutation bill = new WalletMutation(1L, "IDR", TransactionCategory.BILLPAYMENT, Money.of(BigDecimal.ONE));
+        WalletMutation goodTopUp = new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.ONE));
+        WalletMutation badTopUp = new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.TEN));
+        when(walletLedgerWriter.apply(any(WalletMutation.class), eq(ShardedBalances.BALANCE_ROW))).thenAnswer(invocation -> {
+            WalletMutation mutation = invocation.getArgument(0);
+            if (mutation == bill) {
+                writerBlocked.countDown();
+                releaseWriter.await();
+            }
+            if (mutation == badTopUp) {
+                throw new UserNotFoundException();
+            }
+            return TransactionResponseDTO.builder().amount(mutation.getAmount().toBigDecimal()).build();
+        });
+        when(walletLedgerWriter.applyCredits(eq(WALLET), eq(ShardedBalances.BALANCE_ROW), anyList())).thenThrow(new UserNotFoundException());
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            // Act
+            Future<TransactionResponseDTO> first = callers.submit(() -> walletMutationExecutor.execute(bill));
+            writerBlocked.await();
+            Future<TransactionResponseDTO> good = callers.submit(() -> walletMutationExecutor.execute(goodTopUp));
+            while (walletMutationExecutor.queuedMutations(WALLET) < 1) {
+                Thread.onSpinWait();
+            }
+            Future<TransactionResponseDTO> bad = callers.submit(() -> walletMutationExecutor.execute(badTopUp));
+            while (walletMutationExecutor.queuedMutations(WALLET) < 2) {
+                Thread.onSpinWait();
+            }
+            releaseWriter.countDown();
+
+            // Assert
+            assertNotNull(first.get());
+            assertEquals(0, BigDecimal.ONE.compareTo(good.get().getAmount()));
+            Exception exception = assertThrows(Exception.class, bad::get);
+            assertEquals("User not found", exception.getCause().getMessage());
+        } finally {
+            callers.shutdown();
+        }
+
+        verify(walletLedgerWriter, times(3)).apply(any(WalletMutation.class), eq(ShardedBalances.BALANCE_ROW));
+    }
+
+    @Test
+    void execute_OtherCurrencyOfBusyWallet_DoesNotQueue() throws Exception {
+        // Arrange
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWriter = new CountDownLatch(1);
+        WalletMutation bill = new WalletMutation(1L, "IDR", TransactionCategory.BILLPAYMENT, Money.of(BigDecimal.ONE));
+        WalletMutation usdTopUp = new WalletMutation(1L, "USD", TransactionCategory.TOPUP, Money.of(BigDecimal.TEN));
+        when(walletLedgerWriter.apply(bill, ShardedBalances.BALANCE_ROW)).thenAnswer(invocation -> {
+            writerBlocked.countDown();
+            releaseWriter.await();
+            return TransactionResponseDTO.builder().id(1L).build();
+        });
+        when(walletLedgerWriter.apply(usdTopUp, ShardedBalances.BALANCE_ROW)).thenReturn(TransactionResponseDTO.builder().id(2L).build());
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            // Act: hold the IDR balance with a bill payment, then top up the same wallet in USD
+            Future<TransactionResponseDTO> first = callers.submit(() -> walletMutationExecutor.execute(bill));
+            writerBlocked.await();
+            Future<TransactionResponseDTO> usd = callers.submit(() -> walletMutationExecutor.execute(usdTopUp));
+
+            // Assert: the USD top up completes while the IDR bill payment is still being written
+            assertEquals(2L, usd.get(5, TimeUnit.SECONDS).getId());
+            assertFalse(first.isDone());
+            releaseWriter.countDown();
+            assertNotNull(first.get());
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    void execute_CreditToShardedWallet_BypassesBusyBalance() throws Exception {
+        // Arrange
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWriter = new CountDownLatch(1);
+        WalletMutation bill = new WalletMutation(1L, "IDR", TransactionCategory.BILLPAYMENT, Money.of(BigDecimal.ONE));
+        WalletMutation topUp = new WalletMutation(1L, "IDR", TransactionCategory.TOPUP, Money.of(BigDecimal.TEN));
+        when(shardedBalances.isSharded(1L)).thenReturn(true);
+        when(walletLedgerWriter.apply(bill, ShardedBalances.BALANCE_ROW)).thenAnswer(invocation -> {
+            writerBlocked.countDown();
+            releaseWriter.await();
+            return TransactionResponseDTO.builder().id(1L).build();
+        });
+        when(shardedBalances.pickShard()).thenReturn(2);
+        when(walletLedgerWriter.apply(topUp, 2)).thenReturn(TransactionResponseDTO.builder().id(2L).build());
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            // Act: hold the balance with a bill payment, then top up the same balance
+            Future<TransactionResponseDTO> first = callers.submit(() -> walletMutationExecutor.execute(bill));
+            writerBlocked.await();
+            Future<TransactionResponseDTO> credit = callers.submit(() -> walletMutationExecutor.execute(topUp));
+
+            // Assert: the top up goes to a shard without waiting for the bill payment
+            assertEquals(2L, credit.get(5, TimeUnit.SECONDS).getId());
+            assertFalse(first.isDone());
+            assertEquals(0, walletMutationExecutor.queuedMutations(WALLET));
+            releaseWriter.countDown();
+            assertNotNull(first.get());
+        } finally {
+            callers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package dev.dwidi.walletservice.service.transaction;
+
+import dev.dwidi.walletservice.dto.transaction.TransactionResponseDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import dev.dwidi.walletservice.entity.Money;
+import dev.dwidi.walletservice.entity.Transaction;
+import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.enums.TransactionCategory;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.repository.TransactionJdbcRepository;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
+import dev.dwidi.walletservice.repository.UserRepository;
+import dev.dwidi.walletservice.service.user.UserCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletTransferWriterTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserJdbcRepository userJdbcRepository;
+
+    @Mock
+    private TransactionJdbcRepository transactionJdbcRepository;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private AppendOnlyLedger appendOnlyLedger;
+
+    @Mock
+    private ShardedBalances shardedBalances;
+
+    @Spy
+    private WalletMetrics walletMetrics = new WalletMetrics(new SimpleMeterRegistry());
+
+    @InjectMocks
+    private WalletTransferWriter walletTransferWriter;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(userRepository.getReferenceById(anyLong())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            return user;
+        });
+        lenient().doAnswer(invocation -> {
+            List<Transaction> transactions = invocation.getArgument(0);
+            transactions.forEach(transaction -> transaction.setId(ids.incrementAndGet()));
+            return null;
+        }).when(transactionJdbcRepository).insertAll(anyList());
+    }
+
+    @Test
+    void apply_Success_WritesPairedRowsAndBothBalances() {
+        // Arrange
+        when(shardedBalances.lockBalances(any(), any(), any())).thenReturn(Map.of(idr(3L), money(100), idr(7L), money(5)));
+
+        // Act
+        TransactionResponseDTO response = walletTransferWriter.apply(transfer(7L, 3L, 5, "key-1"));
+
+        // Assert
+        assertEquals(TransactionCategory.TRANSFER_OUT, response.getTransactionCategory());
+        assertEquals(0, BigDecimal.ZERO.compareTo(response.getLastBalance()));
+        assertEquals(3L, response.getCounterpartyUserId());
+
+        // Locked in key order whatever the direction of the transfer
+        ArgumentCaptor<Collection<BalanceKey>> locked = ArgumentCaptor.captor();
+        verify(shardedBalances).lockBalances(locked.capture(), eq(List.of(idr(3L))), any(LocalDateTime.class));
+        assertEquals(List.of(idr(3L), idr(7L)), new ArrayList<>(locked.getValue()));
+
+        ArgumentCaptor<List<Transaction>> inserted = ArgumentCaptor.captor();
+        verify(transactionJdbcRepository).insertAll(inserted.capture());
+        Transaction debit = inserted.getValue().get(0);
+        Transaction credit = inserted.getValue().get(1);
+        assertEquals(7L, debit.getUser().getId());
+        assertEquals("key-1", debit.getIdempotencyKey());
+        assertEquals("IDR", debit.getCurrency());
+        assertEquals("IDR", credit.getCurrency());
+        assertEquals(3L, credit.getUser().getId());
+        assertEquals(TransactionCategory.TRANSFER_IN, credit.getTransactionCategory());
+        assertEquals(0, money(105).compareTo(credit.getLastBalance()));
+        assertEquals(7L, credit.getCounterpartyUserId());
+        assertNull(credit.getIdempotencyKey());
+
+        verify(userJdbcRepository).applyBalanceDeltas(
+                eq(Map.of(idr(7L), money(-5), idr(3L), money(5))), any(LocalDateTime.class));
+        verify(userCache).evictAllAfterCommit(argThat(userIds -> userIds.containsAll(List.of(3L, 7L))));
+    }
+
+    @Test
+    void apply_InsufficientBalance_WritesNothing() {
+        // Arrange
+        when(shardedBalances.lockBalances(any(), any(), any())).thenReturn(Map.of(idr(1L), money(4), idr(2L), money(0)));
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> walletTransferWriter.apply(transfer(1L, 2L, 5, null)));
+        assertEquals("Insufficient balance", exception.getMessage());
+        verify(transactionJdbcRepository, never()).insertAll(anyList());
+        verify(userJdbcRepository, never()).applyBalanceDeltas(anyMap(), any());
+    }
+
+    @Test
+    void apply_ReceiverNotFound_ThrowsException() {
+        // Arrange
+        when(shardedBalances.lockBalances(any(), any(), any())).thenReturn(Map.of(idr(1L), money(10)));
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> walletTransferWriter.apply(transfer(1L, 2L, 5, null)));
+        assertEquals("User not found", exception.getMessage());
+        verify(transactionJdbcRepository, never()).insertAll(anyList());
+    }
+
+    private static WalletMutation transfer(Long fromUserId, Long toUserId, long amount, String idempotencyKey) {
+        return new WalletMutation(fromUserId, "IDR", TransactionCategory.TRANSFER_OUT, money(amount), idempotencyKey, toUserId);
+    }
+
+    private static BalanceKey idr(Long userId) {
+        return new BalanceKey(userId, "IDR");
+    }
+
+    private static Money money(long amount) {
+        return Money.of(BigDecimal.valueOf(amount));
+    }
+}
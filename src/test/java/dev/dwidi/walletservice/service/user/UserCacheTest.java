@@ -0,0 +1,110 @@
+package dev.dwidi.walletservice.service.user;
+
+import dev.dwidi.walletservice.dto.user.UserResponseDTO;
+import dev.dwidi.walletservice.entity.BalanceKey;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserCache userCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userCache = new UserCache(meterRegistry, new WalletChangePublisher(null, false), 100, Duration.ofMinutes(1));
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void updateBalanceAfterCommit_WritesBalanceThroughToCachedUser() {
+        // Arrange
+        userCache.get(1L, this::load);
+        LocalDateTime updatedAt = LocalDateTime.now();
+
+        // Act
+        userCache.updateBalanceAfterCommit(new BalanceKey(1L, "IDR"), BigDecimal.valueOf(250), updatedAt);
+        UserResponseDTO cached = userCache.get(1L, this::load);
+
+        // Assert
+        assertEquals(1, loads.get());
+        assertEquals(0, BigDecimal.valueOf(250).compareTo(cached.getBalances().get("IDR")));
+        assertEquals(0, BigDecimal.valueOf(5).compareTo(cached.getBalances().get("USD")));
+        assertEquals(updatedAt, cached.getUpdatedAt());
+        assertEquals("John Doe", cached.getFullName());
+    }
+
+    @Test
+    void updateBalanceAfterCommit_LaterChangeAlreadyCached_EvictsInsteadOfOverwriting() {
+        // Arrange: a credit updates the balance row, then a transfer of the same wallet commits and
+        // evicts before the credit's after-commit callback runs, and a reader caches the newer balance
+        userCache.get(1L, this::load);
+        TransactionSynchronizationManager.initSynchronization();
+        List<TransactionSynchronization> creditSynchronizations;
+        try {
+            userCache.updateBalanceAfterCommit(new BalanceKey(1L, "IDR"), BigDecimal.valueOf(250), LocalDateTime.now());
+            creditSynchronizations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        userCache.evict(1L);
+        userCache.get(1L, this::load);
+
+        // Act
+        creditSynchronizations.forEach(TransactionSynchronization::afterCommit);
+        UserResponseDTO cached = userCache.get(1L, this::load);
+
+        // Assert: the credit's balance never replaces the newer entry, which is loaded again
+        assertEquals(3, loads.get());
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(cached.getBalances().get("IDR")));
+    }
+
+    @Test
+    void get_WriteCommittedDuringLoad_DoesNotCacheLoadedValue() {
+        // Arrange: the eviction of a concurrent write lands while the old row is being loaded
+        UserResponseDTO stale = userCache.get(1L, userId -> {
+            UserResponseDTO loaded = load(userId);
+            userCache.evictAfterCommit(userId);
+            return loaded;
+        });
+
+        // Act
+        UserResponseDTO next = userCache.get(1L, this::load);
+
+        // Assert
+        assertNotSame(stale, next);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_RecordsHitAndMissMetrics() {
+        // Act
+        userCache.get(1L, this::load);
+        userCache.get(1L, this::load);
+        userCache.get(1L, this::load);
+
+        // Assert
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "users").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "users").tag("result", "miss").functionCounter().count());
+    }
+
+    private UserResponseDTO load(Long userId) {
+        loads.incrementAndGet();
+        return new UserResponseDTO(userId, "John Doe", "john.doe@example.com", "+1234567890",
+                Map.of("IDR", BigDecimal.valueOf(100), "USD", BigDecimal.valueOf(5)), LocalDateTime.now(), LocalDateTime.now());
+    }
+}
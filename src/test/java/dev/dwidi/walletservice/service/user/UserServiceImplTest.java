@@ -1,24 +1,50 @@
 package dev.dwidi.walletservice.service.user;
 
 import dev.dwidi.walletservice.dto.BaseResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserImportRequestDTO;
+import dev.dwidi.walletservice.dto.user.UserImportResponseDTO;
+import dev.dwidi.walletservice.dto.user.UserImportResultDTO;
+import dev.dwidi.walletservice.dto.user.UserPatchRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserRequestDTO;
 import dev.dwidi.walletservice.dto.user.UserResponseDTO;
+import dev.dwidi.walletservice.entity.Money;
 import dev.dwidi.walletservice.entity.User;
+import dev.dwidi.walletservice.entity.WalletBalance;
+import dev.dwidi.walletservice.metrics.WalletMetrics;
+import dev.dwidi.walletservice.repository.PatchedProfile;
+import dev.dwidi.walletservice.repository.TransactionRepository;
+import dev.dwidi.walletservice.repository.UserJdbcRepository;
 import dev.dwidi.walletservice.repository.UserRepository;
+import dev.dwidi.walletservice.repository.WalletBalanceRepository;
+import dev.dwidi.walletservice.repository.WalletBalanceShardRepository;
+import dev.dwidi.walletservice.repository.WalletTombstoneRepository;
+import dev.dwidi.walletservice.service.ConflictRetry;
+import dev.dwidi.walletservice.service.transaction.AppendOnlyLedger;
+import dev.dwidi.walletservice.service.transaction.ShardedBalances;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,6 +53,36 @@ class UserServiceImplTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UserJdbcRepository userJdbcRepository;
+
+    @Mock
+    private WalletBalanceRepository walletBalanceRepository;
+
+    @Mock
+    private WalletBalanceShardRepository walletBalanceShardRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private WalletTombstoneRepository walletTombstoneRepository;
+
+    @Spy
+    private UserCache userCache = new UserCache(new SimpleMeterRegistry(), new WalletChangePublisher(null, false), 100, Duration.ofMinutes(1));
+
+    @Mock
+    private AppendOnlyLedger appendOnlyLedger;
+
+    @Mock
+    private ShardedBalances shardedBalances;
+
+    @Spy
+    private WalletMetrics walletMetrics = new WalletMetrics(new SimpleMeterRegistry());
+
+    @Spy
+    private ConflictRetry conflictRetry = new ConflictRetry(new WalletMetrics(new SimpleMeterRegistry()), 3, Duration.ZERO, Duration.ZERO);
+
     @InjectMocks
     private UserServiceImpl userService;
 
@@ -47,7 +103,6 @@ class UserServiceImplTest {
         user.setFullName("John Doe");
         user.setEmail("john.doe@example.com");
         user.setPhoneNumber("+1234567890");
-        user.setLastBalance(BigDecimal.ZERO);
         user.setCreatedAt(LocalDateTime.now());
         user.setUpdatedAt(LocalDateTime.now());
     }
@@ -55,15 +110,8 @@ class UserServiceImplTest {
     @Test
     void createUser_Success() {
         // Arrange
-        when(userRepository.existsByEmail(anyString())).thenReturn(false);
-        when(userRepository.existsByPhoneNumber(anyString())).thenReturn(false);
-        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
-            User savedUser = invocation.getArgument(0);
-            savedUser.setId(1L);
-            savedUser.setCreatedAt(LocalDateTime.now());
-            savedUser.setUpdatedAt(LocalDateTime.now());
-            return savedUser;
-        });
+        when(userJdbcRepository.insertIgnoringConflicts(anyList(), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> insertAll(invocation.getArgument(0), invocation.getArgument(1), 1L));
 
         // Act
         BaseResponseDTO<UserResponseDTO> response = userService.createUser(userRequestDTO);
@@ -76,34 +124,63 @@ class UserServiceImplTest {
         assertEquals(1L, response.getData().getId());
         assertEquals(userRequestDTO.getFullName(), response.getData().getFullName());
         assertEquals(userRequestDTO.getEmail(), response.getData().getEmail());
+        assertTrue(response.getData().getBalances().isEmpty());
         assertNotNull(response.getData().getCreatedAt());
         assertNotNull(response.getData().getUpdatedAt());
 
-        verify(userRepository).existsByEmail(userRequestDTO.getEmail());
-        verify(userRepository).existsByPhoneNumber(userRequestDTO.getPhoneNumber());
-        verify(userRepository).save(any(User.class));
+        verify(userJdbcRepository).insertIgnoringConflicts(anyList(), any(LocalDateTime.class));
+        verify(userRepository, never()).save(any(User.class));
     }
 
 
     @Test
-    void createUser_ExistingEmail_ThrowsException() {
+    void createUser_ExistingEmail_ReturnsConflict() {
         // Arrange
-        when(userRepository.existsByEmail(anyString())).thenReturn(true);
+        when(userJdbcRepository.insertIgnoringConflicts(anyList(), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> insertAll(invocation.getArgument(0), invocation.getArgument(1)));
 
-        // Act & Assert
-        Exception exception = assertThrows(RuntimeException.class, () ->
-                userService.createUser(userRequestDTO)
-        );
-        assertEquals("Email or phone number already exist", exception.getMessage());
+        // Act
+        BaseResponseDTO<UserResponseDTO> response = userService.createUser(userRequestDTO);
 
-        verify(userRepository).existsByEmail(userRequestDTO.getEmail());
-        verify(userRepository, never()).save(any(User.class));
+        // Assert
+        assertEquals(HttpStatus.CONFLICT.value(), response.getStatusCode());
+        assertEquals("Email or phone number already exist", response.getMessage());
+        assertNull(response.getData());
+    }
+
+    @Test
+    void importUsers_SomeConflicting_ReportsEachUser() {
+        // Arrange
+        UserRequestDTO duplicate = new UserRequestDTO("Johnny Doe", "john.doe@example.com", "+1234567899");
+        UserRequestDTO other = new UserRequestDTO("Jane Doe", "jane.doe@example.com", "+1234567891");
+        when(userJdbcRepository.insertIgnoringConflicts(anyList(), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> insertAll(invocation.getArgument(0), invocation.getArgument(1), 1L, 3L));
+
+        // Act
+        BaseResponseDTO<UserImportResponseDTO> response = userService.importUsers(
+                new UserImportRequestDTO(List.of(userRequestDTO, duplicate, other)));
+
+        // Assert
+        assertEquals(HttpStatus.OK.value(), response.getStatusCode());
+        assertEquals(2, response.getData().getCreated());
+        assertEquals(1, response.getData().getFailed());
+        List<UserImportResultDTO> results = response.getData().getResults();
+        assertEquals(HttpStatus.CREATED.value(), results.get(0).getStatusCode());
+        assertEquals(1L, results.get(0).getUser().getId());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(1).getStatusCode());
+        assertEquals("Email or phone number already exist", results.get(1).getMessage());
+        assertNull(results.get(1).getUser());
+        assertEquals(HttpStatus.CREATED.value(), results.get(2).getStatusCode());
+        assertEquals("jane.doe@example.com", results.get(2).getUser().getEmail());
+
+        verify(userJdbcRepository, times(1)).insertIgnoringConflicts(anyList(), any(LocalDateTime.class));
     }
 
     @Test
     void getUserById_Success() {
         // Arrange
         when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+        when(walletBalanceRepository.findByUserId(1L)).thenReturn(List.of(balance("USD", 5), balance("IDR", 100)));
 
         // Act
         BaseResponseDTO<UserResponseDTO> response = userService.getUserById(1L);
@@ -114,10 +191,59 @@ class UserServiceImplTest {
         assertEquals("User successfully retrieved", response.getMessage());
         assertNotNull(response.getData());
         assertEquals(user.getId(), response.getData().getId());
+        assertEquals(List.of("IDR", "USD"), List.copyOf(response.getData().getBalances().keySet()));
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(response.getData().getBalances().get("IDR")));
 
         verify(userRepository).findById(1L);
     }
 
+    @Test
+    void getUserById_ShardedWallet_AddsShardsToBalances() {
+        // Arrange
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+        when(walletBalanceRepository.findByUserId(1L)).thenReturn(List.of(balance("IDR", 100)));
+        when(shardedBalances.isSharded(1L)).thenReturn(true);
+        when(shardedBalances.shardTotals(1L)).thenReturn(Map.of("IDR", Money.of(BigDecimal.valueOf(25)), "USD", Money.of(BigDecimal.ONE)));
+
+        // Act
+        BaseResponseDTO<UserResponseDTO> response = userService.getUserById(1L);
+
+        // Assert
+        assertEquals(0, BigDecimal.valueOf(125).compareTo(response.getData().getBalances().get("IDR")));
+        assertEquals(0, BigDecimal.ONE.compareTo(response.getData().getBalances().get("USD")));
+    }
+
+    @Test
+    void getUserById_RepeatedCall_ServedFromCache() {
+        // Arrange
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+
+        // Act
+        userService.getUserById(1L);
+        BaseResponseDTO<UserResponseDTO> response = userService.getUserById(1L);
+
+        // Assert
+        assertEquals(user.getId(), response.getData().getId());
+        verify(userRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void getUserById_AfterEdit_ReloadsUser() {
+        // Arrange
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+        when(userRepository.save(any(User.class))).thenReturn(user);
+        userService.getUserById(1L);
+        userRequestDTO.setFullName("Jane Doe");
+
+        // Act
+        userService.editUser(1L, userRequestDTO);
+        BaseResponseDTO<UserResponseDTO> response = userService.getUserById(1L);
+
+        // Assert
+        assertEquals("Jane Doe", response.getData().getFullName());
+        verify(userCache).evictAfterCommit(1L);
+    }
+
     @Test
     void getUserById_UserNotFound_ThrowsException() {
         // Arrange
@@ -153,6 +279,39 @@ class UserServiceImplTest {
         verify(userRepository).save(any(User.class));
     }
 
+    @Test
+    void editUser_ConcurrentEdit_RetriedOnFreshCopy() {
+        // Arrange
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+        when(userRepository.save(any(User.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(User.class, 1L))
+                .thenReturn(user);
+
+        // Act
+        BaseResponseDTO<UserResponseDTO> response = userService.editUser(1L, userRequestDTO);
+
+        // Assert
+        assertEquals(HttpStatus.OK.value(), response.getStatusCode());
+        verify(userRepository, times(2)).findById(1L);
+        verify(userRepository, times(2)).save(any(User.class));
+    }
+
+    @Test
+    void editUser_EmailTaken_ReturnsConflict() {
+        // Arrange
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
+        when(userRepository.save(any(User.class))).thenThrow(new DataIntegrityViolationException("could not execute batch"));
+
+        // Act
+        BaseResponseDTO<UserResponseDTO> response = userService.editUser(1L, userRequestDTO);
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT.value(), response.getStatusCode());
+        assertEquals("Email or phone number already exist", response.getMessage());
+        assertNull(response.getData());
+        verify(userCache, never()).evictAfterCommit(anyLong());
+    }
+
     @Test
     void editUser_UserNotFound_ThrowsException() {
         // Arrange
@@ -168,11 +327,62 @@ class UserServiceImplTest {
         verify(userRepository, never()).save(any(User.class));
     }
 
+    @Test
+    void patchUser_Success() {
+        // Arrange
+        UserPatchRequestDTO userPatchRequestDTO = new UserPatchRequestDTO("Jane Doe", null, null);
+        user.setFullName("Jane Doe");
+        when(userJdbcRepository.patchProfile(eq(1L), eq("Jane Doe"), isNull(), isNull(), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(new PatchedProfile(user, Map.of("IDR", Money.of(BigDecimal.TEN)))));
+
+        // Act
+        BaseResponseDTO<UserResponseDTO> response = userService.patchUser(1L, userPatchRequestDTO);
+
+        // Assert
+        assertEquals(HttpStatus.OK.value(), response.getStatusCode());
+        assertEquals("Jane Doe", response.getData().getFullName());
+        assertEquals(user.getEmail(), response.getData().getEmail());
+        assertEquals(0, BigDecimal.TEN.compareTo(response.getData().getBalances().get("IDR")));
+        verify(userRepository, never()).findById(anyLong());
+        verifyNoInteractions(walletBalanceRepository, appendOnlyLedger, shardedBalances);
+        verify(userRepository, never()).save(any(User.class));
+        verify(userCache).evictAfterCommit(1L);
+    }
+
+    @Test
+    void patchUser_UserNotFound_ThrowsException() {
+        // Arrange
+        when(userJdbcRepository.patchProfile(eq(1L), any(), any(), any(), any(LocalDateTime.class))).thenReturn(Optional.empty());
+
+        // Act & Assert
+        Exception exception = assertThrows(RuntimeException.class, () ->
+                userService.patchUser(1L, new UserPatchRequestDTO("Jane Doe", null, null))
+        );
+        assertEquals("User not found", exception.getMessage());
+    }
+
+    @Test
+    void patchUser_EmailTaken_ReturnsConflict() {
+        // Arrange
+        when(userJdbcRepository.patchProfile(eq(1L), any(), any(), any(), any(LocalDateTime.class)))
+                .thenThrow(new DuplicateKeyException("duplicate key value violates unique constraint"));
+
+        // Act
+        BaseResponseDTO<UserResponseDTO> response = userService.patchUser(1L, new UserPatchRequestDTO(null, "jane.doe@example.com", null));
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT.value(), response.getStatusCode());
+        assertEquals("Email or phone number already exist", response.getMessage());
+        assertNull(response.getData());
+        verify(userCache, never()).evictAfterCommit(anyLong());
+    }
+
     @Test
     void deleteUser_Success() {
         // Arrange
-        when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
-        doNothing().when(userRepository).delete(any(User.class));
+        when(userRepository.lockById(anyLong())).thenReturn(Optional.of(1L));
+        when(transactionRepository.deleteByUserId(anyLong())).thenReturn(3);
+        when(userRepository.deleteWalletById(anyLong())).thenReturn(1);
 
         // Act
         BaseResponseDTO<UserResponseDTO> response = userService.deleteUser(1L);
@@ -183,14 +393,21 @@ class UserServiceImplTest {
         assertEquals("User deleted successfully", response.getMessage());
         assertNull(response.getData());
 
-        verify(userRepository).findById(1L);
-        verify(userRepository).delete(user);
+        verify(userRepository).lockById(1L);
+        verify(transactionRepository).deleteIdempotencyKeysByUserId(1L);
+        verify(transactionRepository).deleteByUserId(1L);
+        verify(walletBalanceShardRepository).deleteByUserId(1L);
+        verify(walletBalanceRepository).deleteByUserId(1L);
+        verify(userRepository).deleteWalletById(1L);
+        verify(walletTombstoneRepository).insert(eq(1L), any(LocalDateTime.class));
+        verify(userRepository, never()).delete(any(User.class));
+        verify(userCache).evictAfterCommit(1L);
     }
 
     @Test
     void deleteUser_UserNotFound_ThrowsException() {
         // Arrange
-        when(userRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(userRepository.lockById(anyLong())).thenReturn(Optional.empty());
 
         // Act & Assert
         Exception exception = assertThrows(RuntimeException.class, () ->
@@ -198,7 +415,26 @@ class UserServiceImplTest {
         );
         assertEquals("User not found", exception.getMessage());
 
-        verify(userRepository).findById(1L);
-        verify(userRepository, never()).delete(any(User.class));
+        verify(userRepository).lockById(1L);
+        verify(transactionRepository, never()).deleteByUserId(anyLong());
+        verify(userRepository, never()).deleteWalletById(anyLong());
+    }
+
+    private static WalletBalance balance(String currency, long amount) {
+        WalletBalance balance = new WalletBalance();
+        balance.setUserId(1L);
+        balance.setCurrency(currency);
+        balance.setBalance(Money.of(BigDecimal.valueOf(amount)));
+        return balance;
+    }
+
+    // Assigns ids 1..n like the repository does and reports the given ids as inserted
+    private static Set<Long> insertAll(List<User> users, LocalDateTime createdAt, Long... insertedIds) {
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setId(i + 1L);
+            users.get(i).setCreatedAt(createdAt);
+            users.get(i).setUpdatedAt(createdAt);
+        }
+        return Set.of(insertedIds);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,126 @@
+package dev.dwidi.walletservice.service.user;
+
+import dev.dwidi.walletservice.WalletServiceApplication;
+import dev.dwidi.walletservice.dto.transaction.TransactionRequestDTO;
+import dev.dwidi.walletservice.dto.user.UserRequestDTO;
+import dev.dwidi.walletservice.service.transaction.TransactionService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Runs two instances of the application against one PostgreSQL database and checks that a write
+ * on one evicts the cached user on the other.
+ */
+class WalletChangeListenerTest {
+
+    private static EmbeddedPostgres postgres;
+
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startDatabase() throws IOException {
+        assumeFalse("root".equals(System.getProperty("user.name")), "PostgreSQL refuses to run as root");
+        postgres = EmbeddedPostgres.start();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @BeforeEach
+    void startNodes() {
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    @Test
+    void topUpOnOneNode_EvictsCachedBalanceOnTheOther() {
+        // Arrange
+        Long userId = createUser("john.doe@example.com", "+1234567890");
+        UserService userServiceB = nodeB.getBean(UserService.class);
+        assertTrue(userServiceB.getUserById(userId).getData().getBalances().isEmpty());
+
+        // Act
+        nodeA.getBean(TransactionService.class).topUpBalance(userId, new TransactionRequestDTO(null, BigDecimal.valueOf(100), null, null));
+
+        // Assert
+        awaitTrue(() -> BigDecimal.valueOf(100).compareTo(
+                userServiceB.getUserById(userId).getData().getBalances().getOrDefault("IDR", BigDecimal.ZERO)) == 0);
+    }
+
+    @Test
+    void deleteOnOneNode_EvictsCachedUserOnTheOther() {
+        // Arrange
+        Long userId = createUser("jane.doe@example.com", "+1234567891");
+        UserService userServiceB = nodeB.getBean(UserService.class);
+        userServiceB.getUserById(userId);
+
+        // Act
+        nodeA.getBean(UserService.class).deleteUser(userId);
+
+        // Assert
+        awaitTrue(() -> {
+            try {
+                userServiceB.getUserById(userId);
+                return false;
+            } catch (RuntimeException e) {
+                return "User not found".equals(e.getMessage());
+            }
+        });
+    }
+
+    private ConfigurableApplicationContext startNode() {
+        return new SpringApplicationBuilder(WalletServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.profiles.active=test",
+                        "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                        "--spring.datasource.username=postgres",
+                        "--spring.datasource.driver-class-name=org.postgresql.Driver",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.PostgreSQLDialect",
+                        "--spring.jpa.hibernate.ddl-auto=validate",
+                        "--spring.flyway.enabled=true",
+                        "--wallet.ledger.partitions.enabled=true",
+                        "--wallet.user-cache.invalidation.enabled=true");
+    }
+
+    private Long createUser(String email, String phoneNumber) {
+        UserRequestDTO userRequestDTO = new UserRequestDTO("John Doe", email, phoneNumber);
+        return nodeA.getBean(UserService.class).createUser(userRequestDTO).getData().getId();
+    }
+
+    private static void awaitTrue(Supplier<Boolean> condition) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.get()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not met within 5 seconds");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}